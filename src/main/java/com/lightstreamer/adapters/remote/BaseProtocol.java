@@ -16,7 +16,6 @@ package com.lightstreamer.adapters.remote;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.StringTokenizer;
 
 class BaseProtocol extends RemotingProtocol {
 
@@ -60,51 +59,13 @@ class BaseProtocol extends RemotingProtocol {
     // ////////////////////////////////////////////////////////////////////////
     // CLOSE
 
-    public static Map<String,String> readClose(String request) throws RemotingException {
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-        String msg = null;
-        RemotingException re2 = null;
-        
+    public static Map<String,String> readClose(RequestDecoder request) throws RemotingException {
         Map<String,String> parameters = new HashMap<String,String>();
 
-        String typ = null;
-        while (tokenizer.hasMoreTokens()) {
-            String headerName = "";
-            String headerValue = "";
-
-            typ = tokenizer.nextToken();
-
-            String val; // declared here to avoid JVM bug JDK-8067429
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    val = tokenizer.nextToken();
-                    headerName = decodeStringOld(val);
-                    break;
-
-                default:
-                    msg = "Unknown type '" + typ + "' found while parsing a " + METHOD_CLOSE + " request";
-            }
-
-            typ = tokenizer.nextToken();
-
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    val = tokenizer.nextToken();
-                    headerValue = decodeStringOld(val);
-                    break;
-
-                default:
-                    msg = "Unknown type '" + typ + "' found while parsing a " + METHOD_CLOSE + " request";
-            }
-            
-            if (msg != null) {
-                re2 = new RemotingException(msg);
-                throw re2;
-            } else {
-                parameters.put(headerName, headerValue);
-            }
+        while (request.hasMore()) {
+            String headerName = request.readString();
+            String headerValue = request.readString();
+            parameters.put(headerName, headerValue);
         }
 
         return parameters;
@@ -120,7 +81,7 @@ class BaseProtocol extends RemotingProtocol {
         sb.append(SEP);
         sb.append(TYPE_EXCEPTION);
         sb.append(SEP);
-        sb.append(encodeString(exception.getMessage()));
+        encodeString(sb, exception.getMessage());
 
         return sb.toString();
     }
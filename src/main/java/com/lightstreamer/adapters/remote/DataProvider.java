@@ -148,6 +148,33 @@ public interface DataProvider {
     */
     void subscribe(@Nonnull String itemName) throws SubscriptionException, FailureException;
 
+    /** 
+     * Called by Lightstreamer Kernel through the Remote Server
+     * to request data for an Item, as {@link #subscribe(String)}, by also
+     * supplying an {@link ItemHandle}, through which the Data Adapter can send
+     * the events for the Item, as an alternative to the {@link ItemEventListener}
+     * methods. Sending through the handle saves the lookup of the subscription
+     * by Item name upon each event. <BR>
+     * The handle becomes stale after the unsubscribe call for the Item has
+     * returned, after which any event sent through it is discarded;
+     * a new handle is supplied upon each new subscription. <BR>
+     * The default implementation ignores the handle and invokes
+     * {@link #subscribe(String)}. When this method is overridden,
+     * {@link #subscribe(String)} is no longer invoked by the Remote Server,
+     * hence it can be implemented as a no-op.
+     * 
+     * @param itemName Name of an Item.
+     * @param handle A handle for sending the events for the Item.
+     * @exception SubscriptionException in case the request cannot be satisfied.
+     * 
+     * @exception FailureException in case the method execution has caused
+     * a severe problem that can compromise future operation of the Data Adapter.
+     * 
+    */
+    default void subscribe(@Nonnull String itemName, @Nonnull ItemHandle handle) throws SubscriptionException, FailureException {
+        subscribe(itemName);
+    }
+
     /** 
      * Called by Lightstreamer Kernel through the Remote Server
      * to end a previous request of data for an Item.
@@ -13,11 +13,10 @@
  */
 package com.lightstreamer.adapters.remote;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.Iterator;
-import java.util.StringTokenizer;
 
 class DataProviderProtocol extends BaseProtocol {
 
@@ -40,63 +39,16 @@ class DataProviderProtocol extends BaseProtocol {
     // ////////////////////////////////////////////////////////////////////////
     // REMOTE INIT
 
-    public static Map<String,String> readInit(String request) throws RemotingException {
-        
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-        String msg = null;
-        RemotingException re1 = null;
-        
+    public static Map<String,String> readInit(RequestDecoder request) throws RemotingException {
         Map<String,String> parameters = new HashMap<String,String>();
 
-        String typ = null;
-        while (tokenizer.hasMoreTokens()) {
-            
-            String headerName = "";
-            String headerValue = "";
-            
-            typ = tokenizer.nextToken();
-            
-            String val; // declared here to avoid JVM bug JDK-8067429
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    val = tokenizer.nextToken();
-                    headerName = decodeStringOld(val);
-                    
-                    break;
-
-                default:
-                    msg = "Unknown type '" + typ + "' found while parsing a " + METHOD_DATA_INIT + " request";
-                    re1 = new RemotingException(msg);
-                    
-            }
-
-            typ = tokenizer.nextToken();
-
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    val = tokenizer.nextToken();
-                    
-                    headerValue = decodeStringOld(val);
-                 
-                    break;
-
-                default:
-                    msg = "Unknown type '" + typ + "' found while parsing a " + METHOD_DATA_INIT + " request";
-                    re1 = new RemotingException(msg);
-                    
-            }
-            if (re1 != null ) {
-                throw re1;
-            } else {
-                parameters.put(headerName, headerValue);
-            }
-            
+        while (request.hasMore()) {
+            String headerName = request.readString();
+            String headerValue = request.readString();
+            parameters.put(headerName, headerValue);
         }
 
         return parameters;
-        
     }
 
     public static String writeInit(Map<String,String> arguments) throws RemotingException {
@@ -149,44 +101,21 @@ class DataProviderProtocol extends BaseProtocol {
     // ////////////////////////////////////////////////////////////////////////
     // SUBSCRIBE
 
-    public static SubscribeData readSubscribe(String request) throws RemotingException {
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-
+    public static SubscribeData readSubscribe(RequestDecoder request) throws RemotingException {
         SubscribeData data = new SubscribeData();
 
-        String typ = null;
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_SUBSCRIBE + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                String itemName = tokenizer.nextToken();
-                data.itemName = decodeString(itemName);
-                break;
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_SUBSCRIBE + " request");
-        }
+        data.itemName = request.readString();
 
         return data;
     }
 
-    public static String writeSubscribe() {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeSubscribe(MessageBuffer sb) {
         sb.append(METHOD_SUBSCRIBE);
         sb.append(SEP);
         sb.append(TYPE_VOID);
-
-        return sb.toString();
     }
 
-    public static String writeSubscribe(Throwable exception) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeSubscribe(MessageBuffer sb, Throwable exception) throws RemotingException {
         sb.append(METHOD_SUBSCRIBE);
         sb.append(SEP);
         sb.append(TYPE_EXCEPTION);
@@ -197,47 +126,23 @@ class DataProviderProtocol extends BaseProtocol {
             sb.append(SUBTYPE_FAILURE_EXCEPTION);
         }
         sb.append(SEP);
-        sb.append(encodeString(exception.getMessage()));
-
-        return sb.toString();
+        encodeString(sb, exception.getMessage());
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // UNSUBSCRIBE
 
-    public static String readUnsubscribe(String request) throws RemotingException {
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-
-        String typ = null;
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_UNSUBSCRIBE + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                String val = tokenizer.nextToken();
-                return decodeString(val);
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_UNSUBSCRIBE + " request");
-        }
+    public static String readUnsubscribe(RequestDecoder request) throws RemotingException {
+        return request.readString();
     }
 
-    public static String writeUnsubscribe() {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeUnsubscribe(MessageBuffer sb) {
         sb.append(METHOD_UNSUBSCRIBE);
         sb.append(SEP);
         sb.append(TYPE_VOID);
-
-        return sb.toString();
     }
 
-    public static String writeUnsubscribe(Throwable exception) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeUnsubscribe(MessageBuffer sb, Throwable exception) throws RemotingException {
         sb.append(METHOD_UNSUBSCRIBE);
         sb.append(SEP);
         sb.append(TYPE_EXCEPTION);
@@ -248,48 +153,49 @@ class DataProviderProtocol extends BaseProtocol {
             sb.append(SUBTYPE_FAILURE_EXCEPTION);
         }
         sb.append(SEP);
-        sb.append(encodeString(exception.getMessage()));
-
-        return sb.toString();
+        encodeString(sb, exception.getMessage());
     }
 
     // ////////////////////////////////////////////////////////////////////////
-    // END OF SNAPSHOT
-
-    public static String writeEndOfSnapshot(String itemName, String requestID) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
+    // SUBSCRIPTION HEADERS (see ItemSubscription)
 
-        sb.append(METHOD_END_OF_SNAPSHOT);
+    public static byte[] encodeSubscriptionHeader(String itemName, String requestID) throws RemotingException {
+        MessageBuffer sb = new MessageBuffer(64);
         sb.append(SEP);
         sb.append(TYPE_STRING);
         sb.append(SEP);
-        sb.append(encodeString(itemName));
+        encodeString(sb, itemName);
         sb.append(SEP);
         sb.append(TYPE_STRING);
         sb.append(SEP);
         sb.append(requestID);
-
-        return sb.toString();
+        return sb.toByteArray();
     }
 
-    // ////////////////////////////////////////////////////////////////////////
-    // UPDATE (String itemName, IndexedItemEvent event, boolean isSnapshot)
-
-    public static String writeUpdateByIndexedEvent(String itemName, String requestID, IndexedItemEvent itemEvent, boolean isSnapshot) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static byte[] encodeUpdateHeader(byte[] subscriptionHeader) {
+        MessageBuffer sb = new MessageBuffer(subscriptionHeader.length + 8);
         sb.append(METHOD_UPDATE_BY_MAP); // since we will write it as a set of key-value pairs
-        sb.append(SEP);
-        sb.append(TYPE_STRING);
-        sb.append(SEP);
-        sb.append(encodeString(itemName));
-        sb.append(SEP);
-        sb.append(TYPE_STRING);
-        sb.append(SEP);
-        sb.append(requestID);
+        sb.append(subscriptionHeader);
         sb.append(SEP);
         sb.append(TYPE_BOOLEAN);
         sb.append(SEP);
+        return sb.toByteArray();
+    }
+
+    // ////////////////////////////////////////////////////////////////////////
+    // END OF SNAPSHOT
+
+    public static void writeEndOfSnapshot(MessageBuffer sb, ItemSubscription subscription) throws RemotingException {
+        sb.append(METHOD_END_OF_SNAPSHOT);
+        sb.append(subscription.getHeader());
+    }
+
+    // ////////////////////////////////////////////////////////////////////////
+    // UPDATE (String itemName, IndexedItemEvent event, boolean isSnapshot)
+
+    public static void writeUpdateByIndexedEvent(MessageBuffer sb, ItemSubscription subscription, FieldNameCache names, IndexedItemEvent itemEvent, boolean isSnapshot) throws RemotingException {
+        // the header, up to the snapshot flag, was encoded upon subscription
+        sb.append(subscription.getUpdateHeader());
         sb.append(isSnapshot ? VALUE_TRUE : VALUE_FALSE);
 
         for (int i = 0; i <= itemEvent.getMaximumIndex(); i++) {
@@ -298,190 +204,74 @@ class DataProviderProtocol extends BaseProtocol {
             sb.append(SEP);
             sb.append(i);
 
-            sb.append(SEP);
-            sb.append(TYPE_STRING);
-            sb.append(SEP);
-            sb.append(encodeString(itemEvent.getName(i)));
-
-            Object value = itemEvent.getValue(i);
-            if (value == null) {
-                // with no type information, let's handle it as a string
-                sb.append(SEP);
-                sb.append(TYPE_STRING);
-                sb.append(SEP);
-                sb.append(encodeString(null));
-
-            } else if (value instanceof String) {
-                sb.append(SEP);
-                sb.append(TYPE_STRING);
-                sb.append(SEP);
-                sb.append(encodeString((String) value));
-
-            } else if (value instanceof byte []) {
-                sb.append(SEP);
-                sb.append(TYPE_STRING);
-                sb.append(SEP);
-                sb.append(encodeBytesAsString((byte []) value));
-
-            } else {
-                throw new RemotingException("Found value '" + value.toString() + "' of an unsupported type while building a " + METHOD_UPDATE_BY_MAP + " request");
-            }
+            writeField(sb, names, itemEvent.getName(i), itemEvent.getValue(i));
         }
-
-        return sb.toString();
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // UPDATE (String itemName, ItemEvent event, boolean isSnapshot)
 
-    public static String writeUpdateByEvent(String itemName, String requestID, ItemEvent itemEvent, boolean isSnapshot) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
-        sb.append(METHOD_UPDATE_BY_MAP); // since we will write it as a set of key-value pairs
-        sb.append(SEP);
-        sb.append(TYPE_STRING);
-        sb.append(SEP);
-        sb.append(encodeString(itemName));
-        sb.append(SEP);
-        sb.append(TYPE_STRING);
-        sb.append(SEP);
-        sb.append(requestID);
-        sb.append(SEP);
-        sb.append(TYPE_BOOLEAN);
-        sb.append(SEP);
+    public static void writeUpdateByEvent(MessageBuffer sb, ItemSubscription subscription, FieldNameCache names, ItemEvent itemEvent, boolean isSnapshot) throws RemotingException {
+        // the header, up to the snapshot flag, was encoded upon subscription
+        sb.append(subscription.getUpdateHeader());
         sb.append(isSnapshot ? VALUE_TRUE : VALUE_FALSE);
 
         Iterator<String> iter = itemEvent.getNames();
         while (iter.hasNext()) {
             String iterValue = iter.next();
             
-            sb.append(SEP);
-            sb.append(TYPE_STRING);
-            sb.append(SEP);
-            sb.append(encodeString(iterValue));
-
-            Object value = itemEvent.getValue(iterValue);
-            if (value == null) {
-                // with no type information, let's handle it as a string
-                sb.append(SEP);
-                sb.append(TYPE_STRING);
-                sb.append(SEP);
-                sb.append(encodeString(null));
-
-            } else if (value instanceof String) {
-                sb.append(SEP);
-                sb.append(TYPE_STRING);
-                sb.append(SEP);
-                sb.append(encodeString((String) value));
-
-            } else if (value instanceof byte[]) {
-                sb.append(SEP);
-                sb.append(TYPE_STRING);
-                sb.append(SEP);
-                sb.append(encodeBytesAsString((byte []) value));
-
-            } else {
-                throw new RemotingException("Found value '" + value.toString() + "' of an unsupported type while building a " + METHOD_UPDATE_BY_MAP + " request");
-            }
+            writeField(sb, names, iterValue, itemEvent.getValue(iterValue));
         }
-
-        return sb.toString();
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // UPDATE (String itemName, Map event, boolean isSnapshot)
 
-    public static String writeUpdateByMap(String itemName, String requestID, Map<String,?> itemEvent, boolean isSnapshot) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
-        sb.append(METHOD_UPDATE_BY_MAP);
-        sb.append(SEP);
-        sb.append(TYPE_STRING);
-        sb.append(SEP);
-        sb.append(encodeString(itemName));
-        sb.append(SEP);
-        sb.append(TYPE_STRING);
-        sb.append(SEP);
-        sb.append(requestID);
-        sb.append(SEP);
-        sb.append(TYPE_BOOLEAN);
-        sb.append(SEP);
+    public static void writeUpdateByMap(MessageBuffer sb, ItemSubscription subscription, FieldNameCache names, Map<String,?> itemEvent, boolean isSnapshot) throws RemotingException {
+        // the header, up to the snapshot flag, was encoded upon subscription
+        sb.append(subscription.getUpdateHeader());
         sb.append(isSnapshot ? VALUE_TRUE : VALUE_FALSE);
 
         for (String name : itemEvent.keySet()) {
-            sb.append(SEP);
-            sb.append(TYPE_STRING);
-            sb.append(SEP);
-            sb.append(encodeString(name));
-
-            Object value = itemEvent.get(name);
-            if (value == null) {
-                // with no type information, let's handle it as a string
-                sb.append(SEP);
-                sb.append(TYPE_STRING);
-                sb.append(SEP);
-                sb.append(encodeString(null));
+            writeField(sb, names, name, itemEvent.get(name));
+        }
+    }
 
-            } else if (value instanceof String) {
-                sb.append(SEP);
-                sb.append(TYPE_STRING);
-                sb.append(SEP);
-                sb.append(encodeString((String) value));
+    // ////////////////////////////////////////////////////////////////////////
+    // UPDATE (String itemName, FieldValues values, boolean isSnapshot)
 
-            }  else if (value instanceof byte []) {
-                sb.append(SEP);
-                sb.append(TYPE_STRING);
-                sb.append(SEP);
-                sb.append(encodeBytesAsString((byte []) value));
+    public static void writeUpdateByValues(MessageBuffer sb, ItemSubscription subscription, FieldNameCache names, FieldValues values, boolean isSnapshot) throws RemotingException {
+        // the header, up to the snapshot flag, was encoded upon subscription
+        sb.append(subscription.getUpdateHeader());
+        sb.append(isSnapshot ? VALUE_TRUE : VALUE_FALSE);
 
-            } else {
-                throw new RemotingException("Found value '" + value.toString() + "' of an unsupported type while building a " + METHOD_UPDATE_BY_MAP + " request");
-            }
+        for (int i = 0; i < values.size(); i++) {
+            writeFieldName(sb, names, values.getName(i));
+            // numeric values are formatted in place
+            values.writeValue(i, sb);
         }
-
-        return sb.toString();
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // CLEAR SNAPSHOT
 
-    public static String writeClearSnapshot(String itemName, String requestID) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeClearSnapshot(MessageBuffer sb, ItemSubscription subscription) throws RemotingException {
         sb.append(METHOD_CLEAR_SNAPSHOT);
-        sb.append(SEP);
-        sb.append(TYPE_STRING);
-        sb.append(SEP);
-        sb.append(encodeString(itemName));
-        sb.append(SEP);
-        sb.append(TYPE_STRING);
-        sb.append(SEP);
-        sb.append(requestID);
-
-        return sb.toString();
+        sb.append(subscription.getHeader());
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // DECLARE FIELD DIFF ORDER (String itemName, Map algs)
 
-    public static String writeDeclareFieldDiffOrder(String itemName, String requestID, Map<String,DiffAlgorithm[]> algorithmsMap) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeDeclareFieldDiffOrder(MessageBuffer sb, ItemSubscription subscription, Map<String,DiffAlgorithm[]> algorithmsMap) throws RemotingException {
         sb.append(METHOD_DECLARE_FIELD_DIFF_ORDER);
-        sb.append(SEP);
-        sb.append(TYPE_STRING);
-        sb.append(SEP);
-        sb.append(encodeString(itemName));
-        sb.append(SEP);
-        sb.append(TYPE_STRING);
-        sb.append(SEP);
-        sb.append(requestID);
+        sb.append(subscription.getHeader());
 
         for (String name : algorithmsMap.keySet()) {
             sb.append(SEP);
             sb.append(TYPE_STRING);
             sb.append(SEP);
-            sb.append(encodeString(name));
+            encodeString(sb, name);
 
             DiffAlgorithm[] algs = algorithmsMap.get(name);
             sb.append(SEP);
@@ -489,13 +279,59 @@ class DataProviderProtocol extends BaseProtocol {
             sb.append(SEP);
             sb.append(encodeAlgorithms(algs));
         }
-
-        return sb.toString();
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // Internal methods
 
+    public static byte[] encodeFieldNameSegment(String name) throws RemotingException {
+        MessageBuffer sb = new MessageBuffer(name.length() + 8);
+        sb.append(SEP);
+        sb.append(TYPE_STRING);
+        sb.append(SEP);
+        encodeString(sb, name);
+        sb.append(SEP);
+        sb.append(TYPE_STRING);
+        sb.append(SEP);
+        return sb.toByteArray();
+    }
+
+    private static void writeField(MessageBuffer sb, FieldNameCache names, String name, Object value) throws RemotingException {
+        writeFieldName(sb, names, name);
+
+        if (value == null) {
+            // with no type information, let's handle it as a string
+            encodeString(sb, null);
+
+        } else if (value instanceof String) {
+            encodeString(sb, (String) value);
+
+        } else if (value instanceof byte []) {
+            encodeBytesAsString(sb, (byte []) value);
+
+        } else if (value instanceof ByteBuffer) {
+            encodeUtf8(sb, (ByteBuffer) value);
+
+        } else {
+            throw new RemotingException("Found value '" + value.toString() + "' of an unsupported type while building a " + METHOD_UPDATE_BY_MAP + " request");
+        }
+    }
+
+    private static void writeFieldName(MessageBuffer sb, FieldNameCache names, String name) throws RemotingException {
+        byte[] segment = names.get(name);
+        if (segment != null) {
+            sb.append(segment);
+        } else {
+            sb.append(SEP);
+            sb.append(TYPE_STRING);
+            sb.append(SEP);
+            encodeString(sb, name);
+            sb.append(SEP);
+            sb.append(TYPE_STRING);
+            sb.append(SEP);
+        }
+    }
+
     protected static String encodeAlgorithms(DiffAlgorithm[] algs) throws RemotingException {
         if (algs == null) {
             return VALUE_NULL;
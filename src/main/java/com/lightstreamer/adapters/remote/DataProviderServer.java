@@ -35,9 +35,63 @@ import javax.annotation.Nullable;
  * specified through the custom "lightstreamer.data.pool.size" system
  * property; a size of 0 or negative also implies an unlimited thread
  * pool. <BR>
+ * Alternatively, by setting the custom "lightstreamer.data.pool.sharded"
+ * system property to true, the invocations will be done in a fixed set of
+ * threads, where each item is always handled by the same thread; the number
+ * of threads is taken from "lightstreamer.data.pool.size" and, if this is
+ * 0 or negative, it is the number of available processors. This keeps the
+ * number of threads bounded, also upon massive resubscriptions. <BR>
  * Note that Subscribe and Unsubscribe invocations for the same item
  * are always guaranteed to be sequentialized in the right way,
- * although they may not occur in the same thread.
+ * although they may not occur in the same thread. <BR>
+ * The replies to the requests of the Proxy Data Adapter are written
+ * before any queued notification, to prevent subscription requests from
+ * timing out during bursts of updates. To prevent the notifications from
+ * being delayed indefinitely, at most 100 consecutive replies are written
+ * while notifications are pending; the limit can be changed through the
+ * custom "lightstreamer.write.replies.max.burst" system property. <BR>
+ * By default, the queue of the notifications waiting to be written
+ * is unbounded. A bound can be set through the custom
+ * "lightstreamer.notify.queue.max.messages" and/or
+ * "lightstreamer.notify.queue.max.bytes" system properties (a value of 0
+ * means no bound); the bound can only be exceeded by the notifications that
+ * are never discarded (see below) and by a single notification larger than
+ * the byte bound. The behavior when the queue is full is specified
+ * through the custom "lightstreamer.notify.queue.policy" system property,
+ * whose values can be:<ul>
+ * <li>"block" (the default): the update call waits for some space to be
+ * freed; in this case the update calls are no longer nonblocking;</li>
+ * <li>"drop_oldest": the oldest real-time update still queued is discarded
+ * (not supported with the preallocated queue, see {@link Server});</li>
+ * <li>"fail": the new real-time update is discarded; as the protocol
+ * doesn't provide for the failure of a single item, the item is not
+ * failed towards the Proxy Adapter, hence, for the item, the clients may
+ * miss the update until a new one is sent. The first discarded update
+ * for each subscription is logged at WARN level; any further ones only
+ * at DEBUG level.</li>
+ * </ul>
+ * Note that snapshot events and the other notifications (like endOfSnapshot
+ * and clearSnapshot) are never discarded; moreover, discarding updates
+ * is only safe for items subscribed in MERGE mode, where a subsequent
+ * update supersedes the discarded one. <BR>
+ * For the same reason, if all items are subscribed in MERGE mode, the
+ * conflation of the real-time updates can be enabled, by setting the custom
+ * "lightstreamer.notify.conflation" system property as "true". In this case,
+ * an update for an item that finds a previous update for the same item still
+ * queued is merged into it, by keeping the latest value for each field.
+ * Snapshot events and the other notifications for the item are never merged
+ * and updates are never merged across them. The merged updates are subject
+ * to the bounds of the queue as any other update; in particular, when
+ * merging an update would enlarge the queued one beyond the byte bound,
+ * the update is not merged, but queued on its own, subject to the policy.
+ * Note that only updates supplied as Map instances are subject to
+ * conflation. <BR>
+ * The timestamps that accompany the notifications are read from the system
+ * clock by default. By setting the custom "lightstreamer.timestamp.clock"
+ * system property as "cached", a clock refreshed every millisecond by
+ * a dedicated thread is used instead, which is cheaper to read.
+ * Moreover, the Data Adapter can supply the timestamp of each update
+ * directly, through {@link ItemEventListener#update(String, java.util.Map, boolean, long)}.
  */
 public class DataProviderServer extends Server {
 
@@ -14,8 +14,11 @@
 package com.lightstreamer.adapters.remote;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import com.lightstreamer.log.LogManager;
@@ -29,6 +32,8 @@ class DataProviderServerImpl extends ServerImpl implements ItemEventListener {
     private Map<String,String> _adapterParams;
     private String _adapterConfig;
     private SubscriptionHelper _helper;
+    private UpdateConflator _conflator;
+    private final FieldNameCache _fieldNames;
 
     public DataProviderServerImpl() {
         _initExpected = true;
@@ -36,6 +41,20 @@ class DataProviderServerImpl extends ServerImpl implements ItemEventListener {
         _adapterParams = new HashMap<String,String>();
         _adapterConfig = null;
         _helper = new SubscriptionHelper();
+        _fieldNames = new FieldNameCache();
+
+        String conflationConf = System.getProperty("lightstreamer.notify.conflation");
+        if (conflationConf == null || conflationConf.equalsIgnoreCase("false")) {
+            _conflator = null;
+        } else if (conflationConf.equalsIgnoreCase("true")) {
+            _conflator = new UpdateConflator(_fieldNames);
+        } else {
+            throw new IllegalArgumentException("Invalid lightstreamer.notify.conflation configuration: " + conflationConf);
+        }
+
+        // the init and close requests are handled before dispatching
+        registerHandler(DataProviderProtocol.METHOD_SUBSCRIBE, this::processSubscribe);
+        registerHandler(DataProviderProtocol.METHOD_UNSUBSCRIBE, this::processUnsubscribe);
     }
 
     public final void setAdapter(DataProvider value) {
@@ -95,16 +114,29 @@ class DataProviderServerImpl extends ServerImpl implements ItemEventListener {
             currRequestManager.sendReply(requestId, reply, _log);
         }
     }
-    
-    private void sendNotify(String notify) {
-        MessageSender currNotifySender;
+
+    private void sendReply(String requestId, MessageBuffer reply) {
+        RequestManager currRequestManager;
         synchronized (this) {
-            currNotifySender = _notifySender;
+            currRequestManager = _requestManager;
+        }
+        if (currRequestManager != null) {
+            currRequestManager.sendReply(requestId, reply, _log);
         }
+    }
+    
+    private void sendNotify(String notify) {
+        MessageSender currNotifySender = getNotifySender();
         if (currNotifySender != null) {
             currNotifySender.sendMessage(notify);
         }
     }
+
+    private MessageSender getNotifySender() {
+        synchronized (this) {
+            return _notifySender;
+        }
+    }
     
     @Override
     protected void onDispose() {
@@ -112,58 +144,86 @@ class DataProviderServerImpl extends ServerImpl implements ItemEventListener {
         _helper.shutdown();
     }
 
-    private boolean executeSubscribe(SubscribeData data, String requestId) throws RemotingException {
+    private boolean executeSubscribe(SubscribeData data, String requestId, ItemSubscription subscription) throws RemotingException {
         _log.debug("Processing request: " + requestId);
-        String reply = null;
-        boolean success = false;
+        // a pooled buffer, as the Data Adapter may send notifications
+        // from this thread, by composing them in turn
+        MessageBuffer reply = MessageBuffer.acquire();
         try {
-            boolean snapshotAvailable = _adapter.isSnapshotAvailable(data.itemName);
-            if (!snapshotAvailable) {
-                // we have to send an empty snapshot;
-                // this should be done before letting the Data Adapter start the subscription,
-                // to ensure that the snapshot precedes the real time updates;
-                // note that it also precedes the reply to the subscribe request,
-                // hence it may even precede an unsuccessful reply,
-                // but this is not forbidden by the ARI protocol
-                endOfSnapshot(data.itemName);
+            boolean success = false;
+            try {
+                boolean snapshotAvailable = _adapter.isSnapshotAvailable(data.itemName);
+                if (!snapshotAvailable) {
+                    // we have to send an empty snapshot;
+                    // this should be done before letting the Data Adapter start the subscription,
+                    // to ensure that the snapshot precedes the real time updates;
+                    // note that it also precedes the reply to the subscribe request,
+                    // hence it may even precede an unsuccessful reply,
+                    // but this is not forbidden by the ARI protocol
+                    endOfSnapshot(subscription);
+                }
+                _adapter.subscribe(data.itemName, new ItemHandle(this, subscription));
+                DataProviderProtocol.writeSubscribe(reply);
+                success = true;
+            } catch (SubscriptionException | FailureException  | Error | RuntimeException e) {
+                DataProviderProtocol.writeSubscribe(reply, e);
             }
-            _adapter.subscribe(data.itemName);
-            reply = DataProviderProtocol.writeSubscribe();
-            success = true;
-        } catch (SubscriptionException | FailureException  | Error | RuntimeException e) {
-            reply = DataProviderProtocol.writeSubscribe(e);
-        }
 
-        sendReply(requestId, reply);
-        return success;
+            sendReply(requestId, reply);
+            return success;
+        } finally {
+            MessageBuffer.release(reply);
+        }
     }
 
     private void refuseLateSubscribe(SubscribeData data, String requestId) throws RemotingException {
         _log.debug("Skipping request: " + requestId);
-        SubscriptionException e = new SubscriptionException("Subscribe request come too late");
-        String reply = DataProviderProtocol.writeSubscribe(e);
-        sendReply(requestId, reply);
+        refuseSubscribe(requestId, new SubscriptionException("Subscribe request come too late"));
+    }
+
+    private void failSubscribe(SubscribeData data, String requestId, Exception cause) throws RemotingException {
+        _log.error("Failed to process request " + requestId + " for item " + data.itemName + ": " + cause.getMessage(), cause);
+        refuseSubscribe(requestId, new SubscriptionException("Subscribe request failed: " + cause.getMessage()));
+    }
+
+    private void refuseSubscribe(String requestId, SubscriptionException e) throws RemotingException {
+        MessageBuffer reply = MessageBuffer.acquire();
+        try {
+            DataProviderProtocol.writeSubscribe(reply, e);
+            sendReply(requestId, reply);
+        } finally {
+            MessageBuffer.release(reply);
+        }
     }
 
     private boolean executeUnsubscribe(String itemName, String requestId) throws RemotingException  {
         _log.debug("Processing request: " + requestId);
-        String reply = null;
-        boolean success = false;
+        MessageBuffer reply = MessageBuffer.acquire();
         try {
-            _adapter.unsubscribe(itemName);
-            reply = DataProviderProtocol.writeUnsubscribe();
-            success = true;
-        } catch (SubscriptionException | FailureException | Error | RuntimeException e) {
-            reply = DataProviderProtocol.writeUnsubscribe(e);
+            boolean success = false;
+            try {
+                _adapter.unsubscribe(itemName);
+                DataProviderProtocol.writeUnsubscribe(reply);
+                success = true;
+            } catch (SubscriptionException | FailureException | Error | RuntimeException e) {
+                DataProviderProtocol.writeUnsubscribe(reply, e);
+            }
+            sendReply(requestId, reply);
+            return success;
+        } finally {
+            MessageBuffer.release(reply);
         }
-        sendReply(requestId, reply);
-        return success;
     }
 
     private void dummyUnsubscribe(String itemName, String requestId) {
         _log.debug("Skipping request: " + requestId);
-        String reply = DataProviderProtocol.writeUnsubscribe();
-        sendReply(requestId, reply);
+        MessageBuffer reply = MessageBuffer.acquire();
+        try {
+            DataProviderProtocol.writeUnsubscribe(reply);
+            sendReply(requestId, reply);
+        } finally {
+            MessageBuffer.release(reply);
+        }
     }
 
     private static class SubscriptionTask implements Task {
@@ -180,13 +240,17 @@ class DataProviderServerImpl extends ServerImpl implements ItemEventListener {
             return _requestId;
         }
         @Override
-        public final boolean doTask() throws RemotingException {
-            return _container.executeSubscribe(_data, _requestId);
+        public final boolean doTask(ItemSubscription subscription) throws RemotingException {
+            return _container.executeSubscribe(_data, _requestId, subscription);
         }
         @Override
         public final void doLateTask() throws RemotingException {
             _container.refuseLateSubscribe(_data, _requestId);
         }
+        @Override
+        public final void doFailedTask(Exception cause) throws RemotingException {
+            _container.failSubscribe(_data, _requestId, cause);
+        }
     }
 
     private static class UnsubscriptionTask implements Task {
@@ -203,13 +267,20 @@ class DataProviderServerImpl extends ServerImpl implements ItemEventListener {
             return null;
         }
         @Override
-        public final boolean doTask() throws RemotingException {
+        public final boolean doTask(ItemSubscription subscription) throws RemotingException {
             return _container.executeUnsubscribe(_itemName, _requestId);
         }
         @Override
         public final void doLateTask() {
             _container.dummyUnsubscribe(_itemName, _requestId);
         }
+        @Override
+        public final void doFailedTask(Exception cause) {
+            // not expected, as an unsubscription involves no encoding;
+            // the reply is due anyway
+            _log.error("Failed to process request " + _requestId + " for item " + _itemName + ": " + cause.getMessage(), cause);
+            _container.dummyUnsubscribe(_itemName, _requestId);
+        }
     }
     
     public void sendRemoteCredentials(Map<String,String> credentials) throws RemotingException {
@@ -224,22 +295,15 @@ class DataProviderServerImpl extends ServerImpl implements ItemEventListener {
     }
 
     @Override
-    public void onRequestReceived(String requestId, String request) {
-        int sep = request.indexOf(RemotingProtocol.SEP);
-        if (sep < 1) {
-            _log.warn("Discarding malformed request: " + request);
-            return;
-        }
-
-        String method = request.substring(0, sep);
+    public void onRequestReceived(String requestId, RequestDecoder request) {
 
         try {
-            if (method.equals(DataProviderProtocol.METHOD_CLOSE)) {
+            if (request.isMethod(DataProviderProtocol.METHOD_CLOSE)) {
                 // this can also precede the init request
                 if (! requestId.equals(DataProviderProtocol.CLOSE_REQUEST_ID)) {
                     throw new RemotingException("Unexpected id found while parsing a " + DataProviderProtocol.METHOD_CLOSE + " request");
                 }
-                final Map<String, String> closeParams = DataProviderProtocol.readClose(request.substring(sep + 1));
+                final Map<String, String> closeParams = DataProviderProtocol.readClose(request);
                 String closeReason = closeParams.get(DataProviderProtocol.KEY_CLOSE_REASON);
                 dispose();
                 if (closeReason != null) {
@@ -249,7 +313,7 @@ class DataProviderServerImpl extends ServerImpl implements ItemEventListener {
                 }
             }
 
-            boolean isInitRequest = method.equals(DataProviderProtocol.METHOD_DATA_INIT);
+            boolean isInitRequest = request.isMethod(DataProviderProtocol.METHOD_DATA_INIT);
             if (isInitRequest && !_initExpected) {
                 throw new RemotingException("Unexpected late " + DataProviderProtocol.METHOD_DATA_INIT + " request");
             } else if (!isInitRequest && _initExpected) {
@@ -261,7 +325,7 @@ class DataProviderServerImpl extends ServerImpl implements ItemEventListener {
                 _initExpected = false;
                 String keepaliveHint = null;
                 String reply;
-                Map<String,String> initParams = DataProviderProtocol.readInit(request.substring(sep + 1));
+                Map<String,String> initParams = DataProviderProtocol.readInit(request);
                 try {
                     String proxyVersion = initParams.get(PROTOCOL_VERSION_PARAM);
                     String advertisedVersion = getSupportedVersion(proxyVersion);
@@ -297,18 +361,13 @@ class DataProviderServerImpl extends ServerImpl implements ItemEventListener {
                 useKeepaliveHint(keepaliveHint);
                 sendReply(requestId, reply);
 
-            } else if (method.equals(DataProviderProtocol.METHOD_SUBSCRIBE)) {
-                SubscribeData data = DataProviderProtocol.readSubscribe(request.substring(sep + 1));
-                Task task = new SubscriptionTask(this, data, requestId);
-                _helper.doSubscription(data.itemName, task);
-
-            } else if (method.equals(DataProviderProtocol.METHOD_UNSUBSCRIBE)) {
-                String itemName = DataProviderProtocol.readUnsubscribe(request.substring(sep + 1));
-                Task task = new UnsubscriptionTask(this, itemName, requestId);
-                _helper.doUnsubscription(itemName, task);
-
             } else {
-                _log.warn("Discarding unknown request: " + request);
+                RequestHandler handler = getHandler(request);
+                if (handler != null) {
+                    handler.handle(requestId, request);
+                } else {
+                    _log.warn("Discarding unknown request: " + request);
+                }
             }
 
         } catch (RemotingException e) {
@@ -316,6 +375,18 @@ class DataProviderServerImpl extends ServerImpl implements ItemEventListener {
         }
     }
 
+    private void processSubscribe(String requestId, RequestDecoder request) throws RemotingException {
+        SubscribeData data = DataProviderProtocol.readSubscribe(request);
+        Task task = new SubscriptionTask(this, data, requestId);
+        _helper.doSubscription(data.itemName, task);
+    }
+
+    private void processUnsubscribe(String requestId, RequestDecoder request) throws RemotingException {
+        String itemName = DataProviderProtocol.readUnsubscribe(request);
+        Task task = new UnsubscriptionTask(this, itemName, requestId);
+        _helper.doUnsubscription(itemName, task);
+    }
+
     @Override
     public boolean handleIOException(IOException exception) {
         _log.error("Caught exception: " + exception.getMessage() + ", trying to notify a failure...", exception);
@@ -345,19 +416,44 @@ class DataProviderServerImpl extends ServerImpl implements ItemEventListener {
         return false;
     }
 
+    private void onRefused(ItemSubscription subscription) {
+        // the protocol offers no way to fail a single item towards the
+        // Proxy Adapter, so the refusal can only be logged; to avoid flooding
+        // the log while the queue stays full, only the first one is reported
+        if (subscription.markRefused()) {
+            _log.warn("Update for item " + subscription.getItemName() + " discarded because of notification queue full; further discarded updates for this item will not be logged");
+        } else if (_log.isDebugEnabled()) {
+            _log.debug("Update for item " + subscription.getItemName() + " discarded because of notification queue full");
+        }
+    }
+
     // ////////////////////////////////////////////////////////////////////////
     // ItemEventListener methods
 
     public final void update(String itemName, ItemEvent itemEvent, boolean isSnapshot) {
-        // both getSubscriptionCode and sendNotify take simple locks,
-        // which don't block and don't take further locks;
-        // hence this invocation can be made by the Adapter while holding
-        // the lock on the item state, with no issues
-        String code = _helper.getSubscriptionCode(itemName);
-        if (code != null) {
+        // getSubscription takes no locks and sendNotify takes simple locks,
+        // which don't take further locks; however, sendNotify may wait for
+        // the writer thread to free some space, when the notification queue
+        // is bounded with the "block" policy or when the preallocated queue
+        // is full; as the writer thread takes no locks of the Adapter, this
+        // invocation can still be made while holding the lock on the item
+        // state, with no deadlock, though it may stall the lock contenders
+        ItemSubscription subscription = _helper.getSubscription(itemName);
+        if (subscription != null) {
             try {
-                String notify = DataProviderProtocol.writeUpdateByEvent(itemName, code, itemEvent, isSnapshot);
-                sendNotify(notify);
+                MessageSender currNotifySender = getNotifySender();
+                if (currNotifySender != null) {
+                    if (_conflator != null) {
+                        _conflator.barrier(subscription);
+                    }
+                    MessageBuffer notify = currNotifySender.newNotify();
+                    DataProviderProtocol.writeUpdateByEvent(notify, subscription, _fieldNames, itemEvent, isSnapshot);
+                    if (! currNotifySender.sendNotify(notify, ! isSnapshot)) {
+                        // the notification queue is full and the configured policy
+                        // doesn't allow waiting; the sender has accounted for this
+                        onRefused(subscription);
+                    }
+                }
 
             } catch (RemotingException e) {
                 onException(e);
@@ -372,19 +468,72 @@ class DataProviderServerImpl extends ServerImpl implements ItemEventListener {
     }
 
     public final void update(String itemName, Map<String,?> itemEvent, boolean isSnapshot) {
-        // both getSubscriptionCode and sendNotify take simple locks,
-        // which don't block and don't take further locks;
-        // hence this invocation can be made by the Adapter while holding
-        // the lock on the item state, with no issues
-        String code = _helper.getSubscriptionCode(itemName);
-        if (code != null) {
-            try {
-                String notify = DataProviderProtocol.writeUpdateByMap(itemName, code, itemEvent, isSnapshot);
-                sendNotify(notify);
+        update(itemName, itemEvent, isSnapshot, -1);
+    }
 
-            } catch (RemotingException e) {
-                onException(e);
+    public final void update(String itemName, Map<String,?> itemEvent, boolean isSnapshot, long timestamp) {
+        // getSubscription takes no locks and sendNotify takes simple locks,
+        // which don't take further locks; however, sendNotify may wait for
+        // the writer thread to free some space, when the notification queue
+        // is bounded with the "block" policy or when the preallocated queue
+        // is full; as the writer thread takes no locks of the Adapter, this
+        // invocation can still be made while holding the lock on the item
+        // state, with no deadlock, though it may stall the lock contenders
+        ItemSubscription subscription = _helper.getSubscription(itemName);
+        if (subscription != null) {
+            update(subscription, itemEvent, isSnapshot, timestamp);
+        } else {
+            // there is no active subscription in this moment;
+            // this must be an error by the Adapter, which must have sent
+            // the event after the termination of an unsubscribe()
+            // (or before, but without synchronizing, which is also wrong)
+            _log.warn("Unexpected update for item " + itemName);
+        }
+    }
+
+    final void update(ItemSubscription subscription, Map<String,?> itemEvent, boolean isSnapshot, long timestamp) {
+        try {
+            MessageSender currNotifySender = getNotifySender();
+            if (currNotifySender != null) {
+                long millis = (timestamp >= 0 ? timestamp : currNotifySender.currentTimeMillis());
+                boolean sent;
+                if (_conflator != null && ! isSnapshot) {
+                    sent = _conflator.offer(currNotifySender, subscription, itemEvent, millis);
+                } else {
+                    if (_conflator != null) {
+                        _conflator.barrier(subscription);
+                    }
+                    MessageBuffer notify = currNotifySender.newNotify(millis);
+                    DataProviderProtocol.writeUpdateByMap(notify, subscription, _fieldNames, itemEvent, isSnapshot);
+                    sent = currNotifySender.sendNotify(notify, ! isSnapshot);
+                }
+                if (! sent) {
+                    // the notification queue is full and the configured policy
+                    // doesn't allow waiting; the sender has accounted for this
+                    onRefused(subscription);
+                }
             }
+
+        } catch (RemotingException e) {
+            onException(e);
+        }
+    }
+
+    public final void update(String itemName, FieldValues values, boolean isSnapshot) {
+        update(itemName, values, isSnapshot, -1);
+    }
+
+    public final void update(String itemName, FieldValues values, boolean isSnapshot, long timestamp) {
+        // getSubscription takes no locks and sendNotify takes simple locks,
+        // which don't take further locks; however, sendNotify may wait for
+        // the writer thread to free some space, when the notification queue
+        // is bounded with the "block" policy or when the preallocated queue
+        // is full; as the writer thread takes no locks of the Adapter, this
+        // invocation can still be made while holding the lock on the item
+        // state, with no deadlock, though it may stall the lock contenders
+        ItemSubscription subscription = _helper.getSubscription(itemName);
+        if (subscription != null) {
+            update(subscription, values, isSnapshot, timestamp);
         } else {
             // there is no active subscription in this moment;
             // this must be an error by the Adapter, which must have sent
@@ -394,16 +543,143 @@ class DataProviderServerImpl extends ServerImpl implements ItemEventListener {
         }
     }
 
+    final void update(ItemSubscription subscription, FieldValues values, boolean isSnapshot, long timestamp) {
+        try {
+            MessageSender currNotifySender = getNotifySender();
+            if (currNotifySender != null) {
+                long millis = (timestamp >= 0 ? timestamp : currNotifySender.currentTimeMillis());
+                boolean sent;
+                if (_conflator != null && ! isSnapshot) {
+                    // the conflator may keep the values, whereas the
+                    // container can be reused by the caller after return
+                    sent = _conflator.offer(currNotifySender, subscription, values.toMap(), millis);
+                } else {
+                    if (_conflator != null) {
+                        _conflator.barrier(subscription);
+                    }
+                    MessageBuffer notify = currNotifySender.newNotify(millis);
+                    DataProviderProtocol.writeUpdateByValues(notify, subscription, _fieldNames, values, isSnapshot);
+                    sent = currNotifySender.sendNotify(notify, ! isSnapshot);
+                }
+                if (! sent) {
+                    // the notification queue is full and the configured policy
+                    // doesn't allow waiting; the sender has accounted for this
+                    onRefused(subscription);
+                }
+            }
+
+        } catch (RemotingException e) {
+            onException(e);
+        }
+    }
+
+    public final void updateBatch(UpdateBatch batch) {
+        int count = batch.size();
+        if (count == 0) {
+            return;
+        }
+        if (_conflator != null) {
+            // each update has to be merged on its own
+            ItemEventListener.super.updateBatch(batch);
+            return;
+        }
+        // all the subscriptions are resolved in a single pass
+        ItemSubscription[] subscriptions = batch._subscriptions;
+        _helper.getSubscriptions(batch.itemNames(), count, subscriptions);
+        try {
+            MessageSender currNotifySender = getNotifySender();
+            if (currNotifySender == null) {
+                return;
+            }
+            long millis = currNotifySender.currentTimeMillis();
+            MessageBuffer notify = currNotifySender.newNotify(millis);
+            int lines = 0;
+            boolean droppable = true;
+            List<RemotingException> failures = null;
+            for (int i = 0; i < count; i++) {
+                ItemSubscription subscription = subscriptions[i];
+                if (subscription == null) {
+                    // as for update, this must be an error by the Adapter
+                    _log.warn("Unexpected update for item " + batch.getItemName(i));
+                    continue;
+                }
+                // the events follow one another in the same buffer,
+                // so that they are enqueued as a single element
+                int mark = notify.length();
+                if (lines > 0) {
+                    currNotifySender.nextNotify(notify, millis);
+                }
+                boolean isSnapshot = batch.snapshot(i);
+                Object event = batch.event(i);
+                try {
+                    if (event instanceof FieldValues) {
+                        DataProviderProtocol.writeUpdateByValues(notify, subscription, _fieldNames, (FieldValues) event, isSnapshot);
+                    } else {
+                        @SuppressWarnings("unchecked")
+                        Map<String,?> itemEvent = (Map<String,?>) event;
+                        DataProviderProtocol.writeUpdateByMap(notify, subscription, _fieldNames, itemEvent, isSnapshot);
+                    }
+                } catch (RemotingException e) {
+                    // only this event is lost; the exception will be notified
+                    // later, as the handler might reuse the buffer
+                    notify.truncate(mark);
+                    if (failures == null) {
+                        failures = new ArrayList<RemotingException>();
+                    }
+                    failures.add(e);
+                    continue;
+                }
+                lines++;
+                if (isSnapshot) {
+                    droppable = false;
+                }
+            }
+            if (lines > 0) {
+                if (! currNotifySender.sendNotify(notify, droppable)) {
+                    // the notification queue is full and the configured policy
+                    // doesn't allow waiting; the sender has accounted for this;
+                    // the whole batch is lost, hence all its items are involved
+                    for (int i = 0; i < count; i++) {
+                        if (subscriptions[i] != null) {
+                            onRefused(subscriptions[i]);
+                        }
+                    }
+                }
+            }
+            if (failures != null) {
+                for (RemotingException e : failures) {
+                    onException(e);
+                }
+            }
+        } finally {
+            Arrays.fill(subscriptions, 0, count, null);
+        }
+    }
+
     public final void update(String itemName, IndexedItemEvent itemEvent, boolean isSnapshot) {
-        // both getSubscriptionCode and sendNotify take simple locks,
-        // which don't block and don't take further locks;
-        // hence this invocation can be made by the Adapter while holding
-        // the lock on the item state, with no issues
-        String code = _helper.getSubscriptionCode(itemName);
-        if (code != null) {
+        // getSubscription takes no locks and sendNotify takes simple locks,
+        // which don't take further locks; however, sendNotify may wait for
+        // the writer thread to free some space, when the notification queue
+        // is bounded with the "block" policy or when the preallocated queue
+        // is full; as the writer thread takes no locks of the Adapter, this
+        // invocation can still be made while holding the lock on the item
+        // state, with no deadlock, though it may stall the lock contenders
+        ItemSubscription subscription = _helper.getSubscription(itemName);
+        if (subscription != null) {
             try {
-                String notify = DataProviderProtocol.writeUpdateByIndexedEvent(itemName, code, itemEvent, isSnapshot);
-                sendNotify(notify);
+                MessageSender currNotifySender = getNotifySender();
+                if (currNotifySender != null) {
+                    if (_conflator != null) {
+                        _conflator.barrier(subscription);
+                    }
+                    MessageBuffer notify = currNotifySender.newNotify();
+                    DataProviderProtocol.writeUpdateByIndexedEvent(notify, subscription, _fieldNames, itemEvent, isSnapshot);
+                    if (! currNotifySender.sendNotify(notify, ! isSnapshot)) {
+                        // the notification queue is full and the configured policy
+                        // doesn't allow waiting; the sender has accounted for this
+                        onRefused(subscription);
+                    }
+                }
 
             } catch (RemotingException e) {
                 onException(e);
@@ -418,19 +694,16 @@ class DataProviderServerImpl extends ServerImpl implements ItemEventListener {
     }
 
     public final void endOfSnapshot(String itemName) {
-        // both getSubscriptionCode and sendNotify take simple locks,
-        // which don't block and don't take further locks;
-        // hence this invocation can be made by the Adapter while holding
-        // the lock on the item state, with no issues
-        String code = _helper.getSubscriptionCode(itemName);
-        if (code != null) {
-            try {
-                String notify = DataProviderProtocol.writeEndOfSnapshot(itemName, code);
-                sendNotify(notify);
-
-            } catch (RemotingException e) {
-                onException(e);
-            }
+        // getSubscription takes no locks and sendNotify takes simple locks,
+        // which don't take further locks; however, sendNotify may wait for
+        // the writer thread to free some space, when the notification queue
+        // is bounded with the "block" policy or when the preallocated queue
+        // is full; as the writer thread takes no locks of the Adapter, this
+        // invocation can still be made while holding the lock on the item
+        // state, with no deadlock, though it may stall the lock contenders
+        ItemSubscription subscription = _helper.getSubscription(itemName);
+        if (subscription != null) {
+            endOfSnapshot(subscription);
         } else {
             // there is no active subscription in this moment;
             // this must be an error by the Adapter, which must have sent
@@ -440,20 +713,34 @@ class DataProviderServerImpl extends ServerImpl implements ItemEventListener {
         }
     }
 
-    public final void clearSnapshot(String itemName) {
-        // both getSubscriptionCode and sendNotify take simple locks,
-        // which don't block and don't take further locks;
-        // hence this invocation can be made by the Adapter while holding
-        // the lock on the item state, with no issues
-        String code = _helper.getSubscriptionCode(itemName);
-        if (code != null) {
-            try {
-                String notify = DataProviderProtocol.writeClearSnapshot(itemName, code);
-                sendNotify(notify);
-
-            } catch (RemotingException e) {
-                onException(e);
+    final void endOfSnapshot(ItemSubscription subscription) {
+        try {
+            MessageSender currNotifySender = getNotifySender();
+            if (currNotifySender != null) {
+                if (_conflator != null) {
+                    _conflator.barrier(subscription);
+                }
+                MessageBuffer notify = currNotifySender.newNotify();
+                DataProviderProtocol.writeEndOfSnapshot(notify, subscription);
+                currNotifySender.sendNotify(notify);
             }
+
+        } catch (RemotingException e) {
+            onException(e);
+        }
+    }
+
+    public final void clearSnapshot(String itemName) {
+        // getSubscription takes no locks and sendNotify takes simple locks,
+        // which don't take further locks; however, sendNotify may wait for
+        // the writer thread to free some space, when the notification queue
+        // is bounded with the "block" policy or when the preallocated queue
+        // is full; as the writer thread takes no locks of the Adapter, this
+        // invocation can still be made while holding the lock on the item
+        // state, with no deadlock, though it may stall the lock contenders
+        ItemSubscription subscription = _helper.getSubscription(itemName);
+        if (subscription != null) {
+            clearSnapshot(subscription);
         } else {
             // there is no active subscription in this moment;
             // this must be an error by the Adapter, which must have sent
@@ -463,16 +750,43 @@ class DataProviderServerImpl extends ServerImpl implements ItemEventListener {
         }
     }
 
+    final void clearSnapshot(ItemSubscription subscription) {
+        try {
+            MessageSender currNotifySender = getNotifySender();
+            if (currNotifySender != null) {
+                if (_conflator != null) {
+                    _conflator.barrier(subscription);
+                }
+                MessageBuffer notify = currNotifySender.newNotify();
+                DataProviderProtocol.writeClearSnapshot(notify, subscription);
+                currNotifySender.sendNotify(notify);
+            }
+
+        } catch (RemotingException e) {
+            onException(e);
+        }
+    }
+
     public final void declareFieldDiffOrder(String itemName, Map<String,DiffAlgorithm[]> algorithmsMap) {
-        // both getSubscriptionCode and sendNotify take simple locks,
-        // which don't block and don't take further locks;
-        // hence this invocation can be made by the Adapter while holding
-        // the lock on the item state, with no issues
-        String code = _helper.getSubscriptionCode(itemName);
-        if (code != null) {
+        // getSubscription takes no locks and sendNotify takes simple locks,
+        // which don't take further locks; however, sendNotify may wait for
+        // the writer thread to free some space, when the notification queue
+        // is bounded with the "block" policy or when the preallocated queue
+        // is full; as the writer thread takes no locks of the Adapter, this
+        // invocation can still be made while holding the lock on the item
+        // state, with no deadlock, though it may stall the lock contenders
+        ItemSubscription subscription = _helper.getSubscription(itemName);
+        if (subscription != null) {
             try {
-                String notify = DataProviderProtocol.writeDeclareFieldDiffOrder(itemName, code, algorithmsMap);
-                sendNotify(notify);
+                MessageSender currNotifySender = getNotifySender();
+                if (currNotifySender != null) {
+                    if (_conflator != null) {
+                        _conflator.barrier(subscription);
+                    }
+                    MessageBuffer notify = currNotifySender.newNotify();
+                    DataProviderProtocol.writeDeclareFieldDiffOrder(notify, subscription, algorithmsMap);
+                    currNotifySender.sendNotify(notify);
+                }
 
             } catch (RemotingException e) {
                 onException(e);
@@ -486,6 +800,14 @@ class DataProviderServerImpl extends ServerImpl implements ItemEventListener {
         }
     }
 
+    public final void declareFieldNames(String[] fieldNames) {
+        try {
+            _fieldNames.declare(fieldNames);
+        } catch (RemotingException e) {
+            onException(e);
+        }
+    }
+
     public final void failure(Exception exception) {
         String notify;
         try {
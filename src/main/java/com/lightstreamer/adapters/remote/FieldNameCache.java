@@ -0,0 +1,101 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+/**
+ * Keeps the field names declared by the Data Adapter, each one with its
+ * "|S|&lt;name&gt;|S|" segment already encoded, so that the updates only
+ * have to encode the values. <BR>
+ * The lookup is by identity, hence it only succeeds when the Data Adapter
+ * supplies the same String instances it has declared; for any other name
+ * the segment is encoded as usual. The table is replaced as a whole upon
+ * each declaration, so that lookups need no locking.
+ */
+class FieldNameCache {
+
+    private static final class Table {
+        final String[] names;
+        final byte[][] segments;
+        final int mask;
+        final int count;
+
+        Table(int capacity, int count) {
+            names = new String[capacity];
+            segments = new byte[capacity][];
+            mask = capacity - 1;
+            this.count = count;
+        }
+    }
+
+    private volatile Table _table = new Table(1, 0);
+
+    public final synchronized void declare(String[] names) throws RemotingException {
+        Table current = _table;
+        int count = current.count;
+        for (String name : names) {
+            if (name != null && get(current, name) == null) {
+                count++;
+            }
+        }
+        if (count == current.count) {
+            return;
+        }
+
+        // keep the load factor below 0.5, so that the probes are short
+        int capacity = Integer.highestOneBit(count * 4 - 1);
+        Table table = new Table(capacity, count);
+        for (int i = 0; i < current.names.length; i++) {
+            if (current.names[i] != null) {
+                put(table, current.names[i], current.segments[i]);
+            }
+        }
+        for (String name : names) {
+            if (name != null && get(table, name) == null) {
+                put(table, name, DataProviderProtocol.encodeFieldNameSegment(name));
+            }
+        }
+        _table = table;
+    }
+
+    /**
+     * Returns the encoded segment for the supplied field name,
+     * or null if the name instance has not been declared.
+     */
+    public final byte[] get(String name) {
+        return get(_table, name);
+    }
+
+    private static byte[] get(Table table, String name) {
+        String[] names = table.names;
+        int i = System.identityHashCode(name) & table.mask;
+        String found;
+        while ((found = names[i]) != null) {
+            if (found == name) {
+                return table.segments[i];
+            }
+            i = (i + 1) & table.mask;
+        }
+        return null;
+    }
+
+    private static void put(Table table, String name, byte[] segment) {
+        int i = System.identityHashCode(name) & table.mask;
+        while (table.names[i] != null) {
+            i = (i + 1) & table.mask;
+        }
+        table.names[i] = name;
+        table.segments[i] = segment;
+    }
+
+}
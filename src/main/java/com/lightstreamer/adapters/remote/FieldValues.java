@@ -0,0 +1,369 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Reusable container of the Field values of an Item Event, to be supplied
+ * to {@link ItemEventListener#update(String, FieldValues, boolean)}. <BR>
+ * Differently than with a Map, numeric values can be supplied as such,
+ * and are formatted directly in the outgoing message, without the need
+ * for creating a String for each value; similarly, values already encoded
+ * in UTF-8 can be supplied as byte arrays or buffers, which are copied
+ * without being decoded and re-encoded (only the bytes that are special
+ * for the protocol are quoted); hence, by reusing the same instance for
+ * subsequent events, an Item Event can be sent without producing garbage.
+ * Field names should be supplied as constants, which also allows them to
+ * benefit from {@link ItemEventListener#declareFieldNames}. <BR>
+ * The Fields are sent in the order in which they are set; each Field
+ * should be set at most once for each event. <BR>
+ * An instance is not thread safe; it can be cleared and reused as soon as
+ * the update call returns.
+ */
+public final class FieldValues {
+
+    private static final byte KIND_STRING = 0;
+    private static final byte KIND_LONG = 1;
+    private static final byte KIND_DOUBLE = 2;
+    private static final byte KIND_SCALED = 3;
+    private static final byte KIND_UTF8 = 4;
+    private static final byte KIND_BUFFER = 5;
+
+    /**
+     * The maximum number of decimals for {@link #set(String, double, int)}.
+     */
+    public static final int MAX_SCALE = 15;
+
+    private String[] _names;
+    private byte[] _kinds;
+    private Object[] _objects;
+    private long[] _longs;
+    private double[] _doubles;
+    private int _size;
+
+    /**
+     * Creates an empty container.
+     */
+    public FieldValues() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty container, sized for the supplied number of Fields;
+     * the container grows anyway as needed.
+     *
+     * @param capacity The expected number of Fields.
+     */
+    public FieldValues(int capacity) {
+        capacity = Math.max(capacity, 1);
+        _names = new String[capacity];
+        _kinds = new byte[capacity];
+        _objects = new Object[capacity];
+        _longs = new long[capacity];
+        _doubles = new double[capacity];
+        _size = 0;
+    }
+
+    /**
+     * Removes all the Fields, so that the instance can be reused
+     * for a new Item Event.
+     *
+     * @return This instance.
+     */
+    @Nonnull
+    public FieldValues clear() {
+        // the references are dropped, not to retain the caller's data
+        java.util.Arrays.fill(_objects, 0, _size, null);
+        _size = 0;
+        return this;
+    }
+
+    /**
+     * Sets the value of a Field as a String.
+     *
+     * @param name The name of the Field.
+     * @param value The value of the Field; it can be null.
+     * @return This instance.
+     */
+    @Nonnull
+    public FieldValues set(@Nonnull String name, @Nullable String value) {
+        int i = add(name, KIND_STRING);
+        _objects[i] = value;
+        return this;
+    }
+
+    /**
+     * Sets the value of a Field as a string already encoded in UTF-8.
+     * The bytes are copied to the outgoing message without being
+     * re-encoded, apart from the quoting of the bytes that are special
+     * for the protocol; the array should not be modified until the update
+     * call returns.
+     *
+     * @param name The name of the Field.
+     * @param utf8 The UTF-8 encoded value of the Field; it can be null.
+     * @return This instance.
+     */
+    @Nonnull
+    public FieldValues setUtf8(@Nonnull String name, @Nullable byte[] utf8) {
+        return setUtf8(name, utf8, 0, utf8 == null ? 0 : utf8.length);
+    }
+
+    /**
+     * Sets the value of a Field as a string already encoded in UTF-8,
+     * held in a portion of an array, as in a received frame.
+     * The bytes are copied to the outgoing message without being
+     * re-encoded, apart from the quoting of the bytes that are special
+     * for the protocol; the array should not be modified until the update
+     * call returns.
+     *
+     * @param name The name of the Field.
+     * @param utf8 The array which holds the UTF-8 encoded value of the Field;
+     * it can be null, in which case offset and length are ignored.
+     * @param offset The start of the value in the array.
+     * @param length The number of bytes of the value.
+     * @return This instance.
+     *
+     * @throws IndexOutOfBoundsException if the portion exceeds the array.
+     */
+    @Nonnull
+    public FieldValues setUtf8(@Nonnull String name, @Nullable byte[] utf8, int offset, int length) {
+        if (utf8 == null) {
+            return set(name, (String) null);
+        }
+        if (offset < 0 || length < 0 || offset > utf8.length - length) {
+            throw new IndexOutOfBoundsException("Offset: " + offset + ", length: " + length + ", array length: " + utf8.length);
+        }
+        int i = add(name, KIND_UTF8);
+        _objects[i] = utf8;
+        _longs[i] = ((long) offset << 32) | length;
+        return this;
+    }
+
+    /**
+     * Sets the value of a Field as a string already encoded in UTF-8,
+     * held in the remaining bytes of a buffer, which can also be direct.
+     * The buffer position is not affected. The bytes are copied to the
+     * outgoing message without being re-encoded, apart from the quoting
+     * of the bytes that are special for the protocol; the buffer contents
+     * and position should not be modified until the update call returns.
+     *
+     * @param name The name of the Field.
+     * @param utf8 The buffer which holds the UTF-8 encoded value of the Field;
+     * it can be null.
+     * @return This instance.
+     */
+    @Nonnull
+    public FieldValues setUtf8(@Nonnull String name, @Nullable ByteBuffer utf8) {
+        int i = add(name, utf8 == null ? KIND_STRING : KIND_BUFFER);
+        _objects[i] = utf8;
+        return this;
+    }
+
+    /**
+     * Sets the value of a Field as an integer number.
+     *
+     * @param name The name of the Field.
+     * @param value The value of the Field.
+     * @return This instance.
+     */
+    @Nonnull
+    public FieldValues set(@Nonnull String name, int value) {
+        return set(name, (long) value);
+    }
+
+    /**
+     * Sets the value of a Field as a long integer number.
+     *
+     * @param name The name of the Field.
+     * @param value The value of the Field.
+     * @return This instance.
+     */
+    @Nonnull
+    public FieldValues set(@Nonnull String name, long value) {
+        int i = add(name, KIND_LONG);
+        _longs[i] = value;
+        return this;
+    }
+
+    /**
+     * Sets the value of a Field as a floating point number. The value
+     * is sent with the fewest decimal digits that identify it univocally,
+     * and at least one; very large and very small values are sent in
+     * the form used by Double.toString.
+     *
+     * @param name The name of the Field.
+     * @param value The value of the Field.
+     * @return This instance.
+     */
+    @Nonnull
+    public FieldValues set(@Nonnull String name, double value) {
+        int i = add(name, KIND_DOUBLE);
+        _doubles[i] = value;
+        return this;
+    }
+
+    /**
+     * Sets the value of a Field as a floating point number, to be sent with
+     * a fixed number of decimal digits, as typical for prices.
+     * The value is rounded to the nearest; NaN and infinite values are sent
+     * in the form used by Double.toString.
+     *
+     * @param name The name of the Field.
+     * @param value The value of the Field.
+     * @param scale The number of decimal digits, between 0 and {@link #MAX_SCALE}.
+     * @return This instance.
+     *
+     * @throws IllegalArgumentException if the scale is out of range.
+     */
+    @Nonnull
+    public FieldValues set(@Nonnull String name, double value, int scale) {
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("Invalid scale: " + scale);
+        }
+        int i = add(name, KIND_SCALED);
+        _doubles[i] = value;
+        _longs[i] = scale;
+        return this;
+    }
+
+    private int add(String name, byte kind) {
+        if (_size == _names.length) {
+            int capacity = _size * 2;
+            _names = java.util.Arrays.copyOf(_names, capacity);
+            _kinds = java.util.Arrays.copyOf(_kinds, capacity);
+            _objects = java.util.Arrays.copyOf(_objects, capacity);
+            _longs = java.util.Arrays.copyOf(_longs, capacity);
+            _doubles = java.util.Arrays.copyOf(_doubles, capacity);
+        }
+        int i = _size++;
+        _names[i] = name;
+        _kinds[i] = kind;
+        return i;
+    }
+
+    /**
+     * Returns the number of Fields set.
+     *
+     * @return The number of Fields.
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Returns the name of a Field.
+     *
+     * @param index The position of the Field, in the order of setting.
+     * @return The name of the Field.
+     */
+    @Nonnull
+    public String getName(int index) {
+        checkIndex(index);
+        return _names[index];
+    }
+
+    /**
+     * Returns the value of a Field, in the form in which it would be sent.
+     * For numeric values, this involves the creation of a String.
+     *
+     * @param index The position of the Field, in the order of setting.
+     * @return The value of the Field; it can be null.
+     */
+    @Nullable
+    public String getValue(int index) {
+        checkIndex(index);
+        switch (_kinds[index]) {
+            case KIND_STRING:
+                return (String) _objects[index];
+            case KIND_UTF8:
+                return new String((byte[]) _objects[index], getOffset(index), getLength(index), StandardCharsets.UTF_8);
+            case KIND_BUFFER:
+                return StandardCharsets.UTF_8.decode(((ByteBuffer) _objects[index]).duplicate()).toString();
+            default:
+                break;
+        }
+        MessageBuffer out = new MessageBuffer(32);
+        appendNumber(index, out);
+        return out.toString();
+    }
+
+    /**
+     * Returns a Map with the same Fields and values, in the form in which
+     * they would be sent, for use with the Map based interfaces.
+     *
+     * @return A new Map.
+     */
+    @Nonnull
+    public Map<String,String> toMap() {
+        Map<String,String> map = new LinkedHashMap<String,String>(_size * 2);
+        for (int i = 0; i < _size; i++) {
+            map.put(_names[i], getValue(i));
+        }
+        return map;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= _size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + _size);
+        }
+    }
+
+    final void writeValue(int index, MessageBuffer out) throws RemotingException {
+        switch (_kinds[index]) {
+            case KIND_STRING:
+                RemotingProtocol.encodeString(out, (String) _objects[index]);
+                break;
+            case KIND_UTF8:
+                RemotingProtocol.encodeUtf8(out, (byte[]) _objects[index], getOffset(index), getLength(index));
+                break;
+            case KIND_BUFFER:
+                RemotingProtocol.encodeUtf8(out, (ByteBuffer) _objects[index]);
+                break;
+            default:
+                // numbers contain no characters to be encoded
+                appendNumber(index, out);
+                break;
+        }
+    }
+
+    private int getOffset(int index) {
+        return (int) (_longs[index] >>> 32);
+    }
+
+    private int getLength(int index) {
+        return (int) _longs[index];
+    }
+
+    private void appendNumber(int index, MessageBuffer out) {
+        switch (_kinds[index]) {
+            case KIND_LONG:
+                out.append(_longs[index]);
+                break;
+            case KIND_DOUBLE:
+                out.appendDouble(_doubles[index]);
+                break;
+            default:
+                out.appendDouble(_doubles[index], (int) _longs[index]);
+                break;
+        }
+    }
+
+}
@@ -54,13 +54,22 @@ public interface ItemEventListener {
      * This assures that, upon a new subscription for the Item, no trailing
      * events due to the previous subscription can be received by the Remote
      * Server.
-     * Note that the method is nonblocking; moreover, it only takes locks
-     * to first order mutexes; so, it can safely be called while holding
-     * a custom lock.
+     * Note that the method only takes locks to first order mutexes;
+     * so, it can safely be called while holding a custom lock.
+     * Moreover, the method is nonblocking, unless a bound on the notification
+     * queue has been configured, together with the "block" policy
+     * (see {@link DataProviderServer}), or the preallocated queue has been
+     * configured (see {@link Server}); in these cases, when the queue is
+     * full, the method waits for some space to be freed, hence calling it
+     * while holding a custom lock may delay the other contenders.
      * 
      * @param itemName The name of the Item whose values are carried by the Item Event.
      * @param itemEvent A Map instance, in which Field names are associated to Field values. 
-     * A value should be expressed as a String;
+     * A value should be expressed as a String, or as a java.nio.ByteBuffer, whose
+     * remaining bytes supply a string encoded in UTF-8; the bytes are copied
+     * to the outgoing message without being re-encoded, apart from the quoting
+     * of the bytes that are special for the protocol, and the buffer position
+     * is not affected;
      * the use of a byte array, to supply a string encoded in the ISO-8859-1 (ISO-LATIN-1)
      * character set, is also allowed, but it has been deprecated.
      * A Field value can be null or missing 
@@ -69,6 +78,115 @@ public interface ItemEventListener {
     */
     void update(@Nonnull String itemName, @Nonnull Map<String,?> itemEvent, boolean isSnapshot);
 
+    /** 
+     * Called by a Data Adapter to send an Item Event to Lightstreamer Kernel when the Item Event is 
+     * implemented as a Map&lt;String,?&gt; instance, by also supplying the timestamp
+     * to be associated with the event. <BR>
+     * The same considerations made for {@link #update(String, Map, boolean)} apply.
+     * Supplying the timestamp saves reading the clock, which is useful when
+     * the Data Adapter has already got a timestamp for the event.
+     * The default implementation ignores the timestamp and invokes
+     * {@link #update(String, Map, boolean)}.
+     * 
+     * @param itemName The name of the Item whose values are carried by the Item Event.
+     * @param itemEvent A Map instance, in which Field names are associated to Field values,
+     * as for {@link #update(String, Map, boolean)}.
+     * @param isSnapshot true if the Item Event carries the Item Snapshot.
+     * @param timestamp The time of the event, expressed as milliseconds since the epoch,
+     * as returned by System.currentTimeMillis; a negative value means that the current
+     * time should be used.
+    */
+    default void update(@Nonnull String itemName, @Nonnull Map<String,?> itemEvent, boolean isSnapshot, long timestamp) {
+        update(itemName, itemEvent, isSnapshot);
+    }
+
+    /** 
+     * Called by a Data Adapter to send an Item Event to Lightstreamer Kernel when the Item Event is 
+     * collected in a {@link FieldValues} instance. <BR>
+     * The same considerations made for {@link #update(String, Map, boolean)} apply.
+     * Numeric values can be supplied as such and are formatted directly in the
+     * outgoing message; hence, by reusing the same FieldValues instance, an Item
+     * Event can be sent without creating objects. The instance can be cleared
+     * and reused as soon as the call returns.
+     * The default implementation invokes {@link #update(String, Map, boolean)}
+     * with the result of {@link FieldValues#toMap()}.
+     * 
+     * @param itemName The name of the Item whose values are carried by the Item Event.
+     * @param values A FieldValues instance, carrying the Field names and values.
+     * @param isSnapshot true if the Item Event carries the Item Snapshot.
+    */
+    default void update(@Nonnull String itemName, @Nonnull FieldValues values, boolean isSnapshot) {
+        update(itemName, values.toMap(), isSnapshot);
+    }
+
+    /** 
+     * Called by a Data Adapter to send an Item Event to Lightstreamer Kernel when the Item Event is 
+     * collected in a {@link FieldValues} instance, by also supplying the timestamp
+     * to be associated with the event. <BR>
+     * The same considerations made for {@link #update(String, FieldValues, boolean)}
+     * and {@link #update(String, Map, boolean, long)} apply.
+     * The default implementation invokes {@link #update(String, Map, boolean, long)}
+     * with the result of {@link FieldValues#toMap()}.
+     * 
+     * @param itemName The name of the Item whose values are carried by the Item Event.
+     * @param values A FieldValues instance, carrying the Field names and values.
+     * @param isSnapshot true if the Item Event carries the Item Snapshot.
+     * @param timestamp The time of the event, expressed as milliseconds since the epoch;
+     * a negative value means that the current time should be used.
+    */
+    default void update(@Nonnull String itemName, @Nonnull FieldValues values, boolean isSnapshot, long timestamp) {
+        update(itemName, values.toMap(), isSnapshot, timestamp);
+    }
+
+    /** 
+     * Called by a Data Adapter to send a sequence of Item Events, possibly
+     * pertaining to different Items, as received together from the data feed. <BR>
+     * The same considerations made for {@link #update(String, Map, boolean)}
+     * and {@link #update(String, FieldValues, boolean)} apply to each event;
+     * the events are sent in the order of the batch, all with the same timestamp.
+     * Sending a batch is more efficient than sending the events one by one,
+     * as the events are sent to the Proxy Adapter together. For the same
+     * reason, unless conflation is enabled, the whole batch is queued as a
+     * single entry of the notification queue; hence, if a bound on the queue
+     * has been configured, the batch is accepted or refused as a unit:
+     * with the "fail" policy, a batch that contains no snapshot events is
+     * refused as a whole when the queue is full, whereas, with the
+     * "drop_oldest" policy, such a batch may be discarded as a whole, as any
+     * other real-time update (see {@link DataProviderServer}).
+     * The batch can be cleared and reused as soon as the call returns.
+     * The default implementation invokes the update method for each event.
+     * 
+     * @param batch An UpdateBatch instance, carrying the Item Events.
+    */
+    default void updateBatch(@Nonnull UpdateBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            FieldValues values = batch.getFieldValues(i);
+            if (values != null) {
+                update(batch.getItemName(i), values, batch.isSnapshot(i));
+            } else {
+                update(batch.getItemName(i), batch.getItemEvent(i), batch.isSnapshot(i));
+            }
+        }
+    }
+
+    /** 
+     * Called by a Data Adapter to declare in advance the Field names that it
+     * will use in the Item Events, so that the Remote Server can prepare their
+     * encoded form once and for all. Subsequent update calls will then only
+     * have to encode the Field values. <BR>
+     * The declared names are recognized by identity; hence, to take advantage
+     * of the declaration, the Item Events should carry the same String
+     * instances supplied here (for instance, constants), which applies to all
+     * the variants of the update method. Names not declared, or supplied
+     * through different instances, are still handled in the usual way.
+     * The method can be called multiple times, to add further names.
+     * The default implementation does nothing.
+     * 
+     * @param fieldNames An array of Field names; null elements are ignored.
+    */
+    default void declareFieldNames(@Nonnull String[] fieldNames) {
+    }
+
     /** 
      * Called by a Data Adapter to send an Item Event to Lightstreamer Kernel when the Item Event is 
      * implemented as an IndexedItemEvent instance.
@@ -96,9 +214,11 @@ public interface ItemEventListener {
      * This assures that, upon a new subscription for the Item, no trailing
      * events due to the previous subscription can be received by the Remote
      * Server.
-     * Note that the method is nonblocking; moreover, it only takes locks
-     * to first order mutexes; so, it can safely be called while holding
-     * a custom lock.
+     * Note that the method only takes locks to first order mutexes;
+     * so, it can safely be called while holding a custom lock.
+     * As for {@link #update(String, Map, boolean)}, the method is
+     * nonblocking, unless the notification queue is full and the
+     * configured policy requires waiting.
      * 
      * @param itemName The name of the Item whose snapshot has been completed.
     */
@@ -130,9 +250,11 @@ public interface ItemEventListener {
      * the previous subscription request is no longer issued.
      * This assures that, upon a new subscription for the Item, no trailing
      * events due to the previous subscription can be received by the Kernel.
-     * Note that the method is nonblocking; moreover, it only takes locks
-     * to first order mutexes; so, it can safely be called while holding
-     * a custom lock.
+     * Note that the method only takes locks to first order mutexes;
+     * so, it can safely be called while holding a custom lock.
+     * As for {@link #update(String, Map, boolean)}, the method is
+     * nonblocking, unless the notification queue is full and the
+     * configured policy requires waiting.
      * 
      * @param itemName The name of the Item whose Snapshot has become empty.
     */
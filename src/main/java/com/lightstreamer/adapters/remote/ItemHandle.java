@@ -0,0 +1,154 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import com.lightstreamer.log.LogManager;
+import com.lightstreamer.log.Logger;
+
+/**
+ * Handle to a subscription to an Item, supplied to the Data Adapter through
+ * {@link DataProvider#subscribe(String, ItemHandle)}, through which the
+ * events for the Item can be sent. <BR>
+ * The methods have the same meaning as the corresponding methods of
+ * {@link ItemEventListener}, but they don't need to look for the subscription
+ * by Item name; hence they take no locks, other than those needed to enqueue
+ * the events. <BR>
+ * After the unsubscribe call for the Item has returned, the handle becomes
+ * stale and the events sent through it are discarded; in fact, as for the
+ * listener, no event should be sent after that point. The handle can be
+ * used by any thread.
+ */
+public final class ItemHandle {
+    private static Logger _log = LogManager.getLogger("com.lightstreamer.adapters.remote.Server.DataProviderServer");
+
+    private final DataProviderServerImpl _server;
+    private final ItemSubscription _subscription;
+
+    ItemHandle(DataProviderServerImpl server, ItemSubscription subscription) {
+        _server = server;
+        _subscription = subscription;
+    }
+
+    /**
+     * Returns the name of the Item.
+     *
+     * @return The name of the Item.
+     */
+    @Nonnull
+    public String getItemName() {
+        return _subscription.getItemName();
+    }
+
+    /**
+     * Tells whether the subscription is still active, that is, whether
+     * the unsubscribe call for the Item has not yet returned.
+     *
+     * @return true if the events sent through the handle are forwarded.
+     */
+    public boolean isActive() {
+        return _subscription.isActive();
+    }
+
+    private boolean check(String type) {
+        if (_subscription.isActive()) {
+            return true;
+        }
+        // this must be an error by the Adapter, which must have sent
+        // the event after the termination of an unsubscribe()
+        _log.warn("Unexpected " + type + " for item " + _subscription.getItemName() + " through a stale handle");
+        return false;
+    }
+
+    /**
+     * Sends an Item Event implemented as a Map, as in
+     * {@link ItemEventListener#update(String, Map, boolean)}.
+     *
+     * @param itemEvent A Map instance, in which Field names are associated to Field values.
+     * @param isSnapshot true if the Item Event carries the Item Snapshot.
+     */
+    public void update(@Nonnull Map<String,?> itemEvent, boolean isSnapshot) {
+        update(itemEvent, isSnapshot, -1);
+    }
+
+    /**
+     * Sends an Item Event implemented as a Map, with the supplied timestamp, as in
+     * {@link ItemEventListener#update(String, Map, boolean, long)}.
+     *
+     * @param itemEvent A Map instance, in which Field names are associated to Field values.
+     * @param isSnapshot true if the Item Event carries the Item Snapshot.
+     * @param timestamp The time of the event, expressed as milliseconds since the epoch;
+     * a negative value means that the current time should be used.
+     */
+    public void update(@Nonnull Map<String,?> itemEvent, boolean isSnapshot, long timestamp) {
+        if (check("update")) {
+            _server.update(_subscription, itemEvent, isSnapshot, timestamp);
+        }
+    }
+
+    /**
+     * Sends an Item Event collected in a FieldValues instance, as in
+     * {@link ItemEventListener#update(String, FieldValues, boolean)}.
+     *
+     * @param values A FieldValues instance, carrying the Field names and values.
+     * @param isSnapshot true if the Item Event carries the Item Snapshot.
+     */
+    public void update(@Nonnull FieldValues values, boolean isSnapshot) {
+        update(values, isSnapshot, -1);
+    }
+
+    /**
+     * Sends an Item Event collected in a FieldValues instance, with the supplied
+     * timestamp, as in {@link ItemEventListener#update(String, FieldValues, boolean, long)}.
+     *
+     * @param values A FieldValues instance, carrying the Field names and values.
+     * @param isSnapshot true if the Item Event carries the Item Snapshot.
+     * @param timestamp The time of the event, expressed as milliseconds since the epoch;
+     * a negative value means that the current time should be used.
+     */
+    public void update(@Nonnull FieldValues values, boolean isSnapshot, long timestamp) {
+        if (check("update")) {
+            _server.update(_subscription, values, isSnapshot, timestamp);
+        }
+    }
+
+    /**
+     * Notifies that no more snapshot events are coming, as in
+     * {@link ItemEventListener#endOfSnapshot(String)}.
+     */
+    public void endOfSnapshot() {
+        if (check("end of snapshot notify")) {
+            _server.endOfSnapshot(_subscription);
+        }
+    }
+
+    /**
+     * Requests the clearing of the snapshot, as in
+     * {@link ItemEventListener#clearSnapshot(String)}.
+     */
+    public void clearSnapshot() {
+        if (check("clear snapshot request")) {
+            _server.clearSnapshot(_subscription);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "handle for item " + _subscription.getItemName();
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An active subscription to an item, identified by the subscription code
+ * received with the subscription request. <BR>
+ * As the item name and the code cannot change during the subscription,
+ * the part of the notifications that refers to them is encoded only once,
+ * upon subscription, and then copied in each notification.
+ */
+class ItemSubscription {
+
+    private final String _itemName;
+    private final String _code;
+
+    // the encoded item name and code, with the preceding separator
+    private final byte[] _header;
+
+    // the whole update header, up to the snapshot flag excluded
+    private final byte[] _updateHeader;
+
+    // cleared upon unsubscription, for the handles held by the Adapter
+    private volatile boolean _active;
+
+    // set upon the first update refused because of the notification queue
+    // full, so that the refusals are logged only once per subscription
+    private final AtomicBoolean _refused = new AtomicBoolean(false);
+
+    public ItemSubscription(String itemName, String code) throws RemotingException {
+        _itemName = itemName;
+        _code = code;
+        _header = DataProviderProtocol.encodeSubscriptionHeader(itemName, code);
+        _updateHeader = DataProviderProtocol.encodeUpdateHeader(_header);
+        _active = true;
+    }
+
+    public final boolean isActive() {
+        return _active;
+    }
+
+    final void deactivate() {
+        _active = false;
+    }
+
+    /**
+     * Records that an update for this subscription has been refused
+     * because of the notification queue full.
+     * @return true only for the first refusal.
+     */
+    final boolean markRefused() {
+        return ! _refused.get() && _refused.compareAndSet(false, true);
+    }
+
+    public final String getItemName() {
+        return _itemName;
+    }
+
+    public final String getCode() {
+        return _code;
+    }
+
+    final byte[] getHeader() {
+        return _header;
+    }
+
+    final byte[] getUpdateHeader() {
+        return _updateHeader;
+    }
+
+    @Override
+    public String toString() {
+        return _itemName + " (" + _code + ")";
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.lightstreamer.log.LogManager;
+import com.lightstreamer.log.Logger;
+
+/**
+ * Hashed timer wheel, shared by all the MessageSenders in the JVM,
+ * which schedules the checks for the need of keepalives. <BR>
+ * The accuracy is limited to the tick duration, which is fine for
+ * keepalives, as long as they are anticipated rather than delayed.
+ * The tasks are run by the scheduler thread itself, hence they must
+ * be short and must not block.
+ * When nothing is scheduled, the thread doesn't tick.
+ */
+class KeepaliveScheduler {
+    private static Logger _log = LogManager.getLogger("com.lightstreamer.adapters.remote.RequestReply.keepalives");
+
+    static final long TICK_MILLIS = 50;
+    private static final int WHEEL_SIZE = 512; // a power of two
+
+    private static KeepaliveScheduler _instance = null;
+
+    public static synchronized KeepaliveScheduler getInstance() {
+        if (_instance == null) {
+            _instance = new KeepaliveScheduler();
+            _instance.start();
+        }
+        return _instance;
+    }
+
+    /**
+     * Handle of a scheduled task, which allows for its cancellation.
+     */
+    public static class Timeout {
+        private final Runnable _task;
+        private final long _deadlineTick;
+        private volatile boolean _cancelled = false;
+
+        private Timeout(Runnable task, long deadlineTick) {
+            _task = task;
+            _deadlineTick = deadlineTick;
+        }
+
+        public void cancel() {
+            _cancelled = true;
+        }
+    }
+
+    // only accessed by the scheduler thread
+    private final List<List<Timeout>> _wheel = new ArrayList<List<Timeout>>(WHEEL_SIZE);
+    private long _currentTick = 0;
+
+    private final ConcurrentLinkedQueue<Timeout> _newTimeouts = new ConcurrentLinkedQueue<Timeout>();
+    private final AtomicInteger _pendingCount = new AtomicInteger();
+    private final long _startNanos = System.nanoTime();
+    private Thread _thread;
+
+    private KeepaliveScheduler() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            _wheel.add(new ArrayList<Timeout>());
+        }
+    }
+
+    /**
+     * Schedules the execution of a task on the scheduler thread.
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        long elapsedMillis = (System.nanoTime() - _startNanos) / 1000000;
+        // the task may run up to one tick earlier than requested
+        long deadlineTick = (elapsedMillis + Math.max(delayMillis, 0)) / TICK_MILLIS;
+        Timeout timeout = new Timeout(task, deadlineTick);
+        _newTimeouts.add(timeout);
+        if (_pendingCount.getAndIncrement() == 0) {
+            // the thread may be parked indefinitely
+            LockSupport.unpark(_thread);
+        }
+        return timeout;
+    }
+
+    private void start() {
+        _thread = new Thread() {
+            public void run() {
+                doRun();
+            }
+        };
+        _thread.setName("Lightstreamer keepalive scheduler");
+        // the scheduler is shared and never stopped
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    private void doRun() {
+        while (true) {
+            if (_pendingCount.get() == 0) {
+                LockSupport.park(this);
+                // the ticks elapsed while parked had no tasks
+                _currentTick = Math.max(_currentTick, (System.nanoTime() - _startNanos) / 1000000 / TICK_MILLIS);
+                continue;
+            }
+
+            long nextTickNanos = _startNanos + (_currentTick + 1) * TICK_MILLIS * 1000000;
+            long waitNanos = nextTickNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(this, waitNanos);
+                continue;
+            }
+            _currentTick++;
+
+            transferNewTimeouts();
+
+            List<Timeout> bucket = _wheel.get((int) (_currentTick & (WHEEL_SIZE - 1)));
+            Iterator<Timeout> iter = bucket.iterator();
+            while (iter.hasNext()) {
+                Timeout timeout = iter.next();
+                if (timeout._cancelled) {
+                    iter.remove();
+                    _pendingCount.decrementAndGet();
+                } else if (timeout._deadlineTick <= _currentTick) {
+                    iter.remove();
+                    _pendingCount.decrementAndGet();
+                    try {
+                        timeout._task.run();
+                    } catch (RuntimeException | Error e) {
+                        _log.error("Unexpected error in keepalive task: " + e.getMessage(), e);
+                    }
+                }
+                // otherwise the deadline belongs to a later round of the wheel
+            }
+        }
+    }
+
+    private void transferNewTimeouts() {
+        Timeout timeout;
+        while ((timeout = _newTimeouts.poll()) != null) {
+            // a deadline already passed is served at the current tick
+            long tick = Math.max(timeout._deadlineTick, _currentTick);
+            _wheel.get((int) (tick & (WHEEL_SIZE - 1))).add(timeout);
+        }
+    }
+
+}
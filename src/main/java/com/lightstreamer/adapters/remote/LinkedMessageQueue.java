@@ -0,0 +1,82 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *  
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Unbounded MessageQueue based on a LinkedBlockingDeque.
+ * This is the default implementation.
+ */
+class LinkedMessageQueue extends MessageQueue {
+
+    // recognized by identity
+    private static final OutgoingMessage WAKE_UP_PILL = new OutgoingMessage(new byte[0], false);
+
+    private final BlockingDeque<OutgoingMessage> _queue = new LinkedBlockingDeque<OutgoingMessage>();
+
+    // avoids piling up pills when wake ups are frequent
+    private final AtomicBoolean _wakeUpPending = new AtomicBoolean(false);
+
+    @Override
+    public boolean offer(OutgoingMessage msg) {
+        return _queue.offerLast(msg);
+    }
+
+    @Override
+    public OutgoingMessage poll() {
+        OutgoingMessage msg = _queue.pollFirst();
+        if (msg == WAKE_UP_PILL) {
+            // nobody is waiting; the pill only hides the next message
+            _wakeUpPending.set(false);
+            msg = _queue.pollFirst();
+        }
+        return msg;
+    }
+
+    @Override
+    public OutgoingMessage take() throws InterruptedException {
+        OutgoingMessage msg = _queue.takeFirst();
+        if (msg == WAKE_UP_PILL) {
+            _wakeUpPending.set(false);
+            return null;
+        }
+        return msg;
+    }
+
+    @Override
+    public void wakeUp() {
+        if (_wakeUpPending.compareAndSet(false, true)) {
+            // set the pill as first thing
+            _queue.offerFirst(WAKE_UP_PILL);
+        }
+    }
+
+    @Override
+    public OutgoingMessage removeOldestDroppable() {
+        Iterator<OutgoingMessage> iter = _queue.iterator();
+        while (iter.hasNext()) {
+            OutgoingMessage msg = iter.next();
+            if (msg.isDroppable() && _queue.remove(msg)) {
+                // note that the writer might have taken it in the meantime
+                return msg;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,471 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *  
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer in which ARI lines are composed directly in their
+ * UTF-8 form, without intermediate Strings. Not thread safe: each producer
+ * thread uses its own instance (see {@link #forCurrentThread}) and the
+ * sender thread uses a dedicated one to collect the lines to be written.
+ */
+class MessageBuffer {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final ThreadLocal<MessageBuffer> _threadBuffers = new ThreadLocal<MessageBuffer>() {
+        @Override
+        protected MessageBuffer initialValue() {
+            return new MessageBuffer(INITIAL_CAPACITY);
+        }
+    };
+
+    // buffers for composing messages around calls to custom code,
+    // which may compose messages in turn, hence in a stack-like way
+    private static final ThreadLocal<Pool> _threadPools = new ThreadLocal<Pool>() {
+        @Override
+        protected Pool initialValue() {
+            return new Pool();
+        }
+    };
+
+    private byte[] _bytes;
+    private int _length;
+
+    // the last timestamp appended and its rendering,
+    // as consecutive notifications often share the same millisecond
+    private long _lastTimestamp = -1;
+    private final byte[] _lastTimestampDigits = new byte[20];
+    private int _lastTimestampLength = 0;
+
+    public MessageBuffer(int capacity) {
+        _bytes = new byte[Math.max(capacity, 16)];
+        _length = 0;
+    }
+
+    /**
+     * Returns an empty buffer owned by the current thread, to be used
+     * for composing a message before handing it to a sender.
+     */
+    public static MessageBuffer forCurrentThread() {
+        MessageBuffer buffer = _threadBuffers.get();
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * Returns an empty buffer taken from a pool owned by the current thread,
+     * to be given back through {@link #release}. Differently than with
+     * {@link #forCurrentThread}, the buffer can be kept while invoking custom
+     * code, as nested acquisitions get different buffers. <BR>
+     * The pool learns the typical size of the messages, so that new buffers
+     * start with a suitable capacity and the buffers that had to grow for
+     * an occasional large message don't keep their storage.
+     */
+    public static MessageBuffer acquire() {
+        return _threadPools.get().acquire();
+    }
+
+    public static void release(MessageBuffer buffer) {
+        _threadPools.get().release(buffer);
+    }
+
+    private static final class Pool {
+        private static final int MAX_POOLED = 4;
+
+        private final MessageBuffer[] _free = new MessageBuffer[MAX_POOLED];
+        private int _freeCount = 0;
+
+        // moving average of the message sizes, in 1/8 units
+        private int _avgSize8 = INITIAL_CAPACITY * 8;
+
+        MessageBuffer acquire() {
+            if (_freeCount > 0) {
+                MessageBuffer buffer = _free[--_freeCount];
+                _free[_freeCount] = null;
+                buffer.reset();
+                return buffer;
+            }
+            return new MessageBuffer(getCapacityClass());
+        }
+
+        void release(MessageBuffer buffer) {
+            _avgSize8 += buffer._length - (_avgSize8 >> 3);
+            // capacities are kept within twice the size class,
+            // so that occasional large messages don't pin memory
+            buffer.reset(getCapacityClass() * 2);
+            if (_freeCount < MAX_POOLED) {
+                _free[_freeCount++] = buffer;
+            }
+        }
+
+        private int getCapacityClass() {
+            // the power of two that accommodates most messages
+            int avg = Math.max(_avgSize8 >> 3, 16);
+            return Integer.highestOneBit(avg * 2 - 1) * 2;
+        }
+    }
+
+    public final int length() {
+        return _length;
+    }
+
+    public final byte[] array() {
+        return _bytes;
+    }
+
+    public final void reset() {
+        _length = 0;
+    }
+
+    /**
+     * Discards the bytes appended after the supplied length.
+     */
+    public final void truncate(int length) {
+        assert (length >= 0 && length <= _length);
+        _length = length;
+    }
+
+    /**
+     * Empties the buffer and releases its storage, if it has grown
+     * beyond the supplied limit because of an occasional large message.
+     */
+    public final void reset(int maxCapacity) {
+        _length = 0;
+        if (_bytes.length > maxCapacity) {
+            _bytes = new byte[Math.max(maxCapacity, 16)];
+        }
+    }
+
+    public final byte[] toByteArray() {
+        return Arrays.copyOf(_bytes, _length);
+    }
+
+    public final void writeTo(OutputStream stream) throws IOException {
+        stream.write(_bytes, 0, _length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(_bytes, 0, _length, StandardCharsets.UTF_8);
+    }
+
+    private void ensureCapacity(int additional) {
+        int needed = _length + additional;
+        if (needed > _bytes.length) {
+            _bytes = Arrays.copyOf(_bytes, Math.max(needed, _bytes.length * 2));
+        }
+    }
+
+    // ////////////////////////////////////////////////////////////////////////
+    // raw appends; the caller is responsible for any needed quoting
+
+    public final MessageBuffer append(char c) {
+        if (c < 0x80) {
+            ensureCapacity(1);
+            _bytes[_length++] = (byte) c;
+        } else {
+            appendUtf8(c);
+        }
+        return this;
+    }
+
+    public final MessageBuffer append(String str) {
+        int len = str.length();
+        ensureCapacity(len);
+        for (int i = 0; i < len; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                _bytes[_length++] = (byte) c;
+            } else {
+                // leave the remaining part to the general case
+                appendUtf8(str, i, len);
+                break;
+            }
+        }
+        return this;
+    }
+
+    public final MessageBuffer append(byte[] bytes) {
+        return append(bytes, 0, bytes.length);
+    }
+
+    public final MessageBuffer append(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, _bytes, _length, length);
+        _length += length;
+        return this;
+    }
+
+    public final MessageBuffer append(int value) {
+        return append((long) value);
+    }
+
+    public final MessageBuffer append(long value) {
+        if (value == Long.MIN_VALUE) {
+            // cannot be negated
+            return append(Long.toString(value));
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            _bytes[_length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int pos = _length + digits;
+        _length = pos;
+        do {
+            _bytes[--pos] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value > 0);
+        return this;
+    }
+
+    /**
+     * Appends the characters of a string, starting from the supplied index,
+     * as long as they are ascii and not marked in the supplied table.
+     *
+     * @return the index of the first character not appended.
+     */
+    final int appendAscii(String str, int from, boolean[] stop) {
+        int len = str.length();
+        ensureCapacity(len - from);
+        byte[] bytes = _bytes;
+        int j = _length;
+        int i = from;
+        for (; i < len; i++) {
+            char c = str.charAt(i);
+            if (c >= 0x80 || stop[c]) {
+                break;
+            }
+            bytes[j++] = (byte) c;
+        }
+        _length = j;
+        return i;
+    }
+
+    /**
+     * Appends the bytes of an array, in the supplied range, as long as
+     * they are not ascii characters marked in the supplied table.
+     *
+     * @return the index of the first byte not appended.
+     */
+    final int appendBytes(byte[] src, int from, int to, boolean[] stop) {
+        int i = from;
+        for (; i < to; i++) {
+            byte b = src[i];
+            if (b >= 0 && stop[b]) {
+                break;
+            }
+        }
+        // the scanned stretch is copied in bulk
+        append(src, from, i - from);
+        return i;
+    }
+
+    /**
+     * Appends the bytes of a buffer, in the supplied range of absolute
+     * indexes, as long as they are not ascii characters marked in the
+     * supplied table. The buffer position is not affected.
+     *
+     * @return the index of the first byte not appended.
+     */
+    final int appendBytes(ByteBuffer src, int from, int to, boolean[] stop) {
+        ensureCapacity(to - from);
+        byte[] bytes = _bytes;
+        int j = _length;
+        int i = from;
+        for (; i < to; i++) {
+            byte b = src.get(i);
+            if (b >= 0 && stop[b]) {
+                break;
+            }
+            bytes[j++] = b;
+        }
+        _length = j;
+        return i;
+    }
+
+    /**
+     * Appends a non-negative timestamp, by reusing the digits of the
+     * previous one, if the same.
+     */
+    public final MessageBuffer appendTimestamp(long millis) {
+        if (millis != _lastTimestamp) {
+            if (millis < 0) {
+                return append(millis);
+            }
+            int start = _length;
+            append(millis);
+            _lastTimestampLength = _length - start;
+            System.arraycopy(_bytes, start, _lastTimestampDigits, 0, _lastTimestampLength);
+            _lastTimestamp = millis;
+            return this;
+        }
+        return append(_lastTimestampDigits, 0, _lastTimestampLength);
+    }
+
+    // ////////////////////////////////////////////////////////////////////////
+    // Numbers
+
+    private static final long[] POW10 = new long[19];
+    private static final double[] POW10_D = new double[23];
+    static {
+        long p = 1;
+        for (int i = 0; i < POW10.length; i++) {
+            POW10[i] = p;
+            p *= 10;
+        }
+        for (int i = 0; i < POW10_D.length; i++) {
+            POW10_D[i] = Double.parseDouble("1e" + i);
+        }
+    }
+
+    // up to this magnitude, a long is exactly representable as a double
+    private static final double MAX_EXACT = (double) (1L << 53);
+
+    /**
+     * Appends a decimal number, expressed as an unscaled value
+     * and a number of decimals, in plain notation.
+     */
+    public final MessageBuffer appendDecimal(long unscaled, int scale) {
+        if (scale <= 0) {
+            return append(unscaled);
+        }
+        if (unscaled == Long.MIN_VALUE || scale >= POW10.length) {
+            // not worth a dedicated handling
+            return append(java.math.BigDecimal.valueOf(unscaled, scale).toPlainString());
+        }
+        if (unscaled < 0) {
+            append('-');
+            unscaled = -unscaled;
+        }
+        append(unscaled / POW10[scale]);
+        ensureCapacity(1 + scale);
+        _bytes[_length++] = '.';
+        long fraction = unscaled % POW10[scale];
+        int pos = _length + scale;
+        _length = pos;
+        for (int i = 0; i < scale; i++) {
+            _bytes[--pos] = (byte) ('0' + (fraction % 10));
+            fraction /= 10;
+        }
+        return this;
+    }
+
+    /**
+     * Appends a double, rounded to the supplied number of decimals.
+     * NaN and infinite values are appended as by Double.toString.
+     */
+    public final MessageBuffer appendDouble(double value, int scale) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return append(Double.toString(value));
+        }
+        if (scale >= 0 && scale < POW10_D.length) {
+            double scaled = value * POW10_D[scale];
+            if (Math.abs(scaled) < 1e18) {
+                // ties are rounded away from zero, as by HALF_UP below
+                return appendDecimal(scaled < 0 ? - Math.round(- scaled) : Math.round(scaled), scale);
+            }
+        }
+        // too large for a long
+        return append(new java.math.BigDecimal(value).setScale(scale, java.math.RoundingMode.HALF_UP).toPlainString());
+    }
+
+    /**
+     * Appends a double with the fewest decimals (and at least one) needed
+     * to parse it back to the same value. Values of magnitude below 1e-3
+     * or from 1e7 on, or requiring 16 or more digits, are appended
+     * as by Double.toString, hence possibly in computerized notation.
+     */
+    public final MessageBuffer appendDouble(double value) {
+        double abs = Math.abs(value);
+        if (abs >= 1e-3 && abs < 1e7) {
+            for (int scale = 1; scale < POW10_D.length; scale++) {
+                double scaled = value * POW10_D[scale];
+                if (Math.abs(scaled) >= MAX_EXACT) {
+                    break;
+                }
+                long unscaled = Math.round(scaled);
+                // both operands are exact, hence the quotient is rounded
+                // as when parsing the decimal form
+                if (unscaled / POW10_D[scale] == value) {
+                    return appendDecimal(unscaled, scale);
+                }
+            }
+        } else if (value == 0) {
+            return append(Double.doubleToRawLongBits(value) == 0 ? "0.0" : "-0.0");
+        }
+        return append(Double.toString(value));
+    }
+
+    // ////////////////////////////////////////////////////////////////////////
+    // UTF-8 support
+
+    private void appendUtf8(String str, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = str.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(str.charAt(i + 1))) {
+                appendCodePoint(Character.toCodePoint(c, str.charAt(i + 1)));
+                i++;
+            } else {
+                appendUtf8(c);
+            }
+        }
+    }
+
+    final void appendUtf8(char c) {
+        if (c < 0x80) {
+            ensureCapacity(1);
+            _bytes[_length++] = (byte) c;
+        } else if (c < 0x800) {
+            ensureCapacity(2);
+            _bytes[_length++] = (byte) (0xC0 | (c >> 6));
+            _bytes[_length++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            // unpaired surrogate: replaced as done by the UTF-8 encoder
+            ensureCapacity(1);
+            _bytes[_length++] = '?';
+        } else {
+            ensureCapacity(3);
+            _bytes[_length++] = (byte) (0xE0 | (c >> 12));
+            _bytes[_length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            _bytes[_length++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    final void appendCodePoint(int cp) {
+        ensureCapacity(4);
+        _bytes[_length++] = (byte) (0xF0 | (cp >> 18));
+        _bytes[_length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+        _bytes[_length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+        _bytes[_length++] = (byte) (0x80 | (cp & 0x3F));
+    }
+
+    final void appendPercentEncoded(int c, byte[] hex) {
+        ensureCapacity(3);
+        _bytes[_length++] = '%';
+        _bytes[_length++] = hex[(c >> 4) & 0xF];
+        _bytes[_length++] = hex[c & 0xF];
+    }
+
+}
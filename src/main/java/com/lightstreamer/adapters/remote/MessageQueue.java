@@ -0,0 +1,60 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *  
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+/**
+ * The queue between the producers of the messages and the single
+ * writer thread of a MessageSender.
+ * Only one thread at a time is allowed to invoke the poll methods.
+ */
+abstract class MessageQueue {
+
+    /**
+     * Adds a message to the tail of the queue, without waiting.
+     * 
+     * @return false if the queue is full.
+     */
+    public abstract boolean offer(OutgoingMessage msg);
+
+    /**
+     * Takes the message at the head of the queue, without waiting.
+     * 
+     * @return null if the queue is empty.
+     */
+    public abstract OutgoingMessage poll();
+
+    /**
+     * Takes the message at the head of the queue, by waiting for one
+     * if needed.
+     * 
+     * @return null if {@link #wakeUp} has been invoked in the meantime.
+     */
+    public abstract OutgoingMessage take() throws InterruptedException;
+
+    /**
+     * Causes a current or next take to return null.
+     */
+    public abstract void wakeUp();
+
+    /**
+     * Removes the oldest queued message that can be discarded, if any.
+     * Not all implementations can support this.
+     * 
+     * @return the removed message or null.
+     */
+    public OutgoingMessage removeOldestDroppable() {
+        return null;
+    }
+
+}
@@ -15,12 +15,11 @@ package com.lightstreamer.adapters.remote;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
-import java.util.Date;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import com.lightstreamer.log.LogManager;
 import com.lightstreamer.log.Logger;
@@ -30,58 +29,168 @@ class MessageSender {
     private static final Logger _notlog = LogManager.getLogger("com.lightstreamer.adapters.remote.RequestReply.notifications");
     private static final Logger _keeplog = LogManager.getLogger("com.lightstreamer.adapters.remote.RequestReply.keepalives");
 
-    private static final String END_LINE = "\r\n";
-    private static final String STOP_WAITING_PILL = "STOP_WAITING_PILL";
-    private static final String KEEPALIVE_PILL = "KEEPALIVE_PILL";
-    
+    static final String END_LINE = "\r\n";
+    private static final byte[] KEEPALIVE_LINE = (BaseProtocol.METHOD_KEEPALIVE + END_LINE).getBytes(StandardCharsets.UTF_8);
+
+    // how long a producer waits before retrying, when a bounded queue is full
+    private static final long FULL_QUEUE_PARK_NANOS = 50 * 1000;
+
     private final String _name;
 
-    private final BlockingDeque<String> _queue = new LinkedBlockingDeque<String>();
-    private final OutputStreamWriter _writer;
-    private final WriteState _writeState;
+    private final MessageQueue _queue;
+    private final OutputStream _stream;
+    private final MessageBuffer _outBuffer;
+    private final int _outBufferMaxCapacity;
+    private final AtomicLong _lastWriteNanos = new AtomicLong(System.nanoTime());
     private final boolean _forReplies;
+
+    // lane for the replies, when they share the stream with the notifications;
+    // these are written before the queued notifications, but only up to a
+    // limit, after which a notification has to be written
+    private final ConcurrentLinkedQueue<OutgoingMessage> _replyQueue = new ConcurrentLinkedQueue<OutgoingMessage>();
+    private final int _maxReplyBurst;
+    private OutgoingMessage _heldNotify = null; // only accessed by the writer thread
     private volatile int _keepaliveMillis;
+    private KeepaliveScheduler.Timeout _keepaliveTimeout = null; // synchronized with this
+    private final Runnable _keepaliveCheck = new Runnable() {
+        public void run() {
+            checkKeepalive();
+        }
+    };
+    private final int _maxBatchMessages;
+    private final int _maxBatchBytes;
+    private final long _maxFlushLatencyNanos;
+    private final TimestampClock _clock;
+    private final WriterMetrics _metrics;
+
+    // bounds on the queued notifications (not applied to replies)
+    private final int _maxQueueMessages;
+    private final long _maxQueueBytes;
+    private final OverflowPolicy _overflowPolicy;
+    // always kept, as it also serves as the queue depth for the statistics
+    private final AtomicInteger _queuedMessages = new AtomicInteger();
+    private final AtomicLong _queuedBytes = new AtomicLong();
+    private final Object _capacityLock = new Object();
+    private int _blockedProducers = 0; // synchronized with _capacityLock
 
     private ExceptionListener _exceptionListener;
 
-    private boolean _stop;
+    private volatile boolean _stop;
+    private volatile boolean _keepaliveRequested;
+
+    public enum OverflowPolicy {
+        // the producer waits for the writer to free some space
+        BLOCK,
+        // the oldest real-time update still queued is discarded
+        DROP_OLDEST,
+        // the new real-time update is refused
+        FAIL
+    }
+
+    public static class Config {
+        public static final int DEFAULT_MAX_BATCH_MESSAGES = 1000;
+        public static final int DEFAULT_MAX_BATCH_BYTES = 64 * 1024;
+        public static final int DEFAULT_MAX_REPLY_BURST = 100;
 
-    public static class WriteState {
-        MessageSender lastWriter = null;
+        // limits on the lines that can be written before flushing;
+        // a value of 1 message restores one flush per line
+        public int maxBatchMessages = DEFAULT_MAX_BATCH_MESSAGES;
+        public int maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+
+        // limit on the time spent in collecting the lines before flushing;
+        // 0 means no limit
+        public int maxFlushLatencyMillis = 0;
+
+        // limits on the notifications that can be queued; 0 means unlimited;
+        // snapshot events and other non-update notifications are never
+        // discarded or refused, hence they may exceed the limits
+        public int maxQueueMessages = 0;
+        public long maxQueueBytes = 0;
+        public OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+        // size of the preallocated queue; 0 means an unbounded linked queue;
+        // a queue of this kind doesn't support the DROP_OLDEST policy
+        public int ringSize = 0;
+        public RingMessageQueue.WaitStrategy waitStrategy = RingMessageQueue.WaitStrategy.PARK;
+
+        // source of the notification timestamps
+        public TimestampClock clock = TimestampClock.SYSTEM;
+
+        // limit on the replies that can be written before
+        // a pending notification, when they share the stream
+        public int maxReplyBurst = DEFAULT_MAX_REPLY_BURST;
+
+        // collector of the statistics, shared by all the senders
+        // created with this configuration
+        public WriterMetrics metrics = new WriterMetrics();
     }
 
-    public MessageSender(String name, OutputStream stream, WriteState sharedWriteState, int keepaliveMillis, ExceptionListener exceptionListener) {
-        this(name, stream, sharedWriteState, false, keepaliveMillis, exceptionListener);
+    /**
+     * Creates a sender for the notifications; the replies to the requests
+     * can also be sent, through {@link #sendMessage(String, String)},
+     * and they take precedence.
+     */
+    public MessageSender(String name, OutputStream stream, int keepaliveMillis, Config config, ExceptionListener exceptionListener) {
+        this(name, stream, false, keepaliveMillis, config, exceptionListener);
     }
 
-    public MessageSender(String name, OutputStream stream, WriteState sharedWriteState, boolean forReplies, int keepaliveMillis, ExceptionListener exceptionListener) {
+    public MessageSender(String name, OutputStream stream, boolean forReplies, int keepaliveMillis, Config config, ExceptionListener exceptionListener) {
         _name = name;
 
-        _writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
-        if (sharedWriteState != null) {
-            _writeState = sharedWriteState;
-        } else {
-            _writeState = new WriteState();
-        }
+        _stream = stream;
 
         _forReplies = forReplies;
+        _maxReplyBurst = config.maxReplyBurst;
         _keepaliveMillis = keepaliveMillis;
 
+        _maxBatchMessages = config.maxBatchMessages;
+        _maxBatchBytes = config.maxBatchBytes;
+        _maxFlushLatencyNanos = config.maxFlushLatencyMillis * 1000000L;
+        _clock = config.clock;
+        _metrics = config.metrics;
+        _outBuffer = new MessageBuffer(Math.min(_maxBatchBytes, Config.DEFAULT_MAX_BATCH_BYTES));
+        _outBufferMaxCapacity = (int) Math.min(2L * _maxBatchBytes, Integer.MAX_VALUE);
+
+        if (forReplies) {
+            // replies are driven by the requests, hence they need no bounds
+            _maxQueueMessages = 0;
+            _maxQueueBytes = 0;
+        } else {
+            _maxQueueMessages = config.maxQueueMessages;
+            _maxQueueBytes = config.maxQueueBytes;
+        }
+        _overflowPolicy = config.overflowPolicy;
+
+        if (config.ringSize > 0) {
+            assert (_overflowPolicy != OverflowPolicy.DROP_OLDEST);
+            _queue = new RingMessageQueue(config.ringSize, config.waitStrategy);
+        } else {
+            _queue = new LinkedMessageQueue();
+        }
+
         _exceptionListener = exceptionListener;
         
         _stop = false;
+        _keepaliveRequested = false;
     }
     
     public void changeKeepalive(int keepaliveMillis, boolean alsoInterrupt) {
         _keepaliveMillis = keepaliveMillis;
-        if (alsoInterrupt) {
-            try {
-                // interrupts the current wait as though a keepalive were needed;
-                // in most cases, this keepalive will be redundant
-                _queue.putFirst(KEEPALIVE_PILL);
-            } catch (InterruptedException e) {
+        synchronized (this) {
+            if (_keepaliveTimeout != null) {
+                _keepaliveTimeout.cancel();
+                _keepaliveTimeout = null;
+            }
+            if (keepaliveMillis > 0 && ! _stop) {
+                _keepaliveTimeout = KeepaliveScheduler.getInstance().schedule(_keepaliveCheck, keepaliveMillis);
             }
         }
+        if (alsoInterrupt) {
+            // interrupts the current wait as though a keepalive were needed;
+            // in most cases, this keepalive will be redundant
+            _keepaliveRequested = true;
+            _queue.wakeUp();
+        }
     }
 
     private Logger getProperLogger() {
@@ -92,7 +201,45 @@ class MessageSender {
         return _forReplies ? "Reply" : "Notify";
     }
 
+    /**
+     * Invoked by the scheduler when a keepalive may be due.
+     * The scheduler thread is shared, hence we must not block.
+     */
+    private void checkKeepalive() {
+        int keepaliveMillis = _keepaliveMillis;
+        if (_stop || keepaliveMillis <= 0) {
+            return;
+        }
+        // we had better send a keepalive a bit earlier than a bit later,
+        // hence we tolerate the inaccuracy of the scheduler
+        long keepaliveNanos = (keepaliveMillis - KeepaliveScheduler.TICK_MILLIS) * 1000000L;
+        long now = System.nanoTime();
+        long lastWrite = _lastWriteNanos.get();
+        long idleNanos = now - lastWrite;
+        long nextCheckMillis;
+        // we also move the last write time, as the keepalive is going to be written
+        if (idleNanos >= keepaliveNanos && _lastWriteNanos.compareAndSet(lastWrite, now)) {
+            if (_keeplog.isDebugEnabled()) {
+                _keeplog.debug(getProperType() + " sender '" + _name + "' idle for " + (idleNanos / 1000000) + " milliseconds");
+            }
+            _keepaliveRequested = true;
+            _queue.wakeUp();
+            nextCheckMillis = keepaliveMillis;
+        } else {
+            // the stream has been written in the meantime
+            nextCheckMillis = (keepaliveMillis * 1000000L - (now - _lastWriteNanos.get())) / 1000000;
+        }
+        synchronized (this) {
+            if (_keepaliveMillis == keepaliveMillis && ! _stop) {
+                // otherwise changeKeepalive has already rescheduled
+                _keepaliveTimeout = KeepaliveScheduler.getInstance().schedule(_keepaliveCheck, nextCheckMillis);
+            }
+        }
+    }
+
     public final void startOut() {
+        _metrics.register(this);
+        changeKeepalive(_keepaliveMillis, false);
         Thread t = new Thread() {
             public void run() {
                 doRun();
@@ -106,92 +253,451 @@ class MessageSender {
 
         while (!_stop) { //might as well be while(true)
             
-            String msg;
-            try {
-                if (_keepaliveMillis > 0) {
-                    msg = _queue.pollFirst(_keepaliveMillis, TimeUnit.MILLISECONDS);
-                } else {
-                    msg = _queue.takeFirst();
+            if (_heldNotify == null && _replyQueue.isEmpty() && ! _keepaliveRequested) {
+                try {
+                    // keepalives are triggered by the shared scheduler
+                    // and replies are signalled, both by waking us up;
+                    // hence we can wait indefinitely
+                    _heldNotify = _queue.take();
+                    
+                } catch (InterruptedException e) {
+                    _exceptionListener.onException(new RemotingException("Exception caught while waiting on the " + getProperType().toLowerCase() + " queue: " + e.getMessage(), e));
+                    break;
                 }
-                //}
                 
-            } catch (InterruptedException e) {
-                _exceptionListener.onException(new RemotingException("Exception caught while waiting on the " + getProperType().toLowerCase() + " queue: " + e.getMessage(), e));
-                break;
-            }
-            
-            if (msg == STOP_WAITING_PILL) {
-                break;
-            }
+                if (_stop) {
+                    break;
+                }
  
-            if (msg == null) {
-                synchronized (_writeState) {
-                    if (_writeState.lastWriter == null || _writeState.lastWriter == this) {
-                        msg = KEEPALIVE_PILL;
-                    } else {
-                        // the stream is shared and someone wrote after our last write;
-                        // that stream will be responsible for the next keepalive
+                if (_heldNotify == null && _replyQueue.isEmpty() && ! _keepaliveRequested) {
+                    // the wait has been interrupted for no reason
+                    continue;
+                }
+            }
+
+            // we are going to write anyway, hence any pending keepalive is redundant
+            boolean keepaliveNeeded = _keepaliveRequested;
+            _keepaliveRequested = false;
+
+            // we collect whatever is already queued, so as to
+            // write and flush only once for the whole batch;
+            // the batch is flushed as soon as the queue is empty
+            // or any of the limits is reached
+            int batchMessages = 0;
+            int replyBurst = 0;
+            long batchStart = System.nanoTime();
+            // the depth is sampled here, where it has grown during
+            // the previous write, rather than upon each enqueue
+            _metrics.onQueueDepth(_queuedMessages.get());
+            while (batchMessages < _maxBatchMessages && _outBuffer.length() < _maxBatchBytes && ! _stop) {
+                if (_maxFlushLatencyNanos > 0 && batchMessages > 0 && System.nanoTime() - batchStart >= _maxFlushLatencyNanos) {
+                    // the first messages have waited enough
+                    break;
+                }
+                if (replyBurst < _maxReplyBurst) {
+                    OutgoingMessage reply = _replyQueue.poll();
+                    if (reply != null) {
+                        int start = _outBuffer.length();
+                        _metrics.onDequeued(System.nanoTime() - reply.getEnqueueNanos());
+                        reply.writeTo(_outBuffer);
+                        logLine(_replog, "Reply", start);
+                        batchMessages++;
+                        replyBurst++;
                         continue;
                     }
                 }
+                replyBurst = 0;
+
+                OutgoingMessage msg = _heldNotify;
+                if (msg != null) {
+                    _heldNotify = null;
+                } else {
+                    msg = _queue.poll();
+                    if (msg == null) {
+                        if (_replyQueue.isEmpty()) {
+                            break;
+                        } else {
+                            // replies only; the limit is no longer needed
+                            continue;
+                        }
+                    }
+                }
+                onDequeued(msg);
+                _metrics.onDequeued(System.nanoTime() - msg.getEnqueueNanos());
+                int start = _outBuffer.length();
+                msg.writeTo(_outBuffer);
+                logLine(getProperLogger(), getProperType(), start);
+                batchMessages++;
             }
 
-            if (msg == KEEPALIVE_PILL) {
+            if (batchMessages == 0) {
+                if (! keepaliveNeeded) {
+                    continue;
+                }
                 // the timeout (real or simulated) has fired
-                msg = BaseProtocol.METHOD_KEEPALIVE;
                 if (_keeplog.isDebugEnabled()) {
-                    _keeplog.debug(getProperType() + " line: " + msg);
-                }
-            } else {
-                if (getProperLogger().isDebugEnabled()) {
-                    getProperLogger().debug(getProperType() + " line: " + msg);
+                    _keeplog.debug(getProperType() + " line: " + BaseProtocol.METHOD_KEEPALIVE);
                 }
+                _outBuffer.append(KEEPALIVE_LINE);
             }
-            
+
             try {
-                synchronized (_writeState) {
-                    _writer.write(msg);
-                    _writer.write(END_LINE);
-                    _writer.flush();
-                    _writeState.lastWriter = this;
-                }
+                int batchBytes = _outBuffer.length();
+                long writeStart = System.nanoTime();
+                _outBuffer.writeTo(_stream);
+                long flushStart = System.nanoTime();
+                _stream.flush();
+                long flushEnd = System.nanoTime();
+                _lastWriteNanos.set(flushEnd);
+                _metrics.onFlushed(batchMessages, batchBytes, flushStart - writeStart, flushEnd - flushStart);
                 
             } catch (IOException e) {
                 _exceptionListener.onException(new RemotingException("Exception caught while writing on the " + getProperType().toLowerCase() + " stream: " + e.getMessage(), e));
                 break;
             }
+            _outBuffer.reset(_outBufferMaxCapacity);
         }
         
+        _metrics.unregister(this);
         getProperLogger().info(getProperType() + " sender '" + _name + "' stopped");
         
     }
 
     public final void quit() {
         _stop = true;
-        try {
-            //set the stop pill as first thing
-            _queue.putFirst(STOP_WAITING_PILL);
-        } catch (InterruptedException e) {
+        synchronized (this) {
+            if (_keepaliveTimeout != null) {
+                _keepaliveTimeout.cancel();
+                _keepaliveTimeout = null;
+            }
+        }
+        _queue.wakeUp();
+        synchronized (_capacityLock) {
+            // blocked producers should give up
+            _capacityLock.notifyAll();
         }
     }
 
+    private void logLine(Logger logger, String type, int start) {
+        if (logger.isDebugEnabled()) {
+            // the line terminator is omitted
+            String line = new String(_outBuffer.array(), start, _outBuffer.length() - start - END_LINE.length(), StandardCharsets.UTF_8);
+            logger.debug(type + " line: " + line);
+        }
+    }
+
+    /**
+     * Returns a buffer owned by the current thread, already filled with
+     * the notification timestamp; the notification should be appended
+     * and then the buffer should be supplied to {@link #sendNotify}.
+     */
+    public final MessageBuffer newNotify() {
+        return newNotify(_clock.currentTimeMillis());
+    }
+
+    /**
+     * As {@link #newNotify()}, but with a timestamp supplied by the caller.
+     */
+    public final MessageBuffer newNotify(long millis) {
+        assert (!_forReplies);
+        MessageBuffer notify = MessageBuffer.forCurrentThread();
+        notify.appendTimestamp(millis);
+        notify.append(RemotingProtocol.SEP);
+        return notify;
+    }
+
+    /**
+     * Terminates the notification in a buffer obtained through
+     * {@link #newNotify(long)} and starts a new one with the supplied timestamp,
+     * so that they can be supplied together to {@link #sendNotify}.
+     */
+    public final void nextNotify(MessageBuffer notify, long millis) {
+        notify.append(END_LINE);
+        notify.appendTimestamp(millis);
+        notify.append(RemotingProtocol.SEP);
+    }
+
+    public final long currentTimeMillis() {
+        return _clock.currentTimeMillis();
+    }
+
+    public final void sendNotify(MessageBuffer notify) {
+        sendNotify(notify, false);
+    }
+
+    /**
+     * Enqueues a notification, by obeying the configured overflow policy
+     * if the queue is full and the notification is droppable.
+     * 
+     * @return false if the notification has been discarded.
+     */
+    public final boolean sendNotify(MessageBuffer notify, boolean droppable) {
+        notify.append(END_LINE);
+        return enqueue(new OutgoingMessage(notify.toByteArray(), droppable));
+    }
+
+    /**
+     * Enqueues a notification composed by the caller, with the timestamp
+     * and the line terminator already included.
+     * 
+     * @return false if the notification has been discarded.
+     */
+    public final boolean sendNotify(OutgoingMessage notify) {
+        assert (!_forReplies);
+        return enqueue(notify);
+    }
+
     public final void sendMessage(String msg) {
         if (!_forReplies) {
-            long millis = new Date().getTime(); 
+            MessageBuffer notify = newNotify();
+            notify.append(msg);
+            sendNotify(notify);
+        } else {
+            MessageBuffer reply = MessageBuffer.forCurrentThread();
+            reply.append(msg);
+            reply.append(END_LINE);
+            enqueue(new OutgoingMessage(reply.toByteArray(), false));
+        }
+    }
 
-            StringBuilder timedNotify = new StringBuilder();
-            timedNotify.append(millis);
-            timedNotify.append(RemotingProtocol.SEP);
-            timedNotify.append(msg);
+    public final void sendMessage(String prefix, String msg) {
+        MessageBuffer reply = MessageBuffer.forCurrentThread();
+        reply.append(prefix);
+        reply.append(RemotingProtocol.SEP);
+        reply.append(msg);
+        reply.append(END_LINE);
+        enqueueReply(new OutgoingMessage(reply.toByteArray(), false));
+    }
 
-            msg = timedNotify.toString();
+    /**
+     * As {@link #sendMessage(String, String)}, but with the message
+     * composed by the caller in a buffer, which is only read.
+     */
+    public final void sendMessage(String prefix, MessageBuffer msg) {
+        MessageBuffer reply = MessageBuffer.forCurrentThread();
+        reply.append(prefix);
+        reply.append(RemotingProtocol.SEP);
+        reply.append(msg.array(), 0, msg.length());
+        reply.append(END_LINE);
+        enqueueReply(new OutgoingMessage(reply.toByteArray(), false));
+    }
+
+    private void enqueueReply(OutgoingMessage outgoing) {
+        if (_forReplies) {
+            enqueue(outgoing);
+        } else {
+            // the reply is to be written before the queued notifications
+            outgoing.setEnqueueNanos(System.nanoTime());
+            _metrics.onEnqueued();
+            _replyQueue.add(outgoing);
+            _queue.wakeUp();
         }
+    }
+
+    private boolean isBounded() {
+        return _maxQueueMessages > 0 || _maxQueueBytes > 0;
+    }
+
+    /**
+     * Reserves room for a message in the bounded queue, unless this would
+     * exceed the bounds; the check and the reservation are atomic, so that
+     * concurrent producers cannot exceed the bounds together. A message
+     * larger than the byte bound is accepted when no bytes are queued,
+     * otherwise it would never be.
+     */
+    private boolean tryReserve(int size) {
+        if (_maxQueueMessages > 0) {
+            while (true) {
+                int count = _queuedMessages.get();
+                if (count >= _maxQueueMessages) {
+                    return false;
+                }
+                if (_queuedMessages.compareAndSet(count, count + 1)) {
+                    break;
+                }
+            }
+        } else {
+            _queuedMessages.incrementAndGet();
+        }
+        if (_maxQueueBytes > 0) {
+            while (true) {
+                long bytes = _queuedBytes.get();
+                if (bytes > 0 && bytes + size > _maxQueueBytes) {
+                    // the message slot taken above is given back
+                    release(0);
+                    return false;
+                }
+                if (_queuedBytes.compareAndSet(bytes, bytes + size)) {
+                    break;
+                }
+            }
+        } else {
+            _queuedBytes.addAndGet(size);
+        }
+        return true;
+    }
+
+    /**
+     * Reserves room for a message that cannot be refused, regardless
+     * of the bounds.
+     */
+    private void forceReserve(int size) {
+        _queuedMessages.incrementAndGet();
+        _queuedBytes.addAndGet(size);
+    }
+
+    private void release(int size) {
+        _queuedMessages.decrementAndGet();
+        _queuedBytes.addAndGet(- size);
+        wakeProducers();
+    }
 
-        //enqueue
-        try {
-            _queue.putLast(msg);
-        } catch (InterruptedException e) {
+    /**
+     * Reserves room for the growth of a message that may already be queued,
+     * if allowed by the byte bound; the bytes have to be given back through
+     * {@link #releaseBytes}, as they are not included in the message size.
+     */
+    final boolean tryReserveBytes(int size) {
+        if (! isBounded()) {
+            return true;
         }
+        if (_maxQueueBytes > 0) {
+            while (true) {
+                long bytes = _queuedBytes.get();
+                if (bytes + size > _maxQueueBytes) {
+                    return false;
+                }
+                if (_queuedBytes.compareAndSet(bytes, bytes + size)) {
+                    return true;
+                }
+            }
+        } else {
+            _queuedBytes.addAndGet(size);
+            return true;
+        }
+    }
+
+    final void releaseBytes(int size) {
+        if (isBounded()) {
+            _queuedBytes.addAndGet(- size);
+            wakeProducers();
+        }
+    }
+
+    private void wakeProducers() {
+        synchronized (_capacityLock) {
+            if (_blockedProducers > 0) {
+                _capacityLock.notifyAll();
+            }
+        }
+    }
+
+    private boolean enqueue(OutgoingMessage msg) {
+        if (! isBounded()) {
+            _queuedMessages.incrementAndGet();
+        } else if (! tryReserve(msg.size())) {
+            // on success, the room has been reserved anyway
+            if (! makeRoom(msg)) {
+                return false;
+            }
+        }
+        // accounted in advance, as the writer may dequeue the message at once
+        msg.setEnqueueNanos(System.nanoTime());
+        _metrics.onEnqueued();
+        while (! _queue.offer(msg)) {
+            // only a preallocated queue can be full
+            if (_stop) {
+                onDequeued(msg);
+                _metrics.onDiscarded();
+                return false;
+            } else if (_overflowPolicy == OverflowPolicy.FAIL && msg.isDroppable()) {
+                onDequeued(msg);
+                _metrics.onRefused();
+                return false;
+            }
+            // we cannot know when the writer will free a slot
+            LockSupport.parkNanos(this, FULL_QUEUE_PARK_NANOS);
+        }
+        return true;
+    }
+
+    private boolean makeRoom(OutgoingMessage msg) {
+        int size = msg.size();
+        switch (_overflowPolicy) {
+            case BLOCK:
+                _metrics.onBlocked();
+                synchronized (_capacityLock) {
+                    _blockedProducers++;
+                    try {
+                        while (! tryReserve(size)) {
+                            if (_stop) {
+                                return false;
+                            }
+                            try {
+                                _capacityLock.wait();
+                            } catch (InterruptedException e) {
+                                // we cannot lose the message, hence we don't wait any longer
+                                Thread.currentThread().interrupt();
+                                forceReserve(size);
+                                break;
+                            }
+                        }
+                    } finally {
+                        _blockedProducers--;
+                    }
+                }
+                return true;
+
+            case DROP_OLDEST:
+                if (! msg.isDroppable()) {
+                    // snapshot events and the like are always accepted
+                    forceReserve(size);
+                    return true;
+                }
+                do {
+                    OutgoingMessage oldest = _queue.removeOldestDroppable();
+                    if (oldest == null) {
+                        // nothing older can be discarded, hence we discard the new update
+                        _metrics.onDropped();
+                        if (_notlog.isDebugEnabled()) {
+                            _notlog.debug("Queue full for sender '" + _name + "', discarding " + msg);
+                        }
+                        return false;
+                    }
+                    onDequeued(oldest);
+                    oldest.onDiscarded();
+                    _metrics.onDropped();
+                    if (_notlog.isDebugEnabled()) {
+                        _notlog.debug("Queue full for sender '" + _name + "', discarding " + oldest);
+                    }
+                    // a single discard may not free enough bytes
+                } while (! tryReserve(size));
+                return true;
+
+            default:
+                if (! msg.isDroppable()) {
+                    // snapshot events and the like are always accepted
+                    forceReserve(size);
+                    return true;
+                }
+                _metrics.onRefused();
+                return false;
+        }
+    }
+
+    private void onDequeued(OutgoingMessage msg) {
+        if (isBounded()) {
+            release(msg.size());
+        } else {
+            _queuedMessages.decrementAndGet();
+        }
+    }
 
+    /**
+     * Returns the number of messages in the queue, replies excluded,
+     * if they share the stream with the notifications.
+     */
+    final int getQueueDepth() {
+        return _queuedMessages.get();
     }
 }
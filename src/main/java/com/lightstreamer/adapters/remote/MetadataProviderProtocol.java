@@ -18,8 +18,6 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
-import java.util.StringTokenizer;
 import java.util.concurrent.Callable;
 
 class MetadataProviderProtocol extends BaseProtocol {
@@ -65,51 +63,13 @@ class MetadataProviderProtocol extends BaseProtocol {
     // ////////////////////////////////////////////////////////////////////////
     // REMOTE INIT
 
-    public static Map<String,String> readInit(String request) throws RemotingException {
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-        String msg = null;
-        RemotingException re2 = null;
-        
+    public static Map<String,String> readInit(RequestDecoder request) throws RemotingException {
         Map<String,String> parameters = new HashMap<String,String>();
 
-        String typ = null;
-        while (tokenizer.hasMoreTokens()) {
-            String headerName = "";
-            String headerValue = "";
-
-            typ = tokenizer.nextToken();
-
-            String val; // declared here to avoid JVM bug JDK-8067429
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    val = tokenizer.nextToken();
-                    headerName = decodeStringOld(val);
-                    break;
-
-                default:
-                    msg = "Unknown type '" + typ + "' found while parsing a " + METHOD_METADATA_INIT + " request";
-            }
-
-            typ = tokenizer.nextToken();
-
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    val = tokenizer.nextToken();
-                    headerValue = decodeStringOld(val);
-                    break;
-
-                default:
-                    msg = "Unknown type '" + typ + "' found while parsing a " + METHOD_METADATA_INIT + " request";
-            }
-            
-            if (msg != null) {
-                re2 = new RemotingException(msg);
-                throw re2;
-            } else {
-                parameters.put(headerName, headerValue);
-            }
+        while (request.hasMore()) {
+            String headerName = request.readString();
+            String headerValue = request.readString();
+            parameters.put(headerName, headerValue);
         }
 
         return parameters;
@@ -165,34 +125,18 @@ class MetadataProviderProtocol extends BaseProtocol {
     ///////////////////////////////////////////////////////////////////////////
     // GET ITEM DATA
 
-    public static String[] readGetItemData(String request) throws RemotingException {
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-
+    public static String[] readGetItemData(RequestDecoder request) throws RemotingException {
         List<String> itemList = new ArrayList<String>();
 
-        while (tokenizer.hasMoreTokens()) {
-            String typ = tokenizer.nextToken();
-
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    String item = tokenizer.nextToken();
-                    itemList.add(decodeString(item));
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_GET_ITEM_DATA + " request");
-            }
-
+        while (request.hasMore()) {
+            itemList.add(request.readString());
         }
 
         String [] items = itemList.toArray(new String [itemList.size()]);
         return items;
     }
 
-    public static String writeGetItemData(ItemData[] itemDatas) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeGetItemData(MessageBuffer sb, ItemData[] itemDatas) throws RemotingException {
         sb.append(METHOD_GET_ITEM_DATA);
 
         for (ItemData itemData : itemDatas) {
@@ -209,126 +153,38 @@ class MetadataProviderProtocol extends BaseProtocol {
             sb.append(SEP);
             sb.append(encodeModes(itemData.allowedModes));
         }
-
-        return sb.toString();
     }
 
-    public static String writeGetItemData(Throwable exception) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeGetItemData(MessageBuffer sb, Throwable exception) throws RemotingException {
         sb.append(METHOD_GET_ITEM_DATA);
         sb.append(SEP);
         sb.append(TYPE_EXCEPTION);
         sb.append(SEP);
-        sb.append(encodeString(exception.getMessage()));
-
-        return sb.toString();
+        encodeString(sb, exception.getMessage());
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // NOTIFY USER
 
-    public static NotifyUserData readNotifyUser(String request, String methodVersion) throws RemotingException {
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-        String msg = null;
-        RemotingException reNU = null;
-        
+    public static NotifyUserData readNotifyUser(RequestDecoder request, String methodVersion) throws RemotingException {
         NotifyUserData data = new NotifyUserData();
 
-        String typ = null;
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e) {
-            throw new RemotingException("Token not found while parsing a " + methodVersion + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                data.user = decodeString(tokenizer.nextToken());
-                break;
-
-            default:
-                msg = "Unknown type '" + typ + "' found while parsing a " + methodVersion + " request";
-        }
-
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e2) {
-            msg = "Token not found while parsing a " + methodVersion + " request";
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                data.password = decodeString(tokenizer.nextToken());
-                break;
-
-            default:
-                msg = "Unknown type '" + typ + "' found while parsing a " + methodVersion + " request";
-        }
-
+        data.user = request.readString();
+        data.password = request.readString();
         if (METHOD_NOTIFY_USER_AUTH.equals(methodVersion)) {
-            try {
-                typ = tokenizer.nextToken();
-            } catch (NoSuchElementException e3) {
-                msg = "Token not found while parsing a " + methodVersion + " request";
-            }
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    data.clientPrincipal = decodeString(tokenizer.nextToken());
-                    break;
-
-                default:
-                     msg = "Unknown type '" + typ + "' found while parsing a " + methodVersion + " request";
-            }
+            data.clientPrincipal = request.readString();
         }
 
-        while (tokenizer.hasMoreTokens()) {
-            String headerName  = "";
-            String headerValue = "";
-
-            typ = tokenizer.nextToken();
-
-            String val; // declared here to avoid JVM bug JDK-8067429
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    val = tokenizer.nextToken();
-                    headerName = decodeString(val);
-                    break;
-
-                default:
-                    msg = "Unknown type '" + typ + "' found while parsing a " + methodVersion + " request";
-            }
-
-            typ = tokenizer.nextToken();
-
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    val = tokenizer.nextToken();
-                    headerValue = decodeString(val);
-                    break;
-
-                default:
-                    msg = "Unknown type '" + typ + "' found while parsing a " + methodVersion + " request";
-            }
-            
-            if (msg != null) {
-                reNU = new RemotingException(msg);
-                
-                throw reNU;
-            } else {
-                data.httpHeaders.put(headerName, headerValue);
-            }
+        while (request.hasMore()) {
+            String headerName = request.readString();
+            String headerValue = request.readString();
+            data.httpHeaders.put(headerName, headerValue);
         }
 
         return data;
     }
 
-    public static String writeNotifyUser(UserData userData, String methodVersion) {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeNotifyUser(MessageBuffer sb, UserData userData, String methodVersion) {
         sb.append(methodVersion);
         sb.append(SEP);
         sb.append(TYPE_DOUBLE);
@@ -338,13 +194,9 @@ class MetadataProviderProtocol extends BaseProtocol {
         sb.append(TYPE_BOOLEAN);
         sb.append(SEP);
         sb.append(userData.wantsTablesNotification ? VALUE_TRUE : VALUE_FALSE);
-
-        return sb.toString();
     }
 
-    public static String writeNotifyUser(Throwable exception, String methodVersion) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeNotifyUser(MessageBuffer sb, Throwable exception, String methodVersion) throws RemotingException {
         sb.append(methodVersion);
         sb.append(SEP);
         sb.append(TYPE_EXCEPTION);
@@ -359,107 +211,41 @@ class MetadataProviderProtocol extends BaseProtocol {
             sb.append(SUBTYPE_CREDITS_EXCEPTION);
         }
         sb.append(SEP);
-        sb.append(encodeString(exception.getMessage()));
+        encodeString(sb, exception.getMessage());
         if (exception instanceof CreditsException) {
             sb.append(SEP);
             sb.append(((CreditsException) exception).getClientErrorCode());
             sb.append(SEP);
-            sb.append(encodeString(((CreditsException) exception).getClientErrorMsg()));
+            encodeString(sb, ((CreditsException) exception).getClientErrorMsg());
         }
-
-        return sb.toString();
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // GET SCHEMA
 
-    public static GetSchemaData readGetSchema(String request) throws RemotingException {
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-
+    public static GetSchemaData readGetSchema(RequestDecoder request) throws RemotingException {
         GetSchemaData data = new GetSchemaData();
 
-        String typ = null;
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_GET_SCHEMA + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                data.user = decodeString(tokenizer.nextToken());
-                break;
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_GET_SCHEMA + " request");
-        }
-
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e2) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_GET_SCHEMA + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                data.group = decodeString(tokenizer.nextToken());
-                break;
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_GET_SCHEMA + " request");
-        }
-
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e3) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_GET_SCHEMA + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                data.schema = decodeString(tokenizer.nextToken());
-                break;
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_GET_SCHEMA + " request");
-        }
-
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e4) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_GET_SCHEMA + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                data.session = decodeString(tokenizer.nextToken());
-                break;
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_GET_SCHEMA + " request");
-        }
+        data.user = request.readString();
+        data.group = request.readString();
+        data.schema = request.readString();
+        data.session = request.readString();
 
         return data;
     }
 
-    public static String writeGetSchema(String[] fields) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeGetSchema(MessageBuffer sb, String[] fields) throws RemotingException {
         sb.append(METHOD_GET_SCHEMA);
 
         for (String field : fields) {
             sb.append(SEP);
             sb.append(TYPE_STRING);
             sb.append(SEP);
-            sb.append(encodeString(field));
+            encodeString(sb, field);
         }
-
-        return sb.toString();
     }
 
-    public static String writeGetSchema(Throwable exception) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeGetSchema(MessageBuffer sb, Throwable exception) throws RemotingException {
         sb.append(METHOD_GET_SCHEMA);
         sb.append(SEP);
         sb.append(TYPE_EXCEPTION);
@@ -470,86 +256,34 @@ class MetadataProviderProtocol extends BaseProtocol {
             sb.append(SUBTYPE_SCHEMA_EXCEPTION);
         }
         sb.append(SEP);
-        sb.append(encodeString(exception.getMessage()));
-
-        return sb.toString();
+        encodeString(sb, exception.getMessage());
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // GET ITEMS
 
-    public static GetItemsData readGetItems(String request) throws RemotingException {
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-
+    public static GetItemsData readGetItems(RequestDecoder request) throws RemotingException {
         GetItemsData data = new GetItemsData();
 
-        String typ = null;
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_GET_ITEMS + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                data.user = decodeString(tokenizer.nextToken());
-                break;
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_GET_ITEMS + " request");
-        }
-
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e2) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_GET_ITEMS + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                data.group = decodeString(tokenizer.nextToken());
-                break;
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_GET_ITEMS + " request");
-        }
-
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e3) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_GET_ITEMS + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                data.session = decodeString(tokenizer.nextToken());
-                break;
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_GET_ITEMS + " request");
-        }
+        data.user = request.readString();
+        data.group = request.readString();
+        data.session = request.readString();
 
         return data;
     }
 
-    public static String writeGetItems(String[] items) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeGetItems(MessageBuffer sb, String[] items) throws RemotingException {
         sb.append(METHOD_GET_ITEMS);
 
         for (String item : items) {
             sb.append(SEP);
             sb.append(TYPE_STRING);
             sb.append(SEP);
-            sb.append(encodeString(item));
+            encodeString(sb, item);
         }
-
-        return sb.toString();
     }
 
-    public static String writeGetItems(Throwable exception) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeGetItems(MessageBuffer sb, Throwable exception) throws RemotingException {
         sb.append(METHOD_GET_ITEMS);
         sb.append(SEP);
         sb.append(TYPE_EXCEPTION);
@@ -557,51 +291,21 @@ class MetadataProviderProtocol extends BaseProtocol {
             sb.append(SUBTYPE_ITEMS_EXCEPTION);
         }
         sb.append(SEP);
-        sb.append(encodeString(exception.getMessage()));
-
-        return sb.toString();
+        encodeString(sb, exception.getMessage());
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // GET USER ITEM DATA
 
-    public static GetUserItemData readGetUserItemData(String request) throws RemotingException {
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-
+    public static GetUserItemData readGetUserItemData(RequestDecoder request) throws RemotingException {
         GetUserItemData data = new GetUserItemData();
 
-        String typ = null;
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_GET_USER_ITEM_DATA + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                data.user = decodeString(tokenizer.nextToken());
-                break;
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_GET_USER_ITEM_DATA + " request");
-        }
+        data.user = request.readString();
 
         List<String> itemList = new ArrayList<String>();
 
-        while (tokenizer.hasMoreTokens()) {
-            typ = tokenizer.nextToken();
-
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    String item = tokenizer.nextToken();
-                    itemList.add(decodeString(item));
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_GET_USER_ITEM_DATA + " request");
-            }
-
+        while (request.hasMore()) {
+            itemList.add(request.readString());
         }
 
         String [] items = itemList.toArray(new String [itemList.size()]);
@@ -610,9 +314,7 @@ class MetadataProviderProtocol extends BaseProtocol {
         return data;
     }
 
-    public static String writeGetUserItemData(UserItemData[] userItemDatas) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeGetUserItemData(MessageBuffer sb, UserItemData[] userItemDatas) throws RemotingException {
         sb.append(METHOD_GET_USER_ITEM_DATA);
 
         for (UserItemData userItemData : userItemDatas) {
@@ -629,92 +331,36 @@ class MetadataProviderProtocol extends BaseProtocol {
             sb.append(SEP);
             sb.append(encodeModes(userItemData.allowedModes));
         }
-
-        return sb.toString();
     }
 
-    public static String writeGetUserItemData(Throwable exception) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeGetUserItemData(MessageBuffer sb, Throwable exception) throws RemotingException {
         sb.append(METHOD_GET_USER_ITEM_DATA);
         sb.append(SEP);
         sb.append(TYPE_EXCEPTION);
         sb.append(SEP);
-        sb.append(encodeString(exception.getMessage()));
-
-        return sb.toString();
+        encodeString(sb, exception.getMessage());
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // NOTIFY USER MESSAGE
 
-    public static NotifyUserMessageData readNotifyUserMessage(String request) throws RemotingException {
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-
+    public static NotifyUserMessageData readNotifyUserMessage(RequestDecoder request) throws RemotingException {
         NotifyUserMessageData data = new NotifyUserMessageData();
 
-        String typ = null;
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_USER_MESSAGE + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                data.user = decodeString(tokenizer.nextToken());
-                break;
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_USER_MESSAGE + " request");
-        }
-
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e2) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_USER_MESSAGE + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                data.session = decodeString(tokenizer.nextToken());
-                break;
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_USER_MESSAGE + " request");
-        }
-
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e3) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_USER_MESSAGE + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                data.message = decodeString(tokenizer.nextToken());
-                break;
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_USER_MESSAGE + " request");
-        }
+        data.user = request.readString();
+        data.session = request.readString();
+        data.message = request.readString();
 
         return data;
     }
 
-    public static String writeNotifyUserMessage() {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeNotifyUserMessage(MessageBuffer sb) {
         sb.append(METHOD_NOTIFY_USER_MESSAGE);
         sb.append(SEP);
         sb.append(TYPE_VOID);
-
-        return sb.toString();
     }
 
-    public static String writeNotifyUserMessage(Throwable exception) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeNotifyUserMessage(MessageBuffer sb, Throwable exception) throws RemotingException {
         sb.append(METHOD_NOTIFY_USER_MESSAGE);
         sb.append(SEP);
         sb.append(TYPE_EXCEPTION);
@@ -725,116 +371,42 @@ class MetadataProviderProtocol extends BaseProtocol {
             sb.append(SUBTYPE_CREDITS_EXCEPTION);
         }
         sb.append(SEP);
-        sb.append(encodeString(exception.getMessage()));
+        encodeString(sb, exception.getMessage());
         if (exception instanceof CreditsException) {
             sb.append(SEP);
             sb.append(((CreditsException) exception).getClientErrorCode());
             sb.append(SEP);
-            sb.append(encodeString(((CreditsException) exception).getClientErrorMsg()));
+            encodeString(sb, ((CreditsException) exception).getClientErrorMsg());
         }
-
-        return sb.toString();
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // NOTIFY NEW SESSION
 
-    public static NotifyNewSessionData readNotifyNewSession(String request) throws RemotingException {
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-        String msg = null;
-        RemotingException re = null;
-        
+    public static NotifyNewSessionData readNotifyNewSession(RequestDecoder request) throws RemotingException {
         NotifyNewSessionData data = new NotifyNewSessionData();
 
-        String typ = null;
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_NEW_SESSION + " request");
-        }
-        
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                data.user = decodeString(tokenizer.nextToken());
-                break;
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_NEW_SESSION + " request");
-        }
-
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e2) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_NEW_SESSION + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                data.session = decodeString(tokenizer.nextToken());
-                break;
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_NEW_SESSION + " request");
-        }
-
-        while (tokenizer.hasMoreTokens()) {
-            String contextInfoName = "";
-            String contextInfoValue = "";
-
-            typ = tokenizer.nextToken();
-
-            String val; // declared here to avoid JVM bug JDK-8067429
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    val = tokenizer.nextToken();
-                    contextInfoName = decodeString(val);
-                    break;
-
-                default:
-                    msg = "Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_NEW_SESSION + " request";
-            }
+        data.user = request.readString();
+        data.session = request.readString();
 
-            typ = tokenizer.nextToken();
-
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    val = tokenizer.nextToken();
-                    contextInfoValue = decodeString(val);
-                    break;
-
-                default:
-                    msg = "Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_NEW_SESSION + " request";
-            }
-
-            if (msg != null) {
-                re = new RemotingException(msg);
-                throw re;
-            } else {
-                data.clientContext.put(contextInfoName, contextInfoValue);
-            }
+        while (request.hasMore()) {
+            String contextInfoName = request.readString();
+            String contextInfoValue = request.readString();
+            data.clientContext.put(contextInfoName, contextInfoValue);
         }
 
         return data;
     }
 
-    public static String writeNotifyNewSession(SessionData sessionData) {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeNotifyNewSession(MessageBuffer sb, SessionData sessionData) {
         sb.append(METHOD_NOTIFY_NEW_SESSION);
         sb.append(SEP);
         sb.append(TYPE_INT);
         sb.append(SEP);
         sb.append(sessionData.timeToLiveSeconds);
-
-        return sb.toString();
     }
 
-    public static String writeNotifyNewSession(Throwable exception) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeNotifyNewSession(MessageBuffer sb, Throwable exception) throws RemotingException {
         sb.append(METHOD_NOTIFY_NEW_SESSION);
         sb.append(SEP);
         sb.append(TYPE_EXCEPTION);
@@ -849,57 +421,33 @@ class MetadataProviderProtocol extends BaseProtocol {
             }
         }
         sb.append(SEP);
-        sb.append(encodeString(exception.getMessage()));
+        encodeString(sb, exception.getMessage());
         if (exception instanceof CreditsException) {
             sb.append(SEP);
             sb.append(((CreditsException) exception).getClientErrorCode());
             sb.append(SEP);
-            sb.append(encodeString(((CreditsException) exception).getClientErrorMsg()));
+            encodeString(sb, ((CreditsException) exception).getClientErrorMsg());
             if (exception instanceof ConflictingSessionException) {
                 sb.append(SEP);
-                sb.append(encodeString(((ConflictingSessionException) exception).getConflictingSessionID()));
+                encodeString(sb, ((ConflictingSessionException) exception).getConflictingSessionID());
             }
         }
-
-        return sb.toString();
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // NOTIFY SESSION CLOSE
 
-    public static String readNotifySessionClose(String request) throws RemotingException {
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-
-        String typ = null;
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_SESSION_CLOSE + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                String session = tokenizer.nextToken();
-                return decodeString(session);
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_SESSION_CLOSE + " request");
-        }
+    public static String readNotifySessionClose(RequestDecoder request) throws RemotingException {
+        return request.readString();
     }
 
-    public static String writeNotifySessionClose() {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeNotifySessionClose(MessageBuffer sb) {
         sb.append(METHOD_NOTIFY_SESSION_CLOSE);
         sb.append(SEP);
         sb.append(TYPE_VOID);
-
-        return sb.toString();
     }
 
-    public static String writeNotifySessionClose(Throwable exception) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeNotifySessionClose(MessageBuffer sb, Throwable exception) throws RemotingException {
         sb.append(METHOD_NOTIFY_SESSION_CLOSE);
         sb.append(SEP);
         sb.append(TYPE_EXCEPTION);
@@ -907,234 +455,42 @@ class MetadataProviderProtocol extends BaseProtocol {
             sb.append(SUBTYPE_NOTIFICATION_EXCEPTION);
         }
         sb.append(SEP);
-        sb.append(encodeString(exception.getMessage()));
-
-        return sb.toString();
+        encodeString(sb, exception.getMessage());
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // NOTIFY NEW TABLES
 
-    public static NotifyNewTablesData readNotifyNewTables(String request) throws RemotingException {
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-
+    public static NotifyNewTablesData readNotifyNewTables(RequestDecoder request) throws RemotingException {
         NotifyNewTablesData data = new NotifyNewTablesData();
 
-        String typ = null;
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                data.user = decodeString(tokenizer.nextToken());
-                break;
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-        }
-
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e2) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                data.session = decodeString(tokenizer.nextToken());
-                break;
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-        }
+        data.user = request.readString();
+        data.session = request.readString();
 
         List<TableInfo> tableList = new ArrayList<TableInfo>();
 
-        while (tokenizer.hasMoreTokens()) {
-            int winIndex = -1;
-            Mode mode = null;
-            String id = null;
-            String dataAdapter = null;
-            String schema = null;
-            int min = -1;
-            int max = -1;
-            String selector = null;
-            int numItems = 0;
-
-            typ = tokenizer.nextToken();
-
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_INT:
-                    winIndex = Integer.parseInt(tokenizer.nextToken());
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-            }
-
-            try {
-                typ = tokenizer.nextToken();
-            } catch (NoSuchElementException e3) {
-                throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-            }
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_MODES:
-                    Mode [] modes = decodeModes(tokenizer.nextToken());
-                    if (modes != null) {
-                        mode = modes[0];
-                    }
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-            }
-
-            try {
-                typ = tokenizer.nextToken();
-            } catch (NoSuchElementException e4) {
-                throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-            }
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    id = decodeString(tokenizer.nextToken());
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-            }
-
-            try {
-                typ = tokenizer.nextToken();
-            } catch (NoSuchElementException e6) {
-                throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-            }
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    dataAdapter = decodeString(tokenizer.nextToken());
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-            }
-
-            try {
-                typ = tokenizer.nextToken();
-            } catch (NoSuchElementException e5) {
-                throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-            }
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    schema = decodeString(tokenizer.nextToken());
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-            }
-
-            try {
-                typ = tokenizer.nextToken();
-            } catch (NoSuchElementException e5) {
-                throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-            }
-
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_INT:
-                    min = Integer.parseInt(tokenizer.nextToken());
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-            }
-
-            try {
-                typ = tokenizer.nextToken();
-            } catch (NoSuchElementException e5) {
-                throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-            }
-
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_INT:
-                    max = Integer.parseInt(tokenizer.nextToken());
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-            }
-
-            try {
-                typ = tokenizer.nextToken();
-            } catch (NoSuchElementException e6) {
-                throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-            }
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    selector = decodeString(tokenizer.nextToken());
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-            }
-
-            try {
-                typ = tokenizer.nextToken();
-            } catch (NoSuchElementException e5) {
-                throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-            }
-
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_INT:
-                    numItems = Integer.parseInt(tokenizer.nextToken());
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-            }
-            
-            ArrayList<String> itemNames = new ArrayList<>();
-            for (int i = 0; i < numItems; i++) {
-                try {
-                    typ = tokenizer.nextToken();
-                } catch (NoSuchElementException e6) {
-                    throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-                }
-                switch (typ.toCharArray()[0]) {
-
-                    case TYPE_STRING:
-                        itemNames.add(decodeString(tokenizer.nextToken()));
-                        break;
-
-                    default:
-                        throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_NEW_TABLES + " request");
-                }
-            }
-            String[] items = itemNames.toArray(new String[0]);
+        while (request.hasMore()) {
+            int winIndex = request.readInt();
+            Mode mode = request.readMode();
+            String id = request.readString();
+            String dataAdapter = request.readString();
+            String schema = request.readString();
+            int min = request.readInt();
+            int max = request.readInt();
+            String selector = request.readString();
+            String[] items = readItemNames(request);
 
             TableInfo table = new TableInfo(winIndex, mode, id, dataAdapter, schema, min, max, selector, items, null);
             tableList.add(table);
-
         }
-  
+
         TableInfo [] tables = tableList.toArray(new TableInfo [tableList.size()]);
         data.tables = tables;
 
         return data;
     }
 
-    public static String writeNotifyNewTables(TableData tableData) {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeNotifyNewTables(MessageBuffer sb, TableData tableData) {
         sb.append(METHOD_NOTIFY_NEW_TABLES);
         sb.append(SEP);
         sb.append(TYPE_BOOLEAN);
@@ -1144,13 +500,9 @@ class MetadataProviderProtocol extends BaseProtocol {
         sb.append(TYPE_BOOLEAN);
         sb.append(SEP);
         sb.append(tableData.wantsFinalStatistics ? VALUE_TRUE : VALUE_FALSE);
-
-        return sb.toString();
     }
 
-    public static String writeNotifyNewTables(Throwable exception) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeNotifyNewTables(MessageBuffer sb, Throwable exception) throws RemotingException {
         sb.append(METHOD_NOTIFY_NEW_TABLES);
         sb.append(SEP);
         sb.append(TYPE_EXCEPTION);
@@ -1161,293 +513,52 @@ class MetadataProviderProtocol extends BaseProtocol {
             sb.append(SUBTYPE_CREDITS_EXCEPTION);
         }
         sb.append(SEP);
-        sb.append(encodeString(exception.getMessage()));
+        encodeString(sb, exception.getMessage());
         if (exception instanceof CreditsException) {
             sb.append(SEP);
             sb.append(((CreditsException) exception).getClientErrorCode());
             sb.append(SEP);
-            sb.append(encodeString(((CreditsException) exception).getClientErrorMsg()));
+            encodeString(sb, ((CreditsException) exception).getClientErrorMsg());
         }
-
-        return sb.toString();
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // NOTIFY TABLES CLOSE
 
-    public static NotifyTablesCloseData readNotifyTablesClose(String request) throws RemotingException {
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-
+    public static NotifyTablesCloseData readNotifyTablesClose(RequestDecoder request) throws RemotingException {
         NotifyTablesCloseData data = new NotifyTablesCloseData();
 
-        String typ = null;
-        try {
-            typ = tokenizer.nextToken();
-        } catch (NoSuchElementException e) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-        }
-        switch (typ.toCharArray()[0]) {
-
-            case TYPE_STRING:
-                data.session = decodeString(tokenizer.nextToken());
-                break;
-
-            default:
-                throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-        }
+        data.session = request.readString();
 
         List<TableInfo> tableList = new ArrayList<TableInfo>();
 
-        while (tokenizer.hasMoreTokens()) {
-            int winIndex = -1;
-            Mode mode = null;
-            String id = null;
-            String dataAdapter = null;
-            String schema = null;
-            int min = -1;
-            int max = -1;
-            String selector = null;
-            int numItems = 0;
-            int numStats = 0;
-
-            typ = tokenizer.nextToken();
-
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_INT:
-                    winIndex = Integer.parseInt(tokenizer.nextToken());
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-
-            try {
-                typ = tokenizer.nextToken();
-            } catch (NoSuchElementException e2) {
-                throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_MODES:
-                    Mode [] modes = decodeModes(tokenizer.nextToken());
-                    if (modes != null) {
-                        mode = modes[0];
-                    }
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-
-            try {
-                typ = tokenizer.nextToken();
-            } catch (NoSuchElementException e3) {
-                throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    id = decodeString(tokenizer.nextToken());
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-
-            try {
-                typ = tokenizer.nextToken();
-            } catch (NoSuchElementException e6) {
-                throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    dataAdapter = decodeString(tokenizer.nextToken());
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-
-            try {
-                typ = tokenizer.nextToken();
-            } catch (NoSuchElementException e4) {
-                throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    schema = decodeString(tokenizer.nextToken());
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-
-            try {
-                typ = tokenizer.nextToken();
-            } catch (NoSuchElementException e5) {
-                throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_INT:
-                    min = Integer.parseInt(tokenizer.nextToken());
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-
-            try {
-                typ = tokenizer.nextToken();
-            } catch (NoSuchElementException e5) {
-                throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_INT:
-                    max = Integer.parseInt(tokenizer.nextToken());
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-
-            try {
-                typ = tokenizer.nextToken();
-            } catch (NoSuchElementException e5) {
-                throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_STRING:
-                    selector = decodeString(tokenizer.nextToken());
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-
-            try {
-                typ = tokenizer.nextToken();
-            } catch (NoSuchElementException e5) {
-                throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_INT:
-                    numItems = Integer.parseInt(tokenizer.nextToken());
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-            
-            ArrayList<String> itemNames = new ArrayList<>();
-            for (int i = 0; i < numItems; i++) {
-                try {
-                    typ = tokenizer.nextToken();
-                } catch (NoSuchElementException e6) {
-                    throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-                }
-                switch (typ.toCharArray()[0]) {
-
-                    case TYPE_STRING:
-                        itemNames.add(decodeString(tokenizer.nextToken()));
-                        break;
-
-                    default:
-                        throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-                }
-            }
-            String[] items = itemNames.toArray(new String[0]);
-
-            try {
-                typ = tokenizer.nextToken();
-            } catch (NoSuchElementException e5) {
-                throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-
-            switch (typ.toCharArray()[0]) {
-
-                case TYPE_INT:
-                    numStats = Integer.parseInt(tokenizer.nextToken());
-                    break;
-
-                default:
-                    throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-            }
-            
+        while (request.hasMore()) {
+            int winIndex = request.readInt();
+            Mode mode = request.readMode();
+            String id = request.readString();
+            String dataAdapter = request.readString();
+            String schema = request.readString();
+            int min = request.readInt();
+            int max = request.readInt();
+            String selector = request.readString();
+            String[] items = readItemNames(request);
+
+            int numStats = request.readInt();
             SubscriptionStatistics[] statistics;
             if (numStats > 0) {
-                ArrayList<SubscriptionStatistics> stats = new ArrayList<>();
-
+                statistics = new SubscriptionStatistics[numStats];
                 for (int i = 0; i < numStats; i++) {
-                    long totRealTime;
-                    long totLost;
-                    long totFiltered;
-
-                    try {
-                        typ = tokenizer.nextToken();
-                    } catch (NoSuchElementException e6) {
-                        throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-                    }
-                    switch (typ.toCharArray()[0]) {
-
-                        case TYPE_LONG:
-                            totRealTime = Long.parseLong(tokenizer.nextToken());
-                            break;
-
-                        default:
-                            throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-                    }
-
-                    try {
-                        typ = tokenizer.nextToken();
-                    } catch (NoSuchElementException e6) {
-                        throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-                    }
-                    switch (typ.toCharArray()[0]) {
-
-                        case TYPE_LONG:
-                            totLost = Long.parseLong(tokenizer.nextToken());
-                            break;
-
-                        default:
-                            throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-                    }
-
-                    try {
-                        typ = tokenizer.nextToken();
-                    } catch (NoSuchElementException e6) {
-                        throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-                    }
-                    switch (typ.toCharArray()[0]) {
-
-                        case TYPE_LONG:
-                            totFiltered = Long.parseLong(tokenizer.nextToken());
-                            break;
-
-                        default:
-                            throw new RemotingException("Unknown type '" + typ + "' found while parsing a " + METHOD_NOTIFY_TABLES_CLOSE + " request");
-                    }
-
-                    stats.add(new SubscriptionStatistics(totRealTime, totLost, totFiltered));
+                    long totRealTime = request.readLong();
+                    long totLost = request.readLong();
+                    long totFiltered = request.readLong();
+                    statistics[i] = new SubscriptionStatistics(totRealTime, totLost, totFiltered);
                 }
-
-                statistics = stats.toArray(new SubscriptionStatistics[0]);
             } else {
                 statistics = null;
             }
 
             TableInfo table = new TableInfo(winIndex, mode, id, dataAdapter, schema, min, max, selector, items, statistics);
             tableList.add(table);
-
         }
 
         TableInfo [] tables = tableList.toArray(new TableInfo [tableList.size()]);
@@ -1456,19 +567,13 @@ class MetadataProviderProtocol extends BaseProtocol {
         return data;
     }
 
-    public static String writeNotifyTablesClose() {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeNotifyTablesClose(MessageBuffer sb) {
         sb.append(METHOD_NOTIFY_TABLES_CLOSE);
         sb.append(SEP);
         sb.append(TYPE_VOID);
-
-        return sb.toString();
     }
 
-    public static String writeNotifyTablesClose(Throwable exception) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeNotifyTablesClose(MessageBuffer sb, Throwable exception) throws RemotingException {
         sb.append(METHOD_NOTIFY_TABLES_CLOSE);
         sb.append(SEP);
         sb.append(TYPE_EXCEPTION);
@@ -1476,82 +581,34 @@ class MetadataProviderProtocol extends BaseProtocol {
             sb.append(SUBTYPE_NOTIFICATION_EXCEPTION);
         }
         sb.append(SEP);
-        sb.append(encodeString(exception.getMessage()));
-
-        return sb.toString();
+        encodeString(sb, exception.getMessage());
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // NOTIFY MPN DEVICE ACCESS
 
-    public static NotifyMpnDeviceAccessData readNotifyMpnDeviceAccess(String request) throws RemotingException {
+    public static NotifyMpnDeviceAccessData readNotifyMpnDeviceAccess(RequestDecoder request) throws RemotingException {
         NotifyMpnDeviceAccessData data = new NotifyMpnDeviceAccessData();
 
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-        try {
-
-            // User
-            String typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_STRING) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_DEVICE_ACCESS + " request");
-            }
-
-            data.user = decodeString(tokenizer.nextToken());
-
-            // Session ID
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_STRING) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_DEVICE_ACCESS + " request");
-            }
-
-            data.sessionID = decodeString(tokenizer.nextToken());
-
-            // Platform type
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_MPN_PLATFORM) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_DEVICE_ACCESS + " request");
-            }
-
-            MpnPlatformType platformType = decodeMpnPlatformType(tokenizer.nextToken());
+        data.user = request.readString();
+        data.sessionID = request.readString();
 
-            // Application ID
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_STRING) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_DEVICE_ACCESS + " request");
-            }
-
-            String appID = decodeString(tokenizer.nextToken());
-
-            // Device token
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_STRING) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_DEVICE_ACCESS + " request");
-            }
+        MpnPlatformType platformType = request.readMpnPlatform();
+        String appID = request.readString();
+        String deviceToken = request.readString();
 
-            String deviceToken = decodeString(tokenizer.nextToken());
-
-            data.device = new MpnDeviceInfo(platformType, appID, deviceToken);
-
-        } catch (NoSuchElementException e) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_MPN_DEVICE_ACCESS + " request");
-        }
+        data.device = new MpnDeviceInfo(platformType, appID, deviceToken);
 
         return data;
     }
 
-    public static String writeNotifyMpnDeviceAccess() {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeNotifyMpnDeviceAccess(MessageBuffer sb) {
         sb.append(METHOD_NOTIFY_MPN_DEVICE_ACCESS);
         sb.append(SEP);
         sb.append(TYPE_VOID);
-
-        return sb.toString();
     }
 
-    public static String writeNotifyMpnDeviceAccess(Throwable exception) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeNotifyMpnDeviceAccess(MessageBuffer sb, Throwable exception) throws RemotingException {
         sb.append(METHOD_NOTIFY_MPN_DEVICE_ACCESS);
         sb.append(SEP);
         sb.append(TYPE_EXCEPTION);
@@ -1562,186 +619,59 @@ class MetadataProviderProtocol extends BaseProtocol {
             sb.append(SUBTYPE_CREDITS_EXCEPTION);
         }
         sb.append(SEP);
-        sb.append(encodeString(exception.getMessage()));
+        encodeString(sb, exception.getMessage());
         if (exception instanceof CreditsException) {
             sb.append(SEP);
             sb.append(((CreditsException) exception).getClientErrorCode());
             sb.append(SEP);
-            sb.append(encodeString(((CreditsException) exception).getClientErrorMsg()));
+            encodeString(sb, ((CreditsException) exception).getClientErrorMsg());
         }
-
-        return sb.toString();
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // NOTIFY MPN SUBSCRIPTION ACTIVATION
 
-    public static NotifyMpnSubscriptionActivationData readNotifyMpnSubscriptionActivation(String request) throws RemotingException {
+    public static NotifyMpnSubscriptionActivationData readNotifyMpnSubscriptionActivation(RequestDecoder request) throws RemotingException {
         NotifyMpnSubscriptionActivationData data = new NotifyMpnSubscriptionActivationData();
 
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-        try {
-
-            // User
-            String typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_STRING) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION + " request");
-            }
-
-            data.user = decodeString(tokenizer.nextToken());
-
-            // Session ID
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_STRING) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION + " request");
-            }
-
-            data.sessionID = decodeString(tokenizer.nextToken());
-
-            // Table info: win index
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_INT) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION + " request");
-            }
-
-            int winIndex = Integer.parseInt(tokenizer.nextToken());
-
-            // Table info: mode
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_MODES) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION + " request");
-            }
-
-            Mode [] modes = decodeModes(tokenizer.nextToken());
-            Mode mode = (modes != null) ? modes [0] : null;
-
-            // Table info: ID
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_STRING) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION + " request");
-            }
-
-            String id = decodeString(tokenizer.nextToken());
-
-            // Table info: data adapter
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_STRING) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION + " request");
-            }
-
-            String dataAdapter = decodeString(tokenizer.nextToken());
-
-            // Table info: schema
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_STRING) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION + " request");
-            }
-
-            String schema = decodeString(tokenizer.nextToken());
-
-            // Table info: min
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_INT) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION + " request");
-            }
-
-            int min = Integer.parseInt(tokenizer.nextToken());
-
-            // Table info: max
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_INT) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION + " request");
-            }
-
-            int max = Integer.parseInt(tokenizer.nextToken());
-
-            // Table info: item names
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_INT) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION + " request");
-            }
-
-            int numItems = Integer.parseInt(tokenizer.nextToken());
-
-            ArrayList<String> itemNames = new ArrayList<>();
-            for (int i = 0; i < numItems; i++) {
-                typ = tokenizer.nextToken();
-                if (typ.toCharArray()[0] != TYPE_STRING) {
-                    throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION + " request");
-                }
-
-                itemNames.add(decodeString(tokenizer.nextToken()));
-            }
-            String[] items = itemNames.toArray(new String[0]);
-
-            TableInfo table = new TableInfo(winIndex, mode, id, dataAdapter, schema, min, max, null, items, null);
-            data.table = table;
-
-            // Platform type
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_MPN_PLATFORM) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION + " request");
-            }
-
-            MpnPlatformType platformType = decodeMpnPlatformType(tokenizer.nextToken());
-
-            // Application ID
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_STRING) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION + " request");
-            }
-
-            String appID = decodeString(tokenizer.nextToken());
+        data.user = request.readString();
+        data.sessionID = request.readString();
 
-            // Device token
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_STRING) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION + " request");
-            }
-
-            String deviceToken = decodeString(tokenizer.nextToken());
-
-            // Trigger
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_STRING) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION + " request");
-            }
+        // Table info
+        int winIndex = request.readInt();
+        Mode mode = request.readMode();
+        String id = request.readString();
+        String dataAdapter = request.readString();
+        String schema = request.readString();
+        int min = request.readInt();
+        int max = request.readInt();
+        String[] items = readItemNames(request);
 
-            String trigger = decodeString(tokenizer.nextToken());
+        TableInfo table = new TableInfo(winIndex, mode, id, dataAdapter, schema, min, max, null, items, null);
+        data.table = table;
 
-            // Notification format
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_STRING) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION + " request");
-            }
-
-            String notificationFormat = decodeString(tokenizer.nextToken());
+        // Device and subscription info
+        MpnPlatformType platformType = request.readMpnPlatform();
+        String appID = request.readString();
+        String deviceToken = request.readString();
+        String trigger = request.readString();
+        String notificationFormat = request.readString();
 
-            MpnDeviceInfo deviceInfo = new MpnDeviceInfo(platformType, appID, deviceToken);
-            MpnSubscriptionInfo subscription = new MpnSubscriptionInfo(deviceInfo, notificationFormat, trigger);
+        MpnDeviceInfo deviceInfo = new MpnDeviceInfo(platformType, appID, deviceToken);
+        MpnSubscriptionInfo subscription = new MpnSubscriptionInfo(deviceInfo, notificationFormat, trigger);
 
-            data.mpnSubscription = subscription;
-
-        } catch (NoSuchElementException e) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION + " request");
-        }
+        data.mpnSubscription = subscription;
 
         return data;
     }
 
-    public static String writeNotifyMpnSubscriptionActivation() {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeNotifyMpnSubscriptionActivation(MessageBuffer sb) {
         sb.append(METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION);
         sb.append(SEP);
         sb.append(TYPE_VOID);
-
-        return sb.toString();
     }
 
-    public static String writeNotifyMpnSubscriptionActivation(Throwable exception) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeNotifyMpnSubscriptionActivation(MessageBuffer sb, Throwable exception) throws RemotingException {
         sb.append(METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION);
         sb.append(SEP);
         sb.append(TYPE_EXCEPTION);
@@ -1752,98 +682,42 @@ class MetadataProviderProtocol extends BaseProtocol {
             sb.append(SUBTYPE_CREDITS_EXCEPTION);
         }
         sb.append(SEP);
-        sb.append(encodeString(exception.getMessage()));
+        encodeString(sb, exception.getMessage());
         if (exception instanceof CreditsException) {
             sb.append(SEP);
             sb.append(((CreditsException) exception).getClientErrorCode());
             sb.append(SEP);
-            sb.append(encodeString(((CreditsException) exception).getClientErrorMsg()));
+            encodeString(sb, ((CreditsException) exception).getClientErrorMsg());
         }
-
-        return sb.toString();
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // NOTIFY MPN DEVICE TOKEN CHANGE
 
-    public static NotifyMpnDeviceTokenChangeData readNotifyMpnDeviceTokenChange(String request) throws RemotingException {
+    public static NotifyMpnDeviceTokenChangeData readNotifyMpnDeviceTokenChange(RequestDecoder request) throws RemotingException {
         NotifyMpnDeviceTokenChangeData data = new NotifyMpnDeviceTokenChangeData();
 
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-        try {
-
-            // User
-            String typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_STRING) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_DEVICE_TOKEN_CHANGE + " request");
-            }
-
-            data.user = decodeString(tokenizer.nextToken());
-
-            // Session ID
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_STRING) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_DEVICE_TOKEN_CHANGE + " request");
-            }
-
-            data.sessionID = decodeString(tokenizer.nextToken());
-
-            // Platform type
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_MPN_PLATFORM) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_DEVICE_TOKEN_CHANGE + " request");
-            }
-
-            MpnPlatformType platformType = decodeMpnPlatformType(tokenizer.nextToken());
-
-            // Application ID
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_STRING) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_DEVICE_TOKEN_CHANGE + " request");
-            }
-
-            String appID = decodeString(tokenizer.nextToken());
-
-            // Device token
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_STRING) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_DEVICE_TOKEN_CHANGE + " request");
-            }
-
-            String deviceToken = decodeString(tokenizer.nextToken());
-
-            data.device = new MpnDeviceInfo(platformType, appID, deviceToken);
-
-            // New device token
-            typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] != TYPE_STRING) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_NOTIFY_MPN_DEVICE_TOKEN_CHANGE + " request");
-            }
+        data.user = request.readString();
+        data.sessionID = request.readString();
 
-            String newDeviceToken = decodeString(tokenizer.nextToken());
+        MpnPlatformType platformType = request.readMpnPlatform();
+        String appID = request.readString();
+        String deviceToken = request.readString();
 
-            data.newDeviceToken = newDeviceToken;
+        data.device = new MpnDeviceInfo(platformType, appID, deviceToken);
 
-        } catch (NoSuchElementException e) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_NOTIFY_MPN_DEVICE_TOKEN_CHANGE + " request");
-        }
+        data.newDeviceToken = request.readString();
 
         return data;
     }
 
-    public static String writeNotifyMpnDeviceTokenChange() {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeNotifyMpnDeviceTokenChange(MessageBuffer sb) {
         sb.append(METHOD_NOTIFY_MPN_DEVICE_TOKEN_CHANGE);
         sb.append(SEP);
         sb.append(TYPE_VOID);
-
-        return sb.toString();
     }
 
-    public static String writeNotifyMpnDeviceTokenChange(Throwable exception) throws RemotingException {
-        StringBuilder sb = new StringBuilder();
-
+    public static void writeNotifyMpnDeviceTokenChange(MessageBuffer sb, Throwable exception) throws RemotingException {
         sb.append(METHOD_NOTIFY_MPN_DEVICE_TOKEN_CHANGE);
         sb.append(SEP);
         sb.append(TYPE_EXCEPTION);
@@ -1854,40 +728,31 @@ class MetadataProviderProtocol extends BaseProtocol {
             sb.append(SUBTYPE_CREDITS_EXCEPTION);
         }
         sb.append(SEP);
-        sb.append(encodeString(exception.getMessage()));
+        encodeString(sb, exception.getMessage());
         if (exception instanceof CreditsException) {
             sb.append(SEP);
             sb.append(((CreditsException) exception).getClientErrorCode());
             sb.append(SEP);
-            sb.append(encodeString(((CreditsException) exception).getClientErrorMsg()));
+            encodeString(sb, ((CreditsException) exception).getClientErrorMsg());
         }
-
-        return sb.toString();
     }
 
     // ////////////////////////////////////////////////////////////////////////
     // FORCE SESSION TERMINATION
 
-    public static Callable<Void> readForceSessionTermination(String request) throws RemotingException {
-
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-        try {
-            String typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] == TYPE_VOID) {
-                // normal case
-                return () -> { return null; };
-            }
-
-            if (typ.toCharArray()[0] != TYPE_EXCEPTION) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_FORCE_SESSION_TERMINATION + " request");
-            }
-
-            String msg = decodeString(tokenizer.nextToken());
-            return () -> { throw new Exception(msg); };
+    public static Callable<Void> readForceSessionTermination(RequestDecoder request) throws RemotingException {
+        char typ = request.readType();
+        if (typ == TYPE_VOID) {
+            // normal case
+            return () -> { return null; };
+        }
 
-        } catch (NoSuchElementException e) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_FORCE_SESSION_TERMINATION + " request");
+        if (typ != TYPE_EXCEPTION) {
+            throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_FORCE_SESSION_TERMINATION + " request");
         }
+
+        String msg = request.readValue();
+        return () -> { throw new Exception(msg); };
     }
 
     public static String writeForceSessionTermination(String sessionID) throws RemotingException {
@@ -1897,7 +762,7 @@ class MetadataProviderProtocol extends BaseProtocol {
         sb.append(SEP);
         sb.append(TYPE_STRING);
         sb.append(SEP);
-        sb.append(encodeString(sessionID));
+        encodeString(sb, sessionID);
         sb.append(SEP);
         sb.append(TYPE_VOID);
 
@@ -1911,7 +776,7 @@ class MetadataProviderProtocol extends BaseProtocol {
         sb.append(SEP);
         sb.append(TYPE_STRING);
         sb.append(SEP);
-        sb.append(encodeString(sessionID));
+        encodeString(sb, sessionID);
         sb.append(SEP);
         sb.append(TYPE_INT);
         sb.append(SEP);
@@ -1919,7 +784,7 @@ class MetadataProviderProtocol extends BaseProtocol {
         sb.append(SEP);
         sb.append(TYPE_STRING);
         sb.append(SEP);
-        sb.append(encodeString(causeMessage));
+        encodeString(sb, causeMessage);
 
         return sb.toString();
     }
@@ -1927,28 +792,21 @@ class MetadataProviderProtocol extends BaseProtocol {
     // ////////////////////////////////////////////////////////////////////////
     // FORCE UNSUBSCRIPTION
 
-    public static Callable<Boolean> readForceUnsubscription(String request) throws RemotingException {
-
-        StringTokenizer tokenizer = new StringTokenizer(request, "" + SEP);
-        try {
-            String typ = tokenizer.nextToken();
-            if (typ.toCharArray()[0] == TYPE_BOOLEAN) {
-                // normal case
-                String value = tokenizer.nextToken();
-                boolean outcome = (! value.equals(VALUE_FALSE));
-                return () -> { return outcome; };
-            }
-
-            if (typ.toCharArray()[0] != TYPE_EXCEPTION) {
-                throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_FORCE_UNSUBSCRIPTION + " request");
-            }
-
-            String msg = decodeString(tokenizer.nextToken());
-            return () -> { throw new Exception(msg); };
+    public static Callable<Boolean> readForceUnsubscription(RequestDecoder request) throws RemotingException {
+        char typ = request.readType();
+        if (typ == TYPE_BOOLEAN) {
+            // normal case
+            String value = request.readValue();
+            boolean outcome = (! VALUE_FALSE.equals(value));
+            return () -> { return outcome; };
+        }
 
-        } catch (NoSuchElementException e) {
-            throw new RemotingException("Token not found while parsing a " + METHOD_FORCE_UNSUBSCRIPTION + " request");
+        if (typ != TYPE_EXCEPTION) {
+            throw new RemotingException("Unexpected type '" + typ + "' found while parsing a " + METHOD_FORCE_UNSUBSCRIPTION + " request");
         }
+
+        String msg = request.readValue();
+        return () -> { throw new Exception(msg); };
     }
 
     public static String writeForceUnsubscription(String sessionID, int winIndex) throws RemotingException {
@@ -1958,7 +816,7 @@ class MetadataProviderProtocol extends BaseProtocol {
         sb.append(SEP);
         sb.append(TYPE_STRING);
         sb.append(SEP);
-        sb.append(encodeString(sessionID));
+        encodeString(sb, sessionID);
         sb.append(SEP);
         sb.append(TYPE_INT);
         sb.append(SEP);
@@ -1970,6 +828,18 @@ class MetadataProviderProtocol extends BaseProtocol {
     // ////////////////////////////////////////////////////////////////////////
     // Internal methods
 
+    private static String[] readItemNames(RequestDecoder request) throws RemotingException {
+        int numItems = request.readInt();
+        if (numItems < 0) {
+            throw new RemotingException("Invalid number of items found while parsing a " + request.getMethod() + " request");
+        }
+        String[] items = new String[numItems];
+        for (int i = 0; i < numItems; i++) {
+            items[i] = request.readString();
+        }
+        return items;
+    }
+
     protected static String encodeModes(Mode[] modes) throws RemotingException {
         if (modes == null) {
             return VALUE_NULL;
@@ -1997,40 +867,6 @@ class MetadataProviderProtocol extends BaseProtocol {
         return encodedModes.toString();
     }
 
-    protected static Mode[] decodeModes(String str) throws RemotingException {
-        if (str.equals(VALUE_NULL)) {
-            return null;
-        }
-        if (str.equals(VALUE_EMPTY)) {
-            return new Mode [0];
-        }
-
-        Mode [] modes = new Mode [str.length()];
-
-        char [] encodedModes = str.toCharArray();
-        for (int i = 0; i < str.length(); i++) {
-            char encodedMode = encodedModes[i];
-            switch (encodedMode) {
-                case TYPE_MODE_RAW:
-                    modes[i] = Mode.RAW;
-                    break;
-                case TYPE_MODE_MERGE:
-                    modes[i] = Mode.MERGE;
-                    break;
-                case TYPE_MODE_DISTINCT:
-                    modes[i] = Mode.DISTINCT;
-                    break;
-                case TYPE_MODE_COMMAND:
-                    modes[i] = Mode.COMMAND;
-                    break;
-                default:
-                    throw new RemotingException("Unknown mode '" + encodedMode + "' found while decoding Mode array");
-            }
-        }
-
-        return modes;
-    }
-
     protected static String encodeDouble(double val) {
         return Double.toString(val);
     }
@@ -2052,20 +888,4 @@ class MetadataProviderProtocol extends BaseProtocol {
             throw new RemotingException("Unknown platform type '" + platformType.toString() + "'");
         }
     }
-
-    protected static MpnPlatformType decodeMpnPlatformType(String str) throws RemotingException {
-        if (str.equals(VALUE_NULL)) {
-            return null;
-        }
-
-        char encodedPlatformType = str.toCharArray()[0];
-        switch (encodedPlatformType) {
-            case TYPE_MPN_PLATFORM_APPLE:
-                return MpnPlatformType.Apple;
-            case TYPE_MPN_PLATFORM_GOOGLE:
-                return MpnPlatformType.Google;
-            default:
-                throw new RemotingException("Unknown platform type '" + encodedPlatformType + "'");
-        }
-    }
 }
\ No newline at end of file
@@ -41,6 +41,13 @@ import javax.annotation.Nullable;
  * and NotifySessionClose for the same session, are always guaranteed
  * to be sequentialized in the right way, although they may not occur
  * in the same thread.
+ * By default, the requests are decoded by the thread that reads them
+ * and only the invocations are done in the thread pool. If the custom
+ * "lightstreamer.metadata.decode.pipeline" system property is set
+ * to "true", the decoding of the requests is also done in the thread pool,
+ * which relieves the reading thread when requests arrive in bursts,
+ * as it happens upon many concurrent logins. The order in which the
+ * requests are submitted to the thread pool is not affected.
  */
 public class MetadataProviderServer extends Server {
 
@@ -37,6 +37,7 @@ class MetadataProviderServerImpl extends ServerImpl {
 
     private final String _poolType;
     private final ExecutorService _executor;
+    private final boolean _decodeInPool;
     
     private MetadataControlManager myMetadataControlHelper = new MetadataControlManager(_log);
             
@@ -65,6 +66,34 @@ class MetadataProviderServerImpl extends ServerImpl {
         } catch (Exception e) {
             throw new IllegalArgumentException("Invalid lightstreamer.metadata.pool.size configuration: " + threadsConf);
         }
+
+        String pipelineConf = System.getProperty("lightstreamer.metadata.decode.pipeline");
+        if (pipelineConf == null || pipelineConf.equalsIgnoreCase("false")) {
+            _decodeInPool = false;
+        } else if (pipelineConf.equalsIgnoreCase("true")) {
+            _decodeInPool = true;
+        } else {
+            throw new IllegalArgumentException("Invalid lightstreamer.metadata.decode.pipeline configuration: " + pipelineConf);
+        }
+
+        // the init and close requests are handled before dispatching;
+        // the replies to our own requests are always handled by the reader
+        registerHandler(MetadataProviderProtocol.METHOD_GET_ITEM_DATA, pipelined(this::processGetItemData));
+        registerHandler(MetadataProviderProtocol.METHOD_NOTIFY_USER, pipelined(this::processNotifyUser));
+        registerHandler(MetadataProviderProtocol.METHOD_NOTIFY_USER_AUTH, pipelined(this::processNotifyUserAuth));
+        registerHandler(MetadataProviderProtocol.METHOD_GET_SCHEMA, pipelined(this::processGetSchema));
+        registerHandler(MetadataProviderProtocol.METHOD_GET_ITEMS, pipelined(this::processGetItems));
+        registerHandler(MetadataProviderProtocol.METHOD_GET_USER_ITEM_DATA, pipelined(this::processGetUserItemData));
+        registerHandler(MetadataProviderProtocol.METHOD_NOTIFY_USER_MESSAGE, pipelined(this::processNotifyUserMessage));
+        registerHandler(MetadataProviderProtocol.METHOD_NOTIFY_NEW_SESSION, pipelined(this::processNotifyNewSession));
+        registerHandler(MetadataProviderProtocol.METHOD_NOTIFY_SESSION_CLOSE, pipelined(this::processNotifySessionClose));
+        registerHandler(MetadataProviderProtocol.METHOD_NOTIFY_NEW_TABLES, pipelined(this::processNotifyNewTables));
+        registerHandler(MetadataProviderProtocol.METHOD_NOTIFY_TABLES_CLOSE, pipelined(this::processNotifyTablesClose));
+        registerHandler(MetadataProviderProtocol.METHOD_NOTIFY_MPN_DEVICE_ACCESS, pipelined(this::processNotifyMpnDeviceAccess));
+        registerHandler(MetadataProviderProtocol.METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION, pipelined(this::processNotifyMpnSubscriptionActivation));
+        registerHandler(MetadataProviderProtocol.METHOD_NOTIFY_MPN_DEVICE_TOKEN_CHANGE, pipelined(this::processNotifyMpnDeviceTokenChange));
+        registerHandler(MetadataProviderProtocol.METHOD_FORCE_SESSION_TERMINATION, this::processForceSessionTermination);
+        registerHandler(MetadataProviderProtocol.METHOD_FORCE_UNSUBSCRIPTION, this::processForceUnsubscription);
     }
 
     public final void setAdapter(MetadataProvider value) {
@@ -127,22 +156,15 @@ class MetadataProviderServerImpl extends ServerImpl {
     }
 
     @Override
-    public void onRequestReceived(String requestId, String request) {
-        int sep = request.indexOf(RemotingProtocol.SEP);
-        if (sep < 1) {
-            _log.warn("Discarding malformed request: " + request);
-            return;
-        }
-
-        String method = request.substring(0, sep);
+    public void onRequestReceived(String requestId, RequestDecoder request) {
 
         try {
-            if (method.equals(MetadataProviderProtocol.METHOD_CLOSE)) {
+            if (request.isMethod(MetadataProviderProtocol.METHOD_CLOSE)) {
                 // this can also precede the init request
                 if (! requestId.equals(MetadataProviderProtocol.CLOSE_REQUEST_ID)) {
                     throw new RemotingException("Unexpected id found while parsing a " + MetadataProviderProtocol.METHOD_CLOSE + " request");
                 }
-                final Map<String, String> closeParams = MetadataProviderProtocol.readClose(request.substring(sep + 1));
+                final Map<String, String> closeParams = MetadataProviderProtocol.readClose(request);
                 String closeReason = closeParams.get(MetadataProviderProtocol.KEY_CLOSE_REASON);
                 dispose();
                 if (closeReason != null) {
@@ -152,7 +174,7 @@ class MetadataProviderServerImpl extends ServerImpl {
                 }
             }
 
-            boolean isInitRequest = method.equals(MetadataProviderProtocol.METHOD_METADATA_INIT);
+            boolean isInitRequest = request.isMethod(MetadataProviderProtocol.METHOD_METADATA_INIT);
             if (isInitRequest && !_initExpected) {
                 throw new RemotingException("Unexpected late " + MetadataProviderProtocol.METHOD_METADATA_INIT + " request");
             } else if (!isInitRequest && _initExpected) {
@@ -164,7 +186,7 @@ class MetadataProviderServerImpl extends ServerImpl {
                 _initExpected = false;
                 String keepaliveHint = null;
                 String reply;
-                Map<String,String> initParams = MetadataProviderProtocol.readInit(request.substring(sep + 1));
+                Map<String,String> initParams = MetadataProviderProtocol.readInit(request);
                 try {
                     String proxyVersion = initParams.get(PROTOCOL_VERSION_PARAM);
                     String advertisedVersion = getSupportedVersion(proxyVersion);
@@ -242,302 +264,381 @@ class MetadataProviderServerImpl extends ServerImpl {
                 useKeepaliveHint(keepaliveHint);
                 sendReply(requestId, reply);
 
-            } else if (method.equals(MetadataProviderProtocol.METHOD_GET_ITEM_DATA)) {
-                final String [] items = MetadataProviderProtocol.readGetItemData(request.substring(sep + 1));
-                executeAndReply(requestId, new Worker() {
-                    public String doWork() throws RemotingException {
-                        try {
-                            ItemData [] itemDatas = new ItemData [items.length];
-                            for (int i = 0; i < items.length; i++) {
-                                List<Mode> modeList = new ArrayList<Mode>(4);
-                                if (_adapter.modeMayBeAllowed(items[i], Mode.RAW)) {
-                                    modeList.add(Mode.RAW);
-                                }
-                                if (_adapter.modeMayBeAllowed(items[i], Mode.MERGE)) {
-                                    modeList.add(Mode.MERGE);
-                                }
-                                if (_adapter.modeMayBeAllowed(items[i], Mode.DISTINCT)) {
-                                    modeList.add(Mode.DISTINCT);
-                                }
-                                if (_adapter.modeMayBeAllowed(items[i], Mode.COMMAND)) {
-                                    modeList.add(Mode.COMMAND);
-                                }
-                                
-                                Mode [] modes = modeList.toArray(new Mode [modeList.size()]);
-                         
-                                itemDatas[i] = new ItemData();
-                                itemDatas[i].allowedModes = modes;
-                                itemDatas[i].distinctSnapshotLength = _adapter.getDistinctSnapshotLength(items[i]);
-                                itemDatas[i].minSourceFrequency = _adapter.getMinSourceFrequency(items[i]);
-                            }
-                            return MetadataProviderProtocol.writeGetItemData(itemDatas);
-                        } catch (Error | RuntimeException e) {
-                            return MetadataProviderProtocol.writeGetItemData(e);
-                        }
-                    }
-                });
+            } else {
+                RequestHandler handler = getHandler(request);
+                if (handler != null) {
+                    handler.handle(requestId, request);
+                } else {
+                    _log.warn("Discarding unknown request: " + request);
+                }
+            }
 
-            } else if (method.equals(MetadataProviderProtocol.METHOD_NOTIFY_USER)) {
-                final NotifyUserData notifyUserData = MetadataProviderProtocol.readNotifyUser(request.substring(sep + 1), MetadataProviderProtocol.METHOD_NOTIFY_USER);
-                executeAndReply(requestId, new Worker() {
-                    public String doWork() throws RemotingException {
-                        try {
-                            _adapter.notifyUser(notifyUserData.user, notifyUserData.password, notifyUserData.httpHeaders);
-                            UserData userData = new UserData();
-                            userData.allowedMaxBandwidth = _adapter.getAllowedMaxBandwidth(notifyUserData.user);
-                            userData.wantsTablesNotification = _adapter.wantsTablesNotification(notifyUserData.user);
-                            return MetadataProviderProtocol.writeNotifyUser(userData, MetadataProviderProtocol.METHOD_NOTIFY_USER);
-                        } catch (AccessException | CreditsException | Error | RuntimeException e) {
-                            return MetadataProviderProtocol.writeNotifyUser(e, MetadataProviderProtocol.METHOD_NOTIFY_USER);
-                        }
-                    }
-                });
+        } catch (RemotingException e) {
+            onException(e);
+        }
+    }
 
-            } else if (method.equals(MetadataProviderProtocol.METHOD_NOTIFY_USER_AUTH)) {
-                final NotifyUserData notifyUserData = MetadataProviderProtocol.readNotifyUser(request.substring(sep + 1), MetadataProviderProtocol.METHOD_NOTIFY_USER_AUTH);
-                executeAndReply(requestId, new Worker() {
-                    public String doWork() throws RemotingException {
-                        try {
-                            _adapter.notifyUser(notifyUserData.user, notifyUserData.password, notifyUserData.httpHeaders, notifyUserData.clientPrincipal);
-                            UserData userData = new UserData();
-                            userData.allowedMaxBandwidth = _adapter.getAllowedMaxBandwidth(notifyUserData.user);
-                            userData.wantsTablesNotification = _adapter.wantsTablesNotification(notifyUserData.user);
-                            return MetadataProviderProtocol.writeNotifyUser(userData, MetadataProviderProtocol.METHOD_NOTIFY_USER_AUTH);
-                        } catch (AccessException | CreditsException | Error | RuntimeException e) {
-                            return MetadataProviderProtocol.writeNotifyUser(e, MetadataProviderProtocol.METHOD_NOTIFY_USER_AUTH);
+    private void processGetItemData(String requestId, RequestDecoder request) throws RemotingException {
+        final String [] items = MetadataProviderProtocol.readGetItemData(request);
+        executeAndReply(requestId, request, new Worker() {
+            public void doWork(MessageBuffer reply) throws RemotingException {
+                try {
+                    ItemData [] itemDatas = new ItemData [items.length];
+                    for (int i = 0; i < items.length; i++) {
+                        List<Mode> modeList = new ArrayList<Mode>(4);
+                        if (_adapter.modeMayBeAllowed(items[i], Mode.RAW)) {
+                            modeList.add(Mode.RAW);
                         }
-                    }
-                });
-
-            } else if (method.equals(MetadataProviderProtocol.METHOD_GET_SCHEMA)) {
-                final GetSchemaData getSchemaData = MetadataProviderProtocol.readGetSchema(request.substring(sep + 1));
-                executeAndReply(requestId, new Worker() {
-                    public String doWork() throws RemotingException {
-                        try {
-                            String [] fields = _adapter.getSchema(getSchemaData.user, getSchemaData.session, getSchemaData.group, getSchemaData.schema);
-                            if (fields == null) {
-                                fields = new String [0];
-                            }
-                            if (fields.length == 0) {
-                                _log.warn("Null or empty field list from getSchema for schema '" + getSchemaData.schema + "' in group '" + getSchemaData.group + "'");
-                            }
-                            return MetadataProviderProtocol.writeGetSchema(fields);
-                        } catch (ItemsException | SchemaException | Error | RuntimeException e) {
-                            return MetadataProviderProtocol.writeGetSchema(e);
+                        if (_adapter.modeMayBeAllowed(items[i], Mode.MERGE)) {
+                            modeList.add(Mode.MERGE);
                         }
-                    }
-                });
-
-            } else if (method.equals(MetadataProviderProtocol.METHOD_GET_ITEMS)) {
-                final GetItemsData getItemsData = MetadataProviderProtocol.readGetItems(request.substring(sep + 1));
-                executeAndReply(requestId, new Worker() {
-                    public String doWork() throws RemotingException {
-                        try {
-                            String [] items = _adapter.getItems(getItemsData.user, getItemsData.session, getItemsData.group);
-                            if (items == null) {
-                                items = new String [0];
-                            }
-                            if (items.length == 0) {
-                                _log.warn("Null or empty item list from getItems for group '" + getItemsData.group + "'");
-                            }
-                            return MetadataProviderProtocol.writeGetItems(items);
-                        } catch (ItemsException | Error | RuntimeException e) {
-                            return MetadataProviderProtocol.writeGetItems(e);
+                        if (_adapter.modeMayBeAllowed(items[i], Mode.DISTINCT)) {
+                            modeList.add(Mode.DISTINCT);
                         }
-                    }
-                });
-
-            } else if (method.equals(MetadataProviderProtocol.METHOD_GET_USER_ITEM_DATA)) {
-                final GetUserItemData getUserItemData = MetadataProviderProtocol.readGetUserItemData(request.substring(sep + 1));
-                executeAndReply(requestId, new Worker() {
-                    public String doWork() throws RemotingException {
-                        try {
-                            UserItemData [] userItemDatas = new UserItemData[getUserItemData.items.length];
-                            for (int i = 0; i < getUserItemData.items.length; i++) {
-                                List<Mode> modeList = new ArrayList<Mode>(4);
-                                if (_adapter.isModeAllowed(getUserItemData.user, getUserItemData.items[i], Mode.RAW)) {
-                                    modeList.add(Mode.RAW);
-                                }
-                                if (_adapter.isModeAllowed(getUserItemData.user, getUserItemData.items[i], Mode.MERGE)) {
-                                    modeList.add(Mode.MERGE);
-                                }
-                                if (_adapter.isModeAllowed(getUserItemData.user, getUserItemData.items[i], Mode.DISTINCT)) {
-                                    modeList.add(Mode.DISTINCT);
-                                }
-                                if (_adapter.isModeAllowed(getUserItemData.user, getUserItemData.items[i], Mode.COMMAND)) {
-                                    modeList.add(Mode.COMMAND);
-                                }
-                                
-                                Mode [] modes = modeList.toArray(new Mode [modeList.size()]);
-                             
-                                userItemDatas[i] = new UserItemData();
-                                userItemDatas[i].allowedModes = modes;
-                                userItemDatas[i].allowedMaxItemFrequency = _adapter.getAllowedMaxItemFrequency(getUserItemData.user, getUserItemData.items[i]);
-                                userItemDatas[i].allowedBufferSize = _adapter.getAllowedBufferSize(getUserItemData.user, getUserItemData.items[i]);
-                            }
-                            return MetadataProviderProtocol.writeGetUserItemData(userItemDatas);
-                        } catch (Error | RuntimeException e) {
-                            return MetadataProviderProtocol.writeGetUserItemData(e);
+                        if (_adapter.modeMayBeAllowed(items[i], Mode.COMMAND)) {
+                            modeList.add(Mode.COMMAND);
                         }
+                        
+                        Mode [] modes = modeList.toArray(new Mode [modeList.size()]);
+                 
+                        itemDatas[i] = new ItemData();
+                        itemDatas[i].allowedModes = modes;
+                        itemDatas[i].distinctSnapshotLength = _adapter.getDistinctSnapshotLength(items[i]);
+                        itemDatas[i].minSourceFrequency = _adapter.getMinSourceFrequency(items[i]);
                     }
-                });
+                    MetadataProviderProtocol.writeGetItemData(reply, itemDatas);
+                } catch (Error | RuntimeException e) {
+                    reply.reset();
+                    MetadataProviderProtocol.writeGetItemData(reply, e);
+                }
+            }
+        });
+    }
 
-            } else if (method.equals(MetadataProviderProtocol.METHOD_NOTIFY_USER_MESSAGE)) {
-                final NotifyUserMessageData notifyUserMessageData = MetadataProviderProtocol.readNotifyUserMessage(request.substring(sep + 1));
-                executeAndReply(requestId, new Worker() {
-                    public String doWork() throws RemotingException {
-                        try {
-                            _adapter.notifyUserMessage(notifyUserMessageData.user, notifyUserMessageData.session, notifyUserMessageData.message);
-                            return MetadataProviderProtocol.writeNotifyUserMessage();
-                        } catch (CreditsException | NotificationException | Error | RuntimeException e) {
-                            return MetadataProviderProtocol.writeNotifyUserMessage(e);
-                        }
-                    }
-                });
+    private void processNotifyUser(String requestId, RequestDecoder request) throws RemotingException {
+        final NotifyUserData notifyUserData = MetadataProviderProtocol.readNotifyUser(request, MetadataProviderProtocol.METHOD_NOTIFY_USER);
+        executeAndReply(requestId, request, new Worker() {
+            public void doWork(MessageBuffer reply) throws RemotingException {
+                try {
+                    _adapter.notifyUser(notifyUserData.user, notifyUserData.password, notifyUserData.httpHeaders);
+                    UserData userData = new UserData();
+                    userData.allowedMaxBandwidth = _adapter.getAllowedMaxBandwidth(notifyUserData.user);
+                    userData.wantsTablesNotification = _adapter.wantsTablesNotification(notifyUserData.user);
+                    MetadataProviderProtocol.writeNotifyUser(reply, userData, MetadataProviderProtocol.METHOD_NOTIFY_USER);
+                } catch (AccessException | CreditsException | Error | RuntimeException e) {
+                    reply.reset();
+                    MetadataProviderProtocol.writeNotifyUser(reply, e, MetadataProviderProtocol.METHOD_NOTIFY_USER);
+                }
+            }
+        });
+    }
 
-            } else if (method.equals(MetadataProviderProtocol.METHOD_NOTIFY_NEW_SESSION)) {
-                final NotifyNewSessionData notifyNewSessionData = MetadataProviderProtocol.readNotifyNewSession(request.substring(sep + 1));
-                executeAndReply(requestId, new Worker() {
-                    public String doWork() throws RemotingException {
-                        try {
-                            _adapter.notifyNewSession(notifyNewSessionData.user, notifyNewSessionData.session, notifyNewSessionData.clientContext);
-                            SessionData sessionData = new SessionData();
-                            sessionData.timeToLiveSeconds = _adapter.getSessionTimeToLive(notifyNewSessionData.user, notifyNewSessionData.session);
-                            return MetadataProviderProtocol.writeNotifyNewSession(sessionData);
-                        } catch (CreditsException | NotificationException | Error | RuntimeException e) {
-                            return MetadataProviderProtocol.writeNotifyNewSession(e);
-                        }
-                    }
-                });
+    private void processNotifyUserAuth(String requestId, RequestDecoder request) throws RemotingException {
+        final NotifyUserData notifyUserData = MetadataProviderProtocol.readNotifyUser(request, MetadataProviderProtocol.METHOD_NOTIFY_USER_AUTH);
+        executeAndReply(requestId, request, new Worker() {
+            public void doWork(MessageBuffer reply) throws RemotingException {
+                try {
+                    _adapter.notifyUser(notifyUserData.user, notifyUserData.password, notifyUserData.httpHeaders, notifyUserData.clientPrincipal);
+                    UserData userData = new UserData();
+                    userData.allowedMaxBandwidth = _adapter.getAllowedMaxBandwidth(notifyUserData.user);
+                    userData.wantsTablesNotification = _adapter.wantsTablesNotification(notifyUserData.user);
+                    MetadataProviderProtocol.writeNotifyUser(reply, userData, MetadataProviderProtocol.METHOD_NOTIFY_USER_AUTH);
+                } catch (AccessException | CreditsException | Error | RuntimeException e) {
+                    reply.reset();
+                    MetadataProviderProtocol.writeNotifyUser(reply, e, MetadataProviderProtocol.METHOD_NOTIFY_USER_AUTH);
+                }
+            }
+        });
+    }
 
-            } else if (method.equals(MetadataProviderProtocol.METHOD_NOTIFY_SESSION_CLOSE)) {
-                final String session = MetadataProviderProtocol.readNotifySessionClose(request.substring(sep + 1));
-                executeAndReply(requestId, new Worker() {
-                    public String doWork() throws RemotingException {
-                        try {
-                            _adapter.notifySessionClose(session);
-                            return MetadataProviderProtocol.writeNotifySessionClose();
-                        } catch (NotificationException | Error | RuntimeException e) {
-                            return MetadataProviderProtocol.writeNotifySessionClose(e);
-                        }
+    private void processGetSchema(String requestId, RequestDecoder request) throws RemotingException {
+        final GetSchemaData getSchemaData = MetadataProviderProtocol.readGetSchema(request);
+        executeAndReply(requestId, request, new Worker() {
+            public void doWork(MessageBuffer reply) throws RemotingException {
+                try {
+                    String [] fields = _adapter.getSchema(getSchemaData.user, getSchemaData.session, getSchemaData.group, getSchemaData.schema);
+                    if (fields == null) {
+                        fields = new String [0];
                     }
-                });
-
-            } else if (method.equals(MetadataProviderProtocol.METHOD_NOTIFY_NEW_TABLES)) {
-                final NotifyNewTablesData notifyNewTablesData = MetadataProviderProtocol.readNotifyNewTables(request.substring(sep + 1));
-                executeAndReply(requestId, new Worker() {
-                    public String doWork() throws RemotingException {
-                        try {
-                            _adapter.notifyNewTables(notifyNewTablesData.user, notifyNewTablesData.session, notifyNewTablesData.tables);
-                            TableData tableData = new TableData();
-                            if (notifyNewTablesData.tables.length == 1) {
-                                tableData.enableUnsubscription = _adapter.enableTableUnsubscription(notifyNewTablesData.session, notifyNewTablesData.tables);
-                            } else {
-                                tableData.enableUnsubscription = false; // no point asking, as the Server would refuse anyway
-                            }
-                            tableData.wantsFinalStatistics = _adapter.wantsFinalTableStatistics(notifyNewTablesData.session, notifyNewTablesData.tables);
-                            return MetadataProviderProtocol.writeNotifyNewTables(tableData);
-                        } catch (NotificationException | CreditsException | Error | RuntimeException e) {
-                            return MetadataProviderProtocol.writeNotifyNewTables(e);
-                        }
+                    if (fields.length == 0) {
+                        _log.warn("Null or empty field list from getSchema for schema '" + getSchemaData.schema + "' in group '" + getSchemaData.group + "'");
                     }
-                });
+                    MetadataProviderProtocol.writeGetSchema(reply, fields);
+                } catch (ItemsException | SchemaException | Error | RuntimeException e) {
+                    reply.reset();
+                    MetadataProviderProtocol.writeGetSchema(reply, e);
+                }
+            }
+        });
+    }
 
-            } else if (method.equals(MetadataProviderProtocol.METHOD_NOTIFY_TABLES_CLOSE)) {
-                final NotifyTablesCloseData notifyTablesCloseData = MetadataProviderProtocol.readNotifyTablesClose(request.substring(sep + 1));
-                executeAndReply(requestId, new Worker() {
-                    public String doWork() throws RemotingException {
-                        try {
-                            _adapter.notifyTablesClose(notifyTablesCloseData.session, notifyTablesCloseData.tables);
-                            return MetadataProviderProtocol.writeNotifyTablesClose();
-                        } catch (NotificationException | Error | RuntimeException e) {
-                            return MetadataProviderProtocol.writeNotifyTablesClose(e);
-                        }
+    private void processGetItems(String requestId, RequestDecoder request) throws RemotingException {
+        final GetItemsData getItemsData = MetadataProviderProtocol.readGetItems(request);
+        executeAndReply(requestId, request, new Worker() {
+            public void doWork(MessageBuffer reply) throws RemotingException {
+                try {
+                    String [] items = _adapter.getItems(getItemsData.user, getItemsData.session, getItemsData.group);
+                    if (items == null) {
+                        items = new String [0];
                     }
-                });
-
-            } else if (method.equals(MetadataProviderProtocol.METHOD_NOTIFY_MPN_DEVICE_ACCESS)) {
-                final NotifyMpnDeviceAccessData notifyMpnDeviceAccessData = MetadataProviderProtocol.readNotifyMpnDeviceAccess(request.substring(sep + 1));
-                executeAndReply(requestId, new Worker() {
-                    public String doWork() throws RemotingException {
-                        try {
-                            _adapter.notifyMpnDeviceAccess(notifyMpnDeviceAccessData.user, notifyMpnDeviceAccessData.sessionID, notifyMpnDeviceAccessData.device);
-                            return MetadataProviderProtocol.writeNotifyMpnDeviceAccess();
-                        } catch (CreditsException | NotificationException | Error | RuntimeException e) {
-                            return MetadataProviderProtocol.writeNotifyMpnDeviceAccess(e);
-                        }
+                    if (items.length == 0) {
+                        _log.warn("Null or empty item list from getItems for group '" + getItemsData.group + "'");
                     }
-                });
+                    MetadataProviderProtocol.writeGetItems(reply, items);
+                } catch (ItemsException | Error | RuntimeException e) {
+                    reply.reset();
+                    MetadataProviderProtocol.writeGetItems(reply, e);
+                }
+            }
+        });
+    }
 
-            } else if (method.equals(MetadataProviderProtocol.METHOD_NOTIFY_MPN_SUBSCRIPTION_ACTIVATION)) {
-                final NotifyMpnSubscriptionActivationData notifyMpnSubscriptionActivationData = MetadataProviderProtocol.readNotifyMpnSubscriptionActivation(request.substring(sep + 1));
-                executeAndReply(requestId, new Worker() {
-                    public String doWork() throws RemotingException {
-                        try {
-                            _adapter.notifyMpnSubscriptionActivation(notifyMpnSubscriptionActivationData.user, notifyMpnSubscriptionActivationData.sessionID, notifyMpnSubscriptionActivationData.table, notifyMpnSubscriptionActivationData.mpnSubscription);
-                            return MetadataProviderProtocol.writeNotifyMpnSubscriptionActivation();
-                        } catch (CreditsException | NotificationException | Error | RuntimeException e) {
-                            return MetadataProviderProtocol.writeNotifyMpnSubscriptionActivation(e);
+    private void processGetUserItemData(String requestId, RequestDecoder request) throws RemotingException {
+        final GetUserItemData getUserItemData = MetadataProviderProtocol.readGetUserItemData(request);
+        executeAndReply(requestId, request, new Worker() {
+            public void doWork(MessageBuffer reply) throws RemotingException {
+                try {
+                    UserItemData [] userItemDatas = new UserItemData[getUserItemData.items.length];
+                    for (int i = 0; i < getUserItemData.items.length; i++) {
+                        List<Mode> modeList = new ArrayList<Mode>(4);
+                        if (_adapter.isModeAllowed(getUserItemData.user, getUserItemData.items[i], Mode.RAW)) {
+                            modeList.add(Mode.RAW);
+                        }
+                        if (_adapter.isModeAllowed(getUserItemData.user, getUserItemData.items[i], Mode.MERGE)) {
+                            modeList.add(Mode.MERGE);
                         }
+                        if (_adapter.isModeAllowed(getUserItemData.user, getUserItemData.items[i], Mode.DISTINCT)) {
+                            modeList.add(Mode.DISTINCT);
+                        }
+                        if (_adapter.isModeAllowed(getUserItemData.user, getUserItemData.items[i], Mode.COMMAND)) {
+                            modeList.add(Mode.COMMAND);
+                        }
+                        
+                        Mode [] modes = modeList.toArray(new Mode [modeList.size()]);
+                     
+                        userItemDatas[i] = new UserItemData();
+                        userItemDatas[i].allowedModes = modes;
+                        userItemDatas[i].allowedMaxItemFrequency = _adapter.getAllowedMaxItemFrequency(getUserItemData.user, getUserItemData.items[i]);
+                        userItemDatas[i].allowedBufferSize = _adapter.getAllowedBufferSize(getUserItemData.user, getUserItemData.items[i]);
                     }
-                });
+                    MetadataProviderProtocol.writeGetUserItemData(reply, userItemDatas);
+                } catch (Error | RuntimeException e) {
+                    reply.reset();
+                    MetadataProviderProtocol.writeGetUserItemData(reply, e);
+                }
+            }
+        });
+    }
 
-            } else if (method.equals(MetadataProviderProtocol.METHOD_NOTIFY_MPN_DEVICE_TOKEN_CHANGE)) {
-                final NotifyMpnDeviceTokenChangeData notifyMpnDeviceTokenChangeData = MetadataProviderProtocol.readNotifyMpnDeviceTokenChange(request.substring(sep + 1));
-                executeAndReply(requestId, new Worker() {
-                    public String doWork() throws RemotingException {
-                        try {
-                            _adapter.notifyMpnDeviceTokenChange(notifyMpnDeviceTokenChangeData.user, notifyMpnDeviceTokenChangeData.sessionID, notifyMpnDeviceTokenChangeData.device, notifyMpnDeviceTokenChangeData.newDeviceToken);
-                            return MetadataProviderProtocol.writeNotifyMpnDeviceTokenChange();
-                        } catch (CreditsException | NotificationException | Error | RuntimeException e) {
-                            return MetadataProviderProtocol.writeNotifyMpnDeviceTokenChange(e);
-                        }
+    private void processNotifyUserMessage(String requestId, RequestDecoder request) throws RemotingException {
+        final NotifyUserMessageData notifyUserMessageData = MetadataProviderProtocol.readNotifyUserMessage(request);
+        executeAndReply(requestId, request, new Worker() {
+            public void doWork(MessageBuffer reply) throws RemotingException {
+                try {
+                    _adapter.notifyUserMessage(notifyUserMessageData.user, notifyUserMessageData.session, notifyUserMessageData.message);
+                    MetadataProviderProtocol.writeNotifyUserMessage(reply);
+                } catch (CreditsException | NotificationException | Error | RuntimeException e) {
+                    reply.reset();
+                    MetadataProviderProtocol.writeNotifyUserMessage(reply, e);
+                }
+            }
+        });
+    }
+
+    private void processNotifyNewSession(String requestId, RequestDecoder request) throws RemotingException {
+        final NotifyNewSessionData notifyNewSessionData = MetadataProviderProtocol.readNotifyNewSession(request);
+        executeAndReply(requestId, request, new Worker() {
+            public void doWork(MessageBuffer reply) throws RemotingException {
+                try {
+                    _adapter.notifyNewSession(notifyNewSessionData.user, notifyNewSessionData.session, notifyNewSessionData.clientContext);
+                    SessionData sessionData = new SessionData();
+                    sessionData.timeToLiveSeconds = _adapter.getSessionTimeToLive(notifyNewSessionData.user, notifyNewSessionData.session);
+                    MetadataProviderProtocol.writeNotifyNewSession(reply, sessionData);
+                } catch (CreditsException | NotificationException | Error | RuntimeException e) {
+                    reply.reset();
+                    MetadataProviderProtocol.writeNotifyNewSession(reply, e);
+                }
+            }
+        });
+    }
+
+    private void processNotifySessionClose(String requestId, RequestDecoder request) throws RemotingException {
+        final String session = MetadataProviderProtocol.readNotifySessionClose(request);
+        executeAndReply(requestId, request, new Worker() {
+            public void doWork(MessageBuffer reply) throws RemotingException {
+                try {
+                    _adapter.notifySessionClose(session);
+                    MetadataProviderProtocol.writeNotifySessionClose(reply);
+                } catch (NotificationException | Error | RuntimeException e) {
+                    reply.reset();
+                    MetadataProviderProtocol.writeNotifySessionClose(reply, e);
+                }
+            }
+        });
+    }
+
+    private void processNotifyNewTables(String requestId, RequestDecoder request) throws RemotingException {
+        final NotifyNewTablesData notifyNewTablesData = MetadataProviderProtocol.readNotifyNewTables(request);
+        executeAndReply(requestId, request, new Worker() {
+            public void doWork(MessageBuffer reply) throws RemotingException {
+                try {
+                    _adapter.notifyNewTables(notifyNewTablesData.user, notifyNewTablesData.session, notifyNewTablesData.tables);
+                    TableData tableData = new TableData();
+                    if (notifyNewTablesData.tables.length == 1) {
+                        tableData.enableUnsubscription = _adapter.enableTableUnsubscription(notifyNewTablesData.session, notifyNewTablesData.tables);
+                    } else {
+                        tableData.enableUnsubscription = false; // no point asking, as the Server would refuse anyway
                     }
-                });
+                    tableData.wantsFinalStatistics = _adapter.wantsFinalTableStatistics(notifyNewTablesData.session, notifyNewTablesData.tables);
+                    MetadataProviderProtocol.writeNotifyNewTables(reply, tableData);
+                } catch (NotificationException | CreditsException | Error | RuntimeException e) {
+                    reply.reset();
+                    MetadataProviderProtocol.writeNotifyNewTables(reply, e);
+                }
+            }
+        });
+    }
 
-            } else if (method.equals(MetadataProviderProtocol.METHOD_FORCE_SESSION_TERMINATION)) {
-                Callable<Void> outcome = MetadataProviderProtocol.readForceSessionTermination(request.substring(sep + 1));
+    private void processNotifyTablesClose(String requestId, RequestDecoder request) throws RemotingException {
+        final NotifyTablesCloseData notifyTablesCloseData = MetadataProviderProtocol.readNotifyTablesClose(request);
+        executeAndReply(requestId, request, new Worker() {
+            public void doWork(MessageBuffer reply) throws RemotingException {
                 try {
-                    outcome.call();
-                    myMetadataControlHelper.onResponse(requestId, null);
-                } catch (Exception e) {
-                    myMetadataControlHelper.onErrorResponse(requestId, e);
+                    _adapter.notifyTablesClose(notifyTablesCloseData.session, notifyTablesCloseData.tables);
+                    MetadataProviderProtocol.writeNotifyTablesClose(reply);
+                } catch (NotificationException | Error | RuntimeException e) {
+                    reply.reset();
+                    MetadataProviderProtocol.writeNotifyTablesClose(reply, e);
                 }
+            }
+        });
+    }
 
-            } else if (method.equals(MetadataProviderProtocol.METHOD_FORCE_UNSUBSCRIPTION)) {
-                Callable<Boolean> outcome = MetadataProviderProtocol.readForceUnsubscription(request.substring(sep + 1));
+    private void processNotifyMpnDeviceAccess(String requestId, RequestDecoder request) throws RemotingException {
+        final NotifyMpnDeviceAccessData notifyMpnDeviceAccessData = MetadataProviderProtocol.readNotifyMpnDeviceAccess(request);
+        executeAndReply(requestId, request, new Worker() {
+            public void doWork(MessageBuffer reply) throws RemotingException {
                 try {
-                    Boolean done = outcome.call();
-                    myMetadataControlHelper.onResponse(requestId, done);
-                } catch (Exception e) {
-                    myMetadataControlHelper.onErrorResponse(requestId, e);
+                    _adapter.notifyMpnDeviceAccess(notifyMpnDeviceAccessData.user, notifyMpnDeviceAccessData.sessionID, notifyMpnDeviceAccessData.device);
+                    MetadataProviderProtocol.writeNotifyMpnDeviceAccess(reply);
+                } catch (CreditsException | NotificationException | Error | RuntimeException e) {
+                    reply.reset();
+                    MetadataProviderProtocol.writeNotifyMpnDeviceAccess(reply, e);
                 }
+            }
+        });
+    }
 
-            } else {
-                _log.warn("Discarding unknown request: " + request);
+    private void processNotifyMpnSubscriptionActivation(String requestId, RequestDecoder request) throws RemotingException {
+        final NotifyMpnSubscriptionActivationData notifyMpnSubscriptionActivationData = MetadataProviderProtocol.readNotifyMpnSubscriptionActivation(request);
+        executeAndReply(requestId, request, new Worker() {
+            public void doWork(MessageBuffer reply) throws RemotingException {
+                try {
+                    _adapter.notifyMpnSubscriptionActivation(notifyMpnSubscriptionActivationData.user, notifyMpnSubscriptionActivationData.sessionID, notifyMpnSubscriptionActivationData.table, notifyMpnSubscriptionActivationData.mpnSubscription);
+                    MetadataProviderProtocol.writeNotifyMpnSubscriptionActivation(reply);
+                } catch (CreditsException | NotificationException | Error | RuntimeException e) {
+                    reply.reset();
+                    MetadataProviderProtocol.writeNotifyMpnSubscriptionActivation(reply, e);
+                }
             }
+        });
+    }
 
-        } catch (RemotingException e) {
-            onException(e);
+    private void processNotifyMpnDeviceTokenChange(String requestId, RequestDecoder request) throws RemotingException {
+        final NotifyMpnDeviceTokenChangeData notifyMpnDeviceTokenChangeData = MetadataProviderProtocol.readNotifyMpnDeviceTokenChange(request);
+        executeAndReply(requestId, request, new Worker() {
+            public void doWork(MessageBuffer reply) throws RemotingException {
+                try {
+                    _adapter.notifyMpnDeviceTokenChange(notifyMpnDeviceTokenChangeData.user, notifyMpnDeviceTokenChangeData.sessionID, notifyMpnDeviceTokenChangeData.device, notifyMpnDeviceTokenChangeData.newDeviceToken);
+                    MetadataProviderProtocol.writeNotifyMpnDeviceTokenChange(reply);
+                } catch (CreditsException | NotificationException | Error | RuntimeException e) {
+                    reply.reset();
+                    MetadataProviderProtocol.writeNotifyMpnDeviceTokenChange(reply, e);
+                }
+            }
+        });
+    }
+
+    private void processForceSessionTermination(String requestId, RequestDecoder request) throws RemotingException {
+        Callable<Void> outcome = MetadataProviderProtocol.readForceSessionTermination(request);
+        try {
+            outcome.call();
+            myMetadataControlHelper.onResponse(requestId, null);
+        } catch (Exception e) {
+            myMetadataControlHelper.onErrorResponse(requestId, e);
+        }
+    }
+
+    private void processForceUnsubscription(String requestId, RequestDecoder request) throws RemotingException {
+        Callable<Boolean> outcome = MetadataProviderProtocol.readForceUnsubscription(request);
+        try {
+            Boolean done = outcome.call();
+            myMetadataControlHelper.onResponse(requestId, done);
+        } catch (Exception e) {
+            myMetadataControlHelper.onErrorResponse(requestId, e);
         }
     }
     
     private interface Worker {
-        String doWork() throws RemotingException;
+        /**
+         * Invokes the Metadata Adapter and writes the reply in the supplied buffer.
+         */
+        void doWork(MessageBuffer reply) throws RemotingException;
     }
     
-    private void executeAndReply(final String requestId, final Worker task) {
-        _executor.submit(new Runnable() {
-            public void run() {
-                try {
-                    _log.debug("Processing request: " + requestId);
-                    String reply = task.doWork();
-                    sendReply(requestId, reply);
-                } catch (RemotingException e) {
-                    onException(e);
-                }
+    /**
+     * Wraps a handler, if configured, so that the decoding of the request
+     * also takes place in the thread pool, rather than in the request reader
+     * thread. The requests are submitted in the same order, hence a sequential
+     * pool still processes them in the order of arrival.
+     */
+    private RequestHandler pipelined(final RequestHandler handler) {
+        if (! _decodeInPool) {
+            return handler;
+        }
+        return new RequestHandler() {
+            public void handle(final String requestId, RequestDecoder request) {
+                // the request buffer is going to be reused by the reader
+                final RequestDecoder detached = request.detach();
+                _executor.submit(new Runnable() {
+                    public void run() {
+                        try {
+                            handler.handle(requestId, detached);
+                        } catch (RemotingException e) {
+                            onException(e);
+                        }
+                    }
+                });
             }
-        });
+        };
+    }
+
+    private void executeAndReply(final String requestId, RequestDecoder request, final Worker task) {
+        if (request.isDetached()) {
+            // we are already running in the thread pool
+            doWorkAndReply(requestId, task);
+        } else {
+            _executor.submit(new Runnable() {
+                public void run() {
+                    doWorkAndReply(requestId, task);
+                }
+            });
+        }
+    }
+
+    private void doWorkAndReply(String requestId, Worker task) {
+        // a pooled buffer, as the Metadata Adapter may send notifications
+        // from this thread, by composing them in turn
+        MessageBuffer reply = MessageBuffer.acquire();
+        try {
+            _log.debug("Processing request: " + requestId);
+            task.doWork(reply);
+            sendReply(requestId, reply);
+        } catch (RemotingException e) {
+            onException(e);
+        } finally {
+            MessageBuffer.release(reply);
+        }
     }
     
     private void sendReply(String requestId, String reply) {
@@ -549,6 +650,16 @@ class MetadataProviderServerImpl extends ServerImpl {
             currRequestManager.sendReply(requestId, reply, _log);
         }
     }
+
+    private void sendReply(String requestId, MessageBuffer reply) {
+        RequestManager currRequestManager;
+        synchronized (this) {
+            currRequestManager = _requestManager;
+        }
+        if (currRequestManager != null) {
+            currRequestManager.sendReply(requestId, reply, _log);
+        }
+    }
     
     private void sendRemoteRequest(String requestId, String reply) {
         RequestManager currRequestManager;
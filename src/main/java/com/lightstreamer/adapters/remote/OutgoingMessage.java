@@ -0,0 +1,82 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *  
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An element of the queue of a MessageSender, carrying one or more
+ * complete lines, already encoded and terminated.
+ */
+class OutgoingMessage {
+
+    private final byte[] _lines;
+    private final boolean _droppable;
+
+    // only used for the statistics; set before the message is published
+    // to the writer thread, hence also visible to it
+    private long _enqueueNanos;
+
+    public OutgoingMessage(byte[] lines, boolean droppable) {
+        _lines = lines;
+        _droppable = droppable;
+    }
+
+    /**
+     * For subclasses that compose their lines only when they are written.
+     */
+    protected OutgoingMessage(boolean droppable) {
+        _lines = null;
+        _droppable = droppable;
+    }
+
+    /**
+     * Tells whether the message, in case of congestion, can be discarded
+     * without compromising the consistency of the stream;
+     * this only holds for real-time updates.
+     */
+    public final boolean isDroppable() {
+        return _droppable;
+    }
+
+    final void setEnqueueNanos(long nanos) {
+        _enqueueNanos = nanos;
+    }
+
+    final long getEnqueueNanos() {
+        return _enqueueNanos;
+    }
+
+    public int size() {
+        return _lines.length;
+    }
+
+    public void writeTo(MessageBuffer out) {
+        out.append(_lines);
+    }
+
+    /**
+     * Invoked when the message is removed from the queue
+     * without being written, because of the overflow policy.
+     */
+    public void onDiscarded() {
+    }
+
+    @Override
+    public String toString() {
+        // the line terminator is omitted
+        return new String(_lines, 0, Math.max(_lines.length - 2, 0), StandardCharsets.UTF_8);
+    }
+
+}
@@ -14,8 +14,8 @@
 package com.lightstreamer.adapters.remote;
 
 import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 abstract class RemotingProtocol {
@@ -60,16 +60,58 @@ abstract class RemotingProtocol {
     protected static String decodeStringOld(String string) throws RemotingException {
         if (string.equals(VALUE_NULL)) return null;
         if (string.equals(VALUE_EMPTY)) return "";
-        
-        try {
-            return URLDecoder.decode(string, "UTF-8");
 
-        } catch (UnsupportedEncodingException e) {
-            assert (false);
-            throw new RemotingException("Unexpected error while url-decoding string", e);
-        } catch (RuntimeException e) {
-            throw new RemotingException("Unknown error while url-decoding string", e);
+        // we decode as URLDecoder.decode would do, but in a single pass
+        // and with no allocations, unless something has to be decoded
+        int len = string.length();
+        int i = 0;
+        while (i < len) {
+            char c = string.charAt(i);
+            if (c == '%' || c == '+') {
+                break;
+            }
+            i++;
         }
+        if (i == len) {
+            return string;
+        }
+
+        // the decoded bytes are never more than the UTF-8 form,
+        // hence they can be decoded in place
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        int decodedLen = decodePercent(bytes, 0, bytes.length, bytes, 0);
+        return new String(bytes, 0, decodedLen, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes the percent-encoded sequences of a UTF-8 byte sequence,
+     * with '+' standing for a space, as URLDecoder does. The output can
+     * overlap the input, provided that it doesn't start after it.
+     * 
+     * @return the end of the decoded bytes in the output.
+     */
+    static int decodePercent(byte[] src, int start, int end, byte[] dst, int dstStart) throws RemotingException {
+        int j = dstStart;
+        for (int i = start; i < end; i++) {
+            byte b = src[i];
+            if (b == '%') {
+                if (i + 2 >= end) {
+                    throw new RemotingException("Incomplete percent-encoded sequence found while url-decoding string");
+                }
+                int hi = Character.digit(src[i + 1], 16);
+                int lo = Character.digit(src[i + 2], 16);
+                if (hi < 0 || lo < 0) {
+                    throw new RemotingException("Invalid percent-encoded sequence found while url-decoding string");
+                }
+                dst[j++] = (byte) ((hi << 4) | lo);
+                i += 2;
+            } else if (b == '+') {
+                dst[j++] = ' ';
+            } else {
+                dst[j++] = b;
+            }
+        }
+        return j;
     }
 
 
@@ -122,57 +164,230 @@ abstract class RemotingProtocol {
         }
     }
 
-    protected static String encodeString(String str) throws RemotingException {
-        if (str == null) return VALUE_NULL;
-        if (str.length() == 0) return VALUE_EMPTY;
+    // lookup table for isSpecial, as far as ascii characters are concerned;
+    // all the other characters are never special
+    private static final boolean[] special = new boolean[128];
 
+    static {
+        for (int i = 0; i < 128; i++) {
+            special[i] = isSpecial(i);
+        }
+    }
+
+    private static final boolean needsQuoting(char c, int len) {
         // NOTE: the reserved characters (CHAR_NULL and CHAR_EMPTY)
         // have to be percent-encoded only in strings of length 1
+        return c < 128 && (special[c] || (len == 1 && isReserved(c)));
+    }
+
+    /**
+     * Returns the index of the first character to be percent-encoded,
+     * or the string length if the string can be sent as is.
+     */
+    private static final int indexOfSpecial(String str, int from) {
+        int len = str.length();
+        for (int i = from; i < len; i++) {
+            char c = str.charAt(i);
+            if (c < 128 && special[c]) {
+                return i;
+            }
+        }
+        return len;
+    }
+
+    protected static String encodeString(String str) throws RemotingException {
+        if (str == null) return VALUE_NULL;
+        int len = str.length();
+        if (len == 0) return VALUE_EMPTY;
+
+        try {
+            if (len == 1 && needsQuoting(str.charAt(0), 1)) {
+                StringBuilder sb = new StringBuilder(3);
+                appendPercentEncoded(sb, str.charAt(0));
+                return sb.toString();
+            }
+            int first = indexOfSpecial(str, 0);
+            if (first == len) {
+                // the common case: nothing to quote, no allocations
+                return str;
+            }
+            StringBuilder sb = new StringBuilder(len + 8);
+            appendEncoded(sb, str, first);
+            return sb.toString();
+        } catch (RuntimeException e) {
+            throw new RemotingException("Unknown error while percent-encoding string", e);
+        }
+    }
+
+    protected static void encodeString(StringBuilder sb, String str) throws RemotingException {
+        if (str == null) {
+            sb.append(VALUE_NULL);
+            return;
+        }
+        int len = str.length();
+        if (len == 0) {
+            sb.append(VALUE_EMPTY);
+            return;
+        }
+
+        // the same rules as for encodeString(String) apply,
+        // but the result is written directly in the destination
+        try {
+            if (len == 1 && needsQuoting(str.charAt(0), 1)) {
+                appendPercentEncoded(sb, str.charAt(0));
+            } else {
+                appendEncoded(sb, str, indexOfSpecial(str, 0));
+            }
+        } catch (RuntimeException e) {
+            throw new RemotingException("Unknown error while percent-encoding string", e);
+        }
+    }
+
+    private static void appendEncoded(StringBuilder sb, String str, int first) {
+        // the unquoted stretches are copied in bulk
+        int len = str.length();
+        int i = 0;
+        int next = first;
+        while (next < len) {
+            sb.append(str, i, next);
+            appendPercentEncoded(sb, str.charAt(next));
+            i = next + 1;
+            next = indexOfSpecial(str, i);
+        }
+        sb.append(str, i, len);
+    }
+
+    private static void appendPercentEncoded(StringBuilder sb, char c) {
+        assert((c & 0x7F) == c);
+        // UTF-8 percent encoding applied only to ascii characters;
+        // the result is ascii, hence compatible with java.lang.String's UTF-16
+        sb.append('%');
+        sb.append((char) hex[(c >> 4) & 0xF]);
+        sb.append((char) hex[c & 0xF]);
+    }
+    
+    protected static void encodeString(MessageBuffer out, String str) throws RemotingException {
+        if (str == null) {
+            out.append(VALUE_NULL);
+            return;
+        }
+        int len = str.length();
+        if (len == 0) {
+            out.append(VALUE_EMPTY);
+            return;
+        }
 
+        // the same rules as for encodeString(String) apply,
+        // but the result is written directly in UTF-8 format
         try {
-            int specials = 0;
-            int len = str.length();
-            // preliminary step to determine how much to allocate
-            for (int i = 0; i < len; i++) {
+            if (len == 1 && needsQuoting(str.charAt(0), 1)) {
+                out.appendPercentEncoded(str.charAt(0), hex);
+                return;
+            }
+            int i = 0;
+            while (true) {
+                // the plain ascii stretches, usually the whole string,
+                // are copied in a tight loop
+                i = out.appendAscii(str, i, special);
+                if (i == len) {
+                    break;
+                }
                 char c = str.charAt(i);
-                if (isSpecial(c) || (len == 1 && i == 0 && isReserved(c))) {
-                    specials++;
+                if (c < 128) {
+                    out.appendPercentEncoded(c, hex);
+                } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1))) {
+                    out.appendCodePoint(Character.toCodePoint(c, str.charAt(i + 1)));
+                    i++;
+                } else {
+                    out.appendUtf8(c);
                 }
+                i++;
             }
+        } catch (RuntimeException e) {
+            throw new RemotingException("Unknown error while percent-encoding string", e);
+        }
+    }
+    
+    /**
+     * Encodes a string supplied in UTF-8 form, in the supplied range;
+     * the same rules as for encodeString(String) apply, but the bytes
+     * are copied as they are, as all non-ascii UTF-8 bytes are never special.
+     */
+    protected static void encodeUtf8(MessageBuffer out, byte[] bytes, int offset, int length) throws RemotingException {
+        if (bytes == null) {
+            out.append(VALUE_NULL);
+            return;
+        }
+        if (length == 0) {
+            out.append(VALUE_EMPTY);
+            return;
+        }
 
-            if (specials > 0) {
-                int quotedLength = len + specials * 2;
-                char[] quoted = new char[quotedLength];
-                int j = 0;
-
-                for (int i = 0; i < len; i++) {
-                    char c = str.charAt(i);
-                    if (isSpecial(c) || (len == 1 && i == 0 && isReserved(c))) {
-                        assert((c & 0x7F) == c);
-                        // UTF-8 percent encoding applied only to ascii characters;
-                        // the result is ascii, hence compatible with java.lang.String's UTF-16
-                        quoted[j++] = '%';
-                        quoted[j++] = (char) (hex[(c >> 4) & 0xF]);
-                        quoted[j++] = (char) (hex[c & 0xF]);
-                    } else {
-                        // still UTF-16
-                        quoted[j++] = c;
-                    }
+        try {
+            if (length == 1 && needsQuoting((char) (bytes[offset] & 0xFF), 1)) {
+                out.appendPercentEncoded(bytes[offset], hex);
+                return;
+            }
+            int end = offset + length;
+            int i = offset;
+            while (true) {
+                i = out.appendBytes(bytes, i, end, special);
+                if (i == end) {
+                    break;
                 }
-                assert(j == quotedLength);
-                return new String(quoted);
-            } else {
-                return str;
+                out.appendPercentEncoded(bytes[i], hex);
+                i++;
             }
         } catch (RuntimeException e) {
             throw new RemotingException("Unknown error while percent-encoding string", e);
         }
     }
-    
+
+    /**
+     * Encodes a string supplied in UTF-8 form, as the remaining bytes
+     * of a buffer, whose position is not affected.
+     */
+    protected static void encodeUtf8(MessageBuffer out, ByteBuffer buffer) throws RemotingException {
+        if (buffer == null) {
+            out.append(VALUE_NULL);
+            return;
+        }
+        if (buffer.hasArray()) {
+            encodeUtf8(out, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+        int length = buffer.remaining();
+        if (length == 0) {
+            out.append(VALUE_EMPTY);
+            return;
+        }
+
+        // a direct buffer, to be read through absolute accesses
+        try {
+            int start = buffer.position();
+            if (length == 1 && needsQuoting((char) (buffer.get(start) & 0xFF), 1)) {
+                out.appendPercentEncoded(buffer.get(start), hex);
+                return;
+            }
+            int end = start + length;
+            int i = start;
+            while (true) {
+                i = out.appendBytes(buffer, i, end, special);
+                if (i == end) {
+                    break;
+                }
+                out.appendPercentEncoded(buffer.get(i), hex);
+                i++;
+            }
+        } catch (RuntimeException e) {
+            throw new RemotingException("Unknown error while percent-encoding string", e);
+        }
+    }
+
     protected static String decodeString(String str) throws RemotingException {
         // since the new encoding specifications suppress the '+' character
         // and since the URLDecode algorithm supports unencoded characters,
-        // we can use the URLDecoder also with the new encoding;
+        // we can use the same decoding also with the new encoding;
         // we rely on the Proxy Adapter to obey the protocol, so we don't check
         // that indeed str doesn't contain the '+' character
         return decodeStringOld(str);
@@ -182,11 +397,26 @@ abstract class RemotingProtocol {
 
     // byte array based encoding/decoding method, no longer needed
 
-    protected static String encodeBytesAsString(byte[] bytes) throws RemotingException {
-        if (bytes == null) return VALUE_NULL;
-        if (bytes.length == 0) return VALUE_EMPTY;
+    protected static void encodeBytesAsString(MessageBuffer out, byte[] bytes) throws RemotingException {
+        if (bytes == null) {
+            out.append(VALUE_NULL);
+            return;
+        }
+        if (bytes.length == 0) {
+            out.append(VALUE_EMPTY);
+            return;
+        }
 
-        String equivalentStr = new String(bytes, StandardCharsets.ISO_8859_1);
-        return encodeString(equivalentStr);
+        // each byte stands for the ISO-8859-1 character with the same code,
+        // as though the array were converted to a String first
+        int len = bytes.length;
+        for (int i = 0; i < len; i++) {
+            char c = (char) (bytes[i] & 0xFF);
+            if (needsQuoting(c, len)) {
+                out.appendPercentEncoded(c, hex);
+            } else {
+                out.appendUtf8(c);
+            }
+        }
     }
 }
@@ -0,0 +1,312 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cursor over the arguments of a request, still in encoded form, which
+ * decodes the typed fields in a single pass. The arguments are a sequence
+ * of type and value tokens separated by {@link RemotingProtocol#SEP};
+ * the typed read methods consume both tokens, whereas
+ * {@link #readType()} and {@link #readValue()} allow for handling
+ * the cases in which the type is not fixed. <BR>
+ * The instance is reused for all the requests received on a stream,
+ * hence it is only valid during the processing of the request,
+ * unless {@link #detach()} is used.
+ */
+class RequestDecoder {
+
+    private byte[] _buffer;
+    private int _methodOffset;
+    private int _methodLength;
+    private String _method; // only created when needed
+    private int _start;
+    private int _end;
+    private boolean _detached;
+    private int _pos;
+
+    // bounds of the last token read
+    private int _tokenStart;
+    private int _tokenEnd;
+
+    // reused for percent-decoding the string values
+    private byte[] _scratch = new byte[256];
+
+    public final RequestDecoder reset(byte[] buffer, int methodOffset, int methodLength, int offset, int length) {
+        _buffer = buffer;
+        _methodOffset = methodOffset;
+        _methodLength = methodLength;
+        _method = null;
+        _start = offset;
+        _pos = offset;
+        _end = offset + length;
+        _tokenStart = offset;
+        _tokenEnd = offset;
+        return this;
+    }
+
+    /**
+     * Returns a new instance over a private copy of the request, not yet
+     * consumed, which can be decoded after the receiving of further requests.
+     */
+    public final RequestDecoder detach() {
+        byte[] copy = new byte[_end - _methodOffset];
+        System.arraycopy(_buffer, _methodOffset, copy, 0, copy.length);
+        RequestDecoder detached = new RequestDecoder();
+        detached.reset(copy, 0, _methodLength, _start - _methodOffset, _end - _start);
+        detached._detached = true;
+        return detached;
+    }
+
+    public final boolean isDetached() {
+        return _detached;
+    }
+
+    public final String getMethod() {
+        if (_method == null) {
+            // method names are in ASCII
+            _method = new String(_buffer, _methodOffset, _methodLength, StandardCharsets.ISO_8859_1);
+        }
+        return _method;
+    }
+
+    public final boolean isMethod(String method) {
+        if (method.length() != _methodLength) {
+            return false;
+        }
+        for (int i = 0; i < _methodLength; i++) {
+            if (_buffer[_methodOffset + i] != method.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the index of the method name in a {@link RequestDispatcher}.
+     */
+    public final int getMethodCode() {
+        return RequestDispatcher.getMethodCode(_buffer, _methodOffset, _methodLength);
+    }
+
+    public final boolean hasMore() {
+        return _pos < _end;
+    }
+
+    private void nextToken() throws RemotingException {
+        if (_pos >= _end) {
+            throw new RemotingException("Token not found while parsing a " + getMethod() + " request");
+        }
+        int i = _pos;
+        while (i < _end && _buffer[i] != RemotingProtocol.SEP) {
+            i++;
+        }
+        _tokenStart = _pos;
+        _tokenEnd = i;
+        _pos = (i < _end ? i + 1 : i);
+    }
+
+    private String lastToken() {
+        return new String(_buffer, _tokenStart, _tokenEnd - _tokenStart, StandardCharsets.UTF_8);
+    }
+
+    private boolean isLastToken(char c) {
+        return _tokenEnd - _tokenStart == 1 && _buffer[_tokenStart] == c;
+    }
+
+    /**
+     * Reads a type token and returns its type character;
+     * any subtype characters are ignored.
+     */
+    public final char readType() throws RemotingException {
+        nextToken();
+        if (_tokenEnd == _tokenStart) {
+            return 0;
+        }
+        return (char) (_buffer[_tokenStart] & 0xFF);
+    }
+
+    private void expectType(char type) throws RemotingException {
+        if (readType() != type) {
+            throw new RemotingException("Unknown type '" + lastToken() + "' found while parsing a " + getMethod() + " request");
+        }
+    }
+
+    /**
+     * Reads a value token of string type, after its type token
+     * has been consumed through {@link #readType()}.
+     */
+    public final String readValue() throws RemotingException {
+        nextToken();
+        if (isLastToken(RemotingProtocol.CHAR_NULL)) {
+            return null;
+        } else if (isLastToken(RemotingProtocol.CHAR_EMPTY)) {
+            return "";
+        }
+        boolean encoded = false;
+        boolean nonAscii = false;
+        for (int i = _tokenStart; i < _tokenEnd; i++) {
+            byte b = _buffer[i];
+            if (b == '%' || b == '+') {
+                encoded = true;
+            } else if (b < 0) {
+                nonAscii = true;
+            }
+        }
+        if (! encoded) {
+            // the common case, only the resulting string is allocated
+            return new String(_buffer, _tokenStart, _tokenEnd - _tokenStart, StandardCharsets.UTF_8);
+        } else if (nonAscii) {
+            // if the unencoded part were not valid UTF-8, decoding it together
+            // with the percent-encoded part could lead to a different result
+            return RemotingProtocol.decodeString(lastToken());
+        }
+        int len = _tokenEnd - _tokenStart;
+        if (_scratch.length < len) {
+            _scratch = new byte[Math.max(len, _scratch.length * 2)];
+        }
+        int decodedLen = RemotingProtocol.decodePercent(_buffer, _tokenStart, _tokenEnd, _scratch, 0);
+        return new String(_scratch, 0, decodedLen, StandardCharsets.UTF_8);
+    }
+
+    public final String readString() throws RemotingException {
+        expectType(RemotingProtocol.TYPE_STRING);
+        return readValue();
+    }
+
+    public final int readInt() throws RemotingException {
+        expectType(RemotingProtocol.TYPE_INT);
+        nextToken();
+        long value = parseLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw newInvalidValue();
+        }
+        return (int) value;
+    }
+
+    public final long readLong() throws RemotingException {
+        expectType(RemotingProtocol.TYPE_LONG);
+        nextToken();
+        return parseLong();
+    }
+
+    private long parseLong() throws RemotingException {
+        int i = _tokenStart;
+        boolean negative = false;
+        if (i < _tokenEnd && _buffer[i] == '-') {
+            negative = true;
+            i++;
+        }
+        if (i == _tokenEnd || _tokenEnd - i > 19) {
+            throw newInvalidValue();
+        }
+        long value = 0;
+        for (; i < _tokenEnd; i++) {
+            int digit = _buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw newInvalidValue();
+            }
+            // accumulating negatively also covers Long.MIN_VALUE
+            value = value * 10 - digit;
+            if (value > 0) {
+                throw newInvalidValue();
+            }
+        }
+        if (! negative) {
+            if (value == Long.MIN_VALUE) {
+                throw newInvalidValue();
+            }
+            value = -value;
+        }
+        return value;
+    }
+
+    public final double readDouble() throws RemotingException {
+        expectType(RemotingProtocol.TYPE_DOUBLE);
+        nextToken();
+        try {
+            return Double.parseDouble(lastToken());
+        } catch (NumberFormatException e) {
+            throw newInvalidValue();
+        }
+    }
+
+    public final boolean readBoolean() throws RemotingException {
+        expectType(RemotingProtocol.TYPE_BOOLEAN);
+        nextToken();
+        return ! isLastToken(RemotingProtocol.VALUE_FALSE.charAt(0));
+    }
+
+    /**
+     * Reads a field of modes type and returns the first mode,
+     * which is the only one expected in requests.
+     */
+    public final Mode readMode() throws RemotingException {
+        expectType(MetadataProviderProtocol.TYPE_MODES);
+        nextToken();
+        if (isLastToken(RemotingProtocol.CHAR_NULL) || isLastToken(RemotingProtocol.CHAR_EMPTY)) {
+            return null;
+        }
+        Mode first = null;
+        for (int i = _tokenEnd - 1; i >= _tokenStart; i--) {
+            // all the modes are checked, though only the first one is kept
+            switch (_buffer[i]) {
+                case MetadataProviderProtocol.TYPE_MODE_RAW:
+                    first = Mode.RAW;
+                    break;
+                case MetadataProviderProtocol.TYPE_MODE_MERGE:
+                    first = Mode.MERGE;
+                    break;
+                case MetadataProviderProtocol.TYPE_MODE_DISTINCT:
+                    first = Mode.DISTINCT;
+                    break;
+                case MetadataProviderProtocol.TYPE_MODE_COMMAND:
+                    first = Mode.COMMAND;
+                    break;
+                default:
+                    throw new RemotingException("Unknown mode '" + (char) (_buffer[i] & 0xFF) + "' found while decoding Mode array");
+            }
+        }
+        return first;
+    }
+
+    public final MpnPlatformType readMpnPlatform() throws RemotingException {
+        expectType(MetadataProviderProtocol.TYPE_MPN_PLATFORM);
+        nextToken();
+        if (isLastToken(RemotingProtocol.CHAR_NULL)) {
+            return null;
+        }
+        char encodedPlatformType = (_tokenEnd > _tokenStart ? (char) (_buffer[_tokenStart] & 0xFF) : 0);
+        switch (encodedPlatformType) {
+            case MetadataProviderProtocol.TYPE_MPN_PLATFORM_APPLE:
+                return MpnPlatformType.Apple;
+            case MetadataProviderProtocol.TYPE_MPN_PLATFORM_GOOGLE:
+                return MpnPlatformType.Google;
+            default:
+                throw new RemotingException("Unknown platform type '" + encodedPlatformType + "'");
+        }
+    }
+
+    private RemotingException newInvalidValue() {
+        return new RemotingException("Invalid value '" + lastToken() + "' found while parsing a " + getMethod() + " request");
+    }
+
+    @Override
+    public String toString() {
+        // the whole request, as received, for diagnostic purpose
+        return new String(_buffer, _methodOffset, _end - _methodOffset, StandardCharsets.UTF_8);
+    }
+
+}
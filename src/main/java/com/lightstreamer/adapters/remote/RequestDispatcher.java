@@ -0,0 +1,70 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *  
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Table of the handlers of the requests, indexed by the method name,
+ * which, for all the methods subject to dispatching, is made of three
+ * uppercase letters. This allows for finding the handler directly
+ * from the request bytes, without creating the method name.
+ */
+class RequestDispatcher {
+
+    private static final int LETTERS = 26;
+
+    private final RequestHandler[] _handlers = new RequestHandler[LETTERS * LETTERS * LETTERS];
+
+    /**
+     * Returns the index of a three-letter method name,
+     * or -1 if the name has a different form.
+     */
+    static int getMethodCode(byte[] buffer, int offset, int length) {
+        if (length != 3) {
+            return -1;
+        }
+        int c0 = buffer[offset] - 'A';
+        int c1 = buffer[offset + 1] - 'A';
+        int c2 = buffer[offset + 2] - 'A';
+        if ((c0 | c1 | c2) < 0 || c0 >= LETTERS || c1 >= LETTERS || c2 >= LETTERS) {
+            return -1;
+        }
+        return (c0 * LETTERS + c1) * LETTERS + c2;
+    }
+
+    public final void register(String method, RequestHandler handler) {
+        byte[] name = method.getBytes(StandardCharsets.ISO_8859_1);
+        int code = getMethodCode(name, 0, name.length);
+        if (code < 0) {
+            throw new IllegalArgumentException("Method " + method + " not suitable for dispatching");
+        }
+        if (_handlers[code] != null) {
+            throw new IllegalArgumentException("Method " + method + " already registered");
+        }
+        _handlers[code] = handler;
+    }
+
+    /**
+     * Returns the handler for the method of the request, or null.
+     */
+    public final RequestHandler getHandler(RequestDecoder request) {
+        int code = request.getMethodCode();
+        if (code < 0) {
+            return null;
+        }
+        return _handlers[code];
+    }
+
+}
@@ -15,5 +15,9 @@ package com.lightstreamer.adapters.remote;
 
 interface RequestListener {
 
-    void onRequestReceived(String requestId, String request);
+    /**
+     * Receives a request, whose arguments are supplied through
+     * a decoder, which is only valid during the call.
+     */
+    void onRequestReceived(String requestId, RequestDecoder request);
 }
\ No newline at end of file
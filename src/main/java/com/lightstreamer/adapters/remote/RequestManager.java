@@ -16,8 +16,6 @@ package com.lightstreamer.adapters.remote;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.LineNumberReader;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 
@@ -29,21 +27,36 @@ class RequestManager {
 
     private String _name;
 
-    private LineNumberReader _reader;
+    private RequestReader _reader;
+    private final RequestDecoder _decoder = new RequestDecoder();
 
     private MessageSender _replySender;
+    private boolean _ownsReplySender;
 
     private RequestListener _requestListener;
     private ExceptionListener _exceptionListener;
 
     private volatile boolean _stop;
 
-    public RequestManager(String name, InputStream requestStream, OutputStream replyStream, MessageSender.WriteState sharedWriteState, int keepaliveMillis, RequestListener requestListener, ExceptionListener exceptionListener) {
+    public RequestManager(String name, InputStream requestStream, OutputStream replyStream, int keepaliveMillis, MessageSender.Config senderConfig, RequestListener requestListener, ExceptionListener exceptionListener) {
+        this(name, requestStream, new MessageSender(name, replyStream, true, keepaliveMillis, senderConfig, exceptionListener), true, requestListener, exceptionListener);
+    }
+
+    /**
+     * Creates a request manager which sends the replies through a sender
+     * owned by someone else, which also sends notifications on the same stream.
+     */
+    public RequestManager(String name, InputStream requestStream, MessageSender sharedSender, RequestListener requestListener, ExceptionListener exceptionListener) {
+        this(name, requestStream, sharedSender, false, requestListener, exceptionListener);
+    }
+
+    private RequestManager(String name, InputStream requestStream, MessageSender replySender, boolean ownsReplySender, RequestListener requestListener, ExceptionListener exceptionListener) {
         _name = name;
 
-        _reader = new LineNumberReader(new InputStreamReader(requestStream, StandardCharsets.UTF_8));
+        _reader = new RequestReader(requestStream);
 
-        _replySender = new MessageSender(name, replyStream, sharedWriteState, true, keepaliveMillis, exceptionListener);
+        _replySender = replySender;
+        _ownsReplySender = ownsReplySender;
 
         _requestListener = requestListener;
         _exceptionListener = exceptionListener;
@@ -52,11 +65,15 @@ class RequestManager {
     }
 
     public void changeKeepalive(int keepaliveMillis, boolean alsoInterrupt) {
-        _replySender.changeKeepalive(keepaliveMillis, alsoInterrupt);
+        if (_ownsReplySender) {
+            _replySender.changeKeepalive(keepaliveMillis, alsoInterrupt);
+        }
     }
 
     public final void startOut() {
-        _replySender.startOut();
+        if (_ownsReplySender) {
+            _replySender.startOut();
+        }
     }
 
     public final void startIn() {
@@ -73,13 +90,13 @@ class RequestManager {
 
         while (!_stop) {
             
-            String line = null;
+            boolean found;
             
             try {
-                line = _reader.readLine();
+                found = _reader.readLine();
                 
-                if (_log.isDebugEnabled()) {
-                    _log.debug("Request line: " + line);
+                if (found && _log.isDebugEnabled()) {
+                    _log.debug("Request line: " + _reader);
                 }
                 
             } catch (IOException e) {
@@ -95,12 +112,12 @@ class RequestManager {
                 break;
             }
 
-            if (line == null) {
+            if (! found) {
                 _exceptionListener.onException(new RemotingException("Unexpected end of request stream reached", new EOFException()));
                 break;
             }
 
-            onRequestReceived(line);
+            onRequestReceived(_reader.array(), _reader.lineOffset(), _reader.lineLength());
 
         } 
 
@@ -110,54 +127,63 @@ class RequestManager {
     public final void quit() {
         _stop = true;
 
-        _replySender.quit();
+        if (_ownsReplySender) {
+            _replySender.quit();
+        }
     }
 
     public final void sendReply(String requestId, String reply, Logger properLogger) {
-        StringBuilder identifiedReply = new StringBuilder();
-        identifiedReply.append(requestId);
-        identifiedReply.append(RemotingProtocol.SEP);
-        identifiedReply.append(reply);
+        // the request id is prepended while encoding
+        properLogger.debug("Processed request: " + requestId);
 
-        reply = identifiedReply.toString();
+        _replySender.sendMessage(requestId, reply);
+    }
+
+    /**
+     * As {@link #sendReply(String, String, Logger)}, but with the reply
+     * composed in a buffer, which can be reused as soon as this returns.
+     */
+    public final void sendReply(String requestId, MessageBuffer reply, Logger properLogger) {
+        // the request id is prepended while encoding
         properLogger.debug("Processed request: " + requestId);
 
-        _replySender.sendMessage(reply);
+        _replySender.sendMessage(requestId, reply);
     }
 
     public final void sendUnsolicitedMessage(String virtualRequestId, String msg, Logger properLogger) {
-        StringBuilder identifiedReply = new StringBuilder();
-        identifiedReply.append(virtualRequestId);
-        identifiedReply.append(RemotingProtocol.SEP);
-        identifiedReply.append(msg);
-
-        msg = identifiedReply.toString();
         properLogger.debug("Sending unsolicited message");
 
-        _replySender.sendMessage(msg);
+        _replySender.sendMessage(virtualRequestId, msg);
     }
 
     public final void sendRemoteRequest(String requestId, String msg, Logger properLogger) {
-        StringBuilder identifiedReply = new StringBuilder();
-        identifiedReply.append(requestId);
-        identifiedReply.append(RemotingProtocol.SEP);
-        identifiedReply.append(msg);
-
-        msg = identifiedReply.toString();
         properLogger.debug("Sending remote request: " + requestId);
 
-        _replySender.sendMessage(msg);
+        _replySender.sendMessage(requestId, msg);
     }
 
-    private void onRequestReceived(String request) {
-        int sep = request.indexOf(RemotingProtocol.SEP);
-        if (sep < 1) {
-            _log.warn("Discarding malformed request: " + request);
+    private void onRequestReceived(byte[] line, int offset, int length) {
+        // the request id is in ASCII; the method name
+        // and the arguments are left to the decoder
+        int end = offset + length;
+        int idSep = indexOfSep(line, offset, end);
+        int methodSep = (idSep < 0 ? -1 : indexOfSep(line, idSep + 1, end));
+        if (idSep <= offset || methodSep <= idSep + 1) {
+            _log.warn("Discarding malformed request: " + new String(line, offset, length, StandardCharsets.UTF_8));
             return;
         }
 
-        String requestId = request.substring(0, sep);
+        String requestId = new String(line, offset, idSep - offset, StandardCharsets.ISO_8859_1);
+        _decoder.reset(line, idSep + 1, methodSep - idSep - 1, methodSep + 1, end - methodSep - 1);
+        _requestListener.onRequestReceived(requestId, _decoder);
+    }
 
-        _requestListener.onRequestReceived(requestId, request.substring(sep + 1));
+    private static int indexOfSep(byte[] line, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (line[i] == RemotingProtocol.SEP) {
+                return i;
+            }
+        }
+        return -1;
     }
 }
\ No newline at end of file
@@ -0,0 +1,124 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits the request stream into lines, by working on the raw bytes
+ * in a reusable buffer. Each line is only available as a slice of the
+ * buffer, until the next line is read; no decoding takes place here. <BR>
+ * Lines are terminated by LF, optionally preceded by CR; as CR and LF
+ * are always encoded inside the protocol fields, no other forms
+ * are expected.
+ */
+class RequestReader {
+
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    private final InputStream _stream;
+    private byte[] _buffer = new byte[INITIAL_CAPACITY];
+
+    // the bytes received and not yet consumed lie between _start and _end;
+    // no terminator is present between _start and _scan
+    private int _start = 0;
+    private int _scan = 0;
+    private int _end = 0;
+
+    private int _lineOffset = 0;
+    private int _lineLength = 0;
+
+    public RequestReader(InputStream stream) {
+        _stream = stream;
+    }
+
+    /**
+     * Reads the next line, which can then be accessed through
+     * {@link #array()}, {@link #lineOffset()} and {@link #lineLength()}.
+     * A last line not terminated is also returned.
+     *
+     * @return false if the end of the stream has been reached.
+     */
+    public final boolean readLine() throws IOException {
+        while (true) {
+            for (int i = _scan; i < _end; i++) {
+                if (_buffer[i] == '\n') {
+                    _lineOffset = _start;
+                    _lineLength = i - _start;
+                    if (_lineLength > 0 && _buffer[i - 1] == '\r') {
+                        _lineLength--;
+                    }
+                    _start = i + 1;
+                    _scan = _start;
+                    return true;
+                }
+            }
+            _scan = _end;
+
+            if (! fill()) {
+                if (_start == _end) {
+                    return false;
+                }
+                _lineOffset = _start;
+                _lineLength = _end - _start;
+                _start = _end;
+                _scan = _end;
+                return true;
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (_start > 0) {
+            // the consumed lines can be discarded
+            int pending = _end - _start;
+            System.arraycopy(_buffer, _start, _buffer, 0, pending);
+            _scan -= _start;
+            _end = pending;
+            _start = 0;
+        }
+        if (_end == _buffer.length) {
+            // the current line is longer than the buffer
+            byte[] newBuffer = new byte[_buffer.length * 2];
+            System.arraycopy(_buffer, 0, newBuffer, 0, _end);
+            _buffer = newBuffer;
+        }
+        int read = _stream.read(_buffer, _end, _buffer.length - _end);
+        if (read < 0) {
+            return false;
+        }
+        _end += read;
+        return true;
+    }
+
+    public final byte[] array() {
+        return _buffer;
+    }
+
+    public final int lineOffset() {
+        return _lineOffset;
+    }
+
+    public final int lineLength() {
+        return _lineLength;
+    }
+
+    @Override
+    public String toString() {
+        return new String(_buffer, _lineOffset, _lineLength, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *  
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, preallocated MessageQueue for many producers and a single
+ * consumer, which takes no locks and allocates nothing per message. <BR>
+ * The producers claim a slot by advancing the producer index and then
+ * publish the message in it; the consumer clears the slot before
+ * advancing the consumer index, which lets the slot be claimed again.
+ */
+class RingMessageQueue extends MessageQueue {
+
+    public enum WaitStrategy {
+        // the consumer parks and the producers unpark it
+        PARK,
+        // the consumer spins and yields for a while, before parking
+        SPIN_PARK,
+        // the consumer parks for short periods and the producers never
+        // unpark it; this saves the producers any signalling cost,
+        // at the expense of some latency
+        TIMED_PARK
+    }
+
+    private static final int SPIN_TRIES = 1000;
+    private static final int YIELD_TRIES = 100;
+    private static final long TIMED_PARK_NANOS = 100 * 1000;
+
+    private final AtomicReferenceArray<OutgoingMessage> _slots;
+    private final int _mask;
+    private final WaitStrategy _waitStrategy;
+
+    private final AtomicLong _producerIndex = new AtomicLong();
+    private final AtomicLong _consumerIndex = new AtomicLong();
+
+    // set only while the consumer is about to park
+    private volatile Thread _waitingConsumer = null;
+    private volatile boolean _wakeUpRequested = false;
+
+    public RingMessageQueue(int size, WaitStrategy waitStrategy) {
+        if (size < 2 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Ring size must be a power of two");
+        }
+        _slots = new AtomicReferenceArray<OutgoingMessage>(size);
+        _mask = size - 1;
+        _waitStrategy = waitStrategy;
+    }
+
+    @Override
+    public boolean offer(OutgoingMessage msg) {
+        long index;
+        do {
+            index = _producerIndex.get();
+            if (index - _consumerIndex.get() > _mask) {
+                return false;
+            }
+        } while (! _producerIndex.compareAndSet(index, index + 1));
+
+        // the slot has already been cleared by the consumer
+        _slots.lazySet((int) index & _mask, msg);
+
+        if (_waitStrategy != WaitStrategy.TIMED_PARK) {
+            // the producer index has been updated before this check
+            // and the consumer sets itself before checking the index,
+            // hence either we see the consumer or it sees the message
+            Thread consumer = _waitingConsumer;
+            if (consumer != null) {
+                LockSupport.unpark(consumer);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public OutgoingMessage poll() {
+        long index = _consumerIndex.get();
+        int slot = (int) index & _mask;
+        OutgoingMessage msg = _slots.get(slot);
+        if (msg == null) {
+            if (index == _producerIndex.get()) {
+                return null;
+            }
+            // the slot has been claimed, but the message is not published yet;
+            // this can only last for a few instructions
+            do {
+                msg = _slots.get(slot);
+            } while (msg == null);
+        }
+        _slots.lazySet(slot, null);
+        _consumerIndex.lazySet(index + 1);
+        return msg;
+    }
+
+    @Override
+    public OutgoingMessage take() throws InterruptedException {
+        int idleCount = 0;
+        while (true) {
+            if (_wakeUpRequested) {
+                _wakeUpRequested = false;
+                return null;
+            }
+            OutgoingMessage msg = poll();
+            if (msg != null) {
+                return msg;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            if (_waitStrategy == WaitStrategy.SPIN_PARK && idleCount < SPIN_TRIES + YIELD_TRIES) {
+                if (idleCount >= SPIN_TRIES) {
+                    Thread.yield();
+                }
+                idleCount++;
+
+            } else if (_waitStrategy == WaitStrategy.TIMED_PARK) {
+                LockSupport.parkNanos(this, TIMED_PARK_NANOS);
+
+            } else {
+                _waitingConsumer = Thread.currentThread();
+                // we check again, now that the producers can see us
+                if (_producerIndex.get() == _consumerIndex.get() && ! _wakeUpRequested) {
+                    LockSupport.park(this);
+                }
+                _waitingConsumer = null;
+            }
+        }
+    }
+
+    @Override
+    public void wakeUp() {
+        _wakeUpRequested = true;
+        Thread consumer = _waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+}
@@ -41,7 +41,30 @@ import com.lightstreamer.log.LoggerProvider;
  * However, if a stricter interval is requested by the Proxy Adapter on startup,
  * it will be obeyed (with a safety minimum of 1 second). This should ensure
  * that the Proxy Adapter activity checks will always succeed, but for some
- * old versions of the Proxy Adapter. 
+ * old versions of the Proxy Adapter. <BR>
+ * Outgoing messages that are already queued are written in batches, with
+ * a single flush on the connection for each batch. The batch size is limited
+ * by the custom "lightstreamer.write.batch.max.messages" and
+ * "lightstreamer.write.batch.max.bytes" system properties; by default,
+ * they are set to 1000 messages and 65536 bytes. A limit of 1 message
+ * causes each message to be flushed individually. Moreover, the time spent
+ * in collecting a batch can be limited through the custom
+ * "lightstreamer.write.flush.latency.millis" system property; by default,
+ * there is no limit. In any case, a batch is flushed as soon as no more
+ * messages are queued. The limits on messages and time can also be set
+ * for each instance, through {@link #setMaxBatchSize} and
+ * {@link #setFlushLatencyMillis}. <BR>
+ * By default, outgoing messages are queued in an unbounded linked queue.
+ * A preallocated queue, which takes no locks and is better suited for many
+ * concurrent producers, can be used instead, by setting its size, which must
+ * be a power of two, through the custom "lightstreamer.write.queue.ring.size"
+ * system property. When this queue is full, the producers have to wait.
+ * In this case, the way the writer thread waits for new messages can be
+ * chosen through the custom "lightstreamer.write.queue.wait.strategy" system
+ * property, whose values can be "park" (the default), "spin_park", which
+ * spins for a while before parking and reduces latency at the expense of CPU
+ * usage, and "timed_park", which saves the producers any signalling cost
+ * at the expense of a latency of up to 0.1 milliseconds.
  */
 public abstract class Server {
 
@@ -171,6 +194,80 @@ public abstract class Server {
         return _impl.getReplyStream();
     }
 
+    /** 
+     * Sets the maximum number of outgoing messages that can be written
+     * on the reply stream before flushing it. Only the messages already
+     * queued are collected; hence, when the load is low, each message is
+     * flushed individually anyway. <BR>
+     * The default value is determined by the custom
+     * "lightstreamer.write.batch.max.messages" system property, or is 1000.
+     * 
+     * @param size the maximum number of messages in a batch; a value of 1
+     * causes each message to be flushed individually.
+     * @throws IllegalArgumentException in case a size of 0 or negative is supplied.
+     * @throws IllegalStateException in case the Server has already been started.
+     */
+    public final void setMaxBatchSize(int size) {
+        if (startedOnce) {
+            throw new IllegalStateException("Reuse of Server object forbidden");
+        }
+        _impl.setMaxBatchSize(size);
+    }
+    /** 
+     * Gets the maximum number of outgoing messages that can be written
+     * on the reply stream before flushing it.
+     * 
+     * @return the maximum number of messages in a batch.
+     */
+    public final int getMaxBatchSize() {
+        return _impl.getMaxBatchSize();
+    }
+
+    /** 
+     * Sets the maximum time that can be spent in collecting the outgoing
+     * messages already queued, before flushing the reply stream.
+     * This allows for trading latency for throughput when the load is high;
+     * when the load is low, each message is flushed individually anyway. <BR>
+     * The default value is determined by the custom
+     * "lightstreamer.write.flush.latency.millis" system property, or is 0.
+     * 
+     * @param millis the maximum time in milliseconds; 0 means no limit,
+     * in which case the batch size only depends on the other limits.
+     * @throws IllegalArgumentException in case a negative value is supplied.
+     * @throws IllegalStateException in case the Server has already been started.
+     */
+    public final void setFlushLatencyMillis(int millis) {
+        if (startedOnce) {
+            throw new IllegalStateException("Reuse of Server object forbidden");
+        }
+        _impl.setFlushLatencyMillis(millis);
+    }
+    /** 
+     * Gets the maximum time that can be spent in collecting the outgoing
+     * messages already queued, before flushing the reply stream.
+     * 
+     * @return the maximum time in milliseconds, or 0.
+     */
+    public final int getFlushLatencyMillis() {
+        return _impl.getFlushLatencyMillis();
+    }
+
+    /** 
+     * Returns a snapshot of the statistics on the outgoing messages
+     * written on the reply stream, cumulated since the creation of the
+     * Server. The collection of the statistics is always active and
+     * the method can be invoked at any time. By comparing subsequent
+     * snapshots, it is possible to determine the write rates and to
+     * detect whether the messages are accumulating because of a slow
+     * connection.
+     * 
+     * @return the current statistics.
+     */
+    @Nonnull
+    public final WriterStatistics getWriterStatistics() {
+        return _impl.getWriterStatistics();
+    }
+
     /** 
      * Sets the handler for error conditions occurring on the Remote Server.
      * By setting the handler, it's possible to override the default
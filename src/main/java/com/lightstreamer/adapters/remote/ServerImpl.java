@@ -36,6 +36,7 @@ abstract class ServerImpl implements RequestListener, ExceptionListener, Excepti
     private OutputStream _replyStream;
     
     private final Integer _configuredKeepaliveMillis;
+    private final MessageSender.Config _senderConfig;
     
     private String _remoteUser;
     private String _remotePassword;
@@ -59,6 +60,8 @@ abstract class ServerImpl implements RequestListener, ExceptionListener, Excepti
 
     private ExceptionHandler _exceptionHandler;
 
+    private final RequestDispatcher _dispatcher = new RequestDispatcher();
+
     protected RequestManager _requestManager;
     protected MessageSender _notifySender;
 
@@ -89,6 +92,102 @@ abstract class ServerImpl implements RequestListener, ExceptionListener, Excepti
         } else {
             _configuredKeepaliveMillis = null;
         }
+
+        _senderConfig = new MessageSender.Config();
+        _senderConfig.maxBatchMessages = (int) getLongProperty("lightstreamer.write.batch.max.messages", MessageSender.Config.DEFAULT_MAX_BATCH_MESSAGES, 1, Integer.MAX_VALUE);
+        _senderConfig.maxBatchBytes = (int) getLongProperty("lightstreamer.write.batch.max.bytes", MessageSender.Config.DEFAULT_MAX_BATCH_BYTES, 1, Integer.MAX_VALUE);
+        // a 0 latency means no limit
+        _senderConfig.maxFlushLatencyMillis = (int) getLongProperty("lightstreamer.write.flush.latency.millis", 0, 0, Integer.MAX_VALUE);
+        _senderConfig.maxReplyBurst = (int) getLongProperty("lightstreamer.write.replies.max.burst", MessageSender.Config.DEFAULT_MAX_REPLY_BURST, 1, Integer.MAX_VALUE);
+
+        // a 0 limit means no limit
+        _senderConfig.maxQueueMessages = (int) getLongProperty("lightstreamer.notify.queue.max.messages", 0, 0, Integer.MAX_VALUE);
+        _senderConfig.maxQueueBytes = getLongProperty("lightstreamer.notify.queue.max.bytes", 0, 0, Long.MAX_VALUE);
+        String policyConf = System.getProperty("lightstreamer.notify.queue.policy");
+        if (policyConf != null) {
+            if (policyConf.equalsIgnoreCase("block")) {
+                _senderConfig.overflowPolicy = MessageSender.OverflowPolicy.BLOCK;
+            } else if (policyConf.equalsIgnoreCase("drop_oldest")) {
+                _senderConfig.overflowPolicy = MessageSender.OverflowPolicy.DROP_OLDEST;
+            } else if (policyConf.equalsIgnoreCase("fail")) {
+                _senderConfig.overflowPolicy = MessageSender.OverflowPolicy.FAIL;
+            } else {
+                throw new IllegalArgumentException("Invalid lightstreamer.notify.queue.policy configuration: " + policyConf);
+            }
+        }
+
+        // a 0 size means the default, unbounded, queue
+        _senderConfig.ringSize = (int) getLongProperty("lightstreamer.write.queue.ring.size", 0, 0, 1 << 30);
+        if (_senderConfig.ringSize > 0) {
+            if (_senderConfig.ringSize < 2 || Integer.bitCount(_senderConfig.ringSize) != 1) {
+                throw new IllegalArgumentException("Invalid lightstreamer.write.queue.ring.size configuration: " + _senderConfig.ringSize + " is not a power of two");
+            }
+            if (_senderConfig.overflowPolicy == MessageSender.OverflowPolicy.DROP_OLDEST) {
+                throw new IllegalArgumentException("Invalid lightstreamer.notify.queue.policy configuration: " + policyConf + " is not supported with lightstreamer.write.queue.ring.size");
+            }
+        }
+        String clockConf = System.getProperty("lightstreamer.timestamp.clock");
+        if (clockConf != null) {
+            if (clockConf.equalsIgnoreCase("system")) {
+                _senderConfig.clock = TimestampClock.SYSTEM;
+            } else if (clockConf.equalsIgnoreCase("cached")) {
+                _senderConfig.clock = TimestampClock.cached();
+            } else {
+                throw new IllegalArgumentException("Invalid lightstreamer.timestamp.clock configuration: " + clockConf);
+            }
+        }
+
+        String waitConf = System.getProperty("lightstreamer.write.queue.wait.strategy");
+        if (waitConf != null) {
+            if (waitConf.equalsIgnoreCase("park")) {
+                _senderConfig.waitStrategy = RingMessageQueue.WaitStrategy.PARK;
+            } else if (waitConf.equalsIgnoreCase("spin_park")) {
+                _senderConfig.waitStrategy = RingMessageQueue.WaitStrategy.SPIN_PARK;
+            } else if (waitConf.equalsIgnoreCase("timed_park")) {
+                _senderConfig.waitStrategy = RingMessageQueue.WaitStrategy.TIMED_PARK;
+            } else {
+                throw new IllegalArgumentException("Invalid lightstreamer.write.queue.wait.strategy configuration: " + waitConf);
+            }
+        }
+    }
+
+    private static long getLongProperty(String name, long defaultValue, long minValue, long maxValue) {
+        String conf = System.getProperty(name);
+        if (conf == null) {
+            return defaultValue;
+        }
+        try {
+            long value = Long.parseLong(conf);
+            if (value >= minValue && value <= maxValue) {
+                return value;
+            }
+        } catch (Exception e) {
+        }
+        throw new IllegalArgumentException("Invalid " + name + " configuration: " + conf);
+    }
+
+    public final void setMaxBatchSize(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("Invalid batch size: " + value);
+        }
+        _senderConfig.maxBatchMessages = value;
+    }
+    public final int getMaxBatchSize() {
+        return _senderConfig.maxBatchMessages;
+    }
+
+    public final void setFlushLatencyMillis(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid flush latency: " + value);
+        }
+        _senderConfig.maxFlushLatencyMillis = value;
+    }
+    public final int getFlushLatencyMillis() {
+        return _senderConfig.maxFlushLatencyMillis;
+    }
+
+    public final WriterStatistics getWriterStatistics() {
+        return _senderConfig.metrics.getSnapshot();
     }
 
     public final void setName(String value) {
@@ -191,6 +290,19 @@ abstract class ServerImpl implements RequestListener, ExceptionListener, Excepti
         }
     }
     
+    /**
+     * Registers the handler of the requests of a method, which is then
+     * available through {@link #getHandler}. The method name should
+     * be made of three uppercase letters.
+     */
+    protected final void registerHandler(String method, RequestHandler handler) {
+        _dispatcher.register(method, handler);
+    }
+
+    protected final RequestHandler getHandler(RequestDecoder request) {
+        return _dispatcher.getHandler(request);
+    }
+
     protected void useKeepaliveHint(String keepaliveHint) {
         if (keepaliveHint == null) {
             // no information: we stick to a stricter default
@@ -271,19 +383,15 @@ abstract class ServerImpl implements RequestListener, ExceptionListener, Excepti
             _log.info("Keepalives for " + _name + " not set");
         }
 
-        MessageSender.WriteState sharedWriteState;
-        if (withNotifies) {
-            sharedWriteState = new MessageSender.WriteState();
-        } else {
-            sharedWriteState = null;
-        }
-
         RequestManager currRequestManager = null;
-        currRequestManager = new RequestManager(_name, _requestStream, _replyStream, sharedWriteState, keepaliveMillis, this, this);
-
         MessageSender currNotifySender = null;
         if (withNotifies) {
-            currNotifySender = new MessageSender(_name, _replyStream, sharedWriteState, keepaliveMillis, this);
+            // a single sender for notifications and replies, as they share
+            // the stream; in this way, the replies can take precedence
+            currNotifySender = new MessageSender(_name, _replyStream, keepaliveMillis, _senderConfig, this);
+            currRequestManager = new RequestManager(_name, _requestStream, currNotifySender, this, this);
+        } else {
+            currRequestManager = new RequestManager(_name, _requestStream, _replyStream, keepaliveMillis, _senderConfig, this, this);
         }
 
         synchronized (this) {
@@ -361,7 +469,7 @@ abstract class ServerImpl implements RequestListener, ExceptionListener, Excepti
     public abstract boolean handleIOException(IOException exception);
     public abstract boolean handleException(RemotingException exception);
 
-    public abstract void onRequestReceived(String requestId, String request);
+    public abstract void onRequestReceived(String requestId, RequestDecoder request);
 
     public final void onException(RemotingException exception) {
         
@@ -13,11 +13,11 @@
  */
 package com.lightstreamer.adapters.remote;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.lightstreamer.log.LogManager;
 import com.lightstreamer.log.Logger;
@@ -25,20 +25,50 @@ import com.lightstreamer.log.Logger;
 class SubscriptionHelper {
     private static Logger _log = LogManager.getLogger("com.lightstreamer.adapters.remote.Server.DataProviderServer");
 
-    private Map<String,SubscrData> _activeItems;
+    private final ConcurrentHashMap<String,SubscrData> _activeItems;
 
     private final String _poolType;
     private final ExecutorService _executor;
-    
+    private final ExecutorService[] _shards;
+
     public SubscriptionHelper() {
-        _activeItems = new HashMap<String,SubscrData>();
-        
+        _activeItems = new ConcurrentHashMap<String,SubscrData>();
+
+        String shardedConf = System.getProperty("lightstreamer.data.pool.sharded");
+        boolean sharded;
+        if (shardedConf == null || shardedConf.equalsIgnoreCase("false")) {
+            sharded = false;
+        } else if (shardedConf.equalsIgnoreCase("true")) {
+            sharded = true;
+        } else {
+            throw new IllegalArgumentException("Invalid lightstreamer.data.pool.sharded configuration: " + shardedConf);
+        }
+
         String threadsConf = System.getProperty("lightstreamer.data.pool.size");
         if (threadsConf == null) {
             threadsConf = "0";
         }
+        int threads;
         try {
-            int threads = Integer.parseInt(threadsConf);
+            threads = Integer.parseInt(threadsConf);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid lightstreamer.data.pool.size configuration: " + threadsConf);
+        }
+
+        if (sharded) {
+            // each item is pinned to a single-threaded shard,
+            // which also ensures the sequentiality for the item
+            if (threads <= 0) {
+                threads = Runtime.getRuntime().availableProcessors();
+            }
+            _poolType = "sharded thread pool size = " + threads;
+            _executor = null;
+            _shards = new ExecutorService[threads];
+            for (int i = 0; i < threads; i++) {
+                _shards[i] = Executors.newSingleThreadExecutor();
+            }
+        } else {
+            _shards = null;
             if (threads <= 0) {
                 _poolType = "unlimited thread pool";
                 _executor = Executors.newCachedThreadPool();
@@ -49,13 +79,29 @@ class SubscriptionHelper {
                 _poolType = "thread pool size = " + threads;
                 _executor = Executors.newFixedThreadPool(threads);
             }
-        } catch (Exception e) {
-            throw new IllegalArgumentException("Invalid lightstreamer.data.pool.size configuration: " + threadsConf);
         }
     }
-    
+
     public void shutdown() {
-        _executor.shutdown();
+        if (_shards != null) {
+            for (ExecutorService shard : _shards) {
+                shard.shutdown();
+            }
+        } else {
+            _executor.shutdown();
+        }
+    }
+
+    private void execute(SubscrData data) {
+        if (_shards != null) {
+            // the hash is spread, as for HashMap, as item names
+            // often differ only in the last characters
+            int hash = data._itemName.hashCode();
+            hash ^= (hash >>> 16);
+            _shards[(hash & 0x7FFFFFFF) % _shards.length].execute(data);
+        } else {
+            _executor.execute(data);
+        }
     }
 
     public final void doSubscription(String itemName, Task subscriptionTask) {
@@ -67,17 +113,17 @@ class SubscriptionHelper {
         // but we will enqueue the requests pertaining to the same
         // item, so as to guarantee sequentiality to the Adapter too
 
-        SubscrData data;
-        synchronized (_activeItems) {
-            data = _activeItems.get(itemName);
-            if (data == null) {
-                data = new SubscrData(this, itemName);
-                _activeItems.put(itemName, data);
+        // the element is created or updated atomically with respect
+        // to its removal, which only takes the lock for this key
+        SubscrData data = _activeItems.compute(itemName, (name, existing) -> {
+            if (existing == null) {
+                existing = new SubscrData(this, name);
             }
-            data._queued++;
-                // questo impedisce la rimozione dell'elemento
-                // se il thread scodatore finisce proprio adesso
-        }
+            existing._queued++;
+                // this prevents the removal of the element
+                // in case the dequeuing thread should end right now
+            return existing;
+        });
         data.addTask(subscriptionTask, true);
     }
 
@@ -90,61 +136,73 @@ class SubscriptionHelper {
         // but we will enqueue the requests pertaining to the same
         // item, so as to guarantee sequentiality to the Adapter too
 
-        SubscrData data;
-        synchronized (_activeItems) {
-            data =_activeItems.get(itemName);
-            if (data == null) {
-                // impossible, unless the corresponding subscription request
-                // got lost; in fact, it should have created the element
-                // and set _queued; and the dequeuer can have reset _queued
-                // only after setting _code; under such conditions,
-                // the element cannot have been eliminated
-                _log.error("Task list expected for item " + itemName);
-                return;
-            }
-            data._queued++;
+        SubscrData data = _activeItems.computeIfPresent(itemName, (name, existing) -> {
+            existing._queued++;
                 // this would prevent the removal of the element
                 // in case the dequeuing thread should end right now
+            return existing;
+        });
+        if (data == null) {
+            // impossible, unless the corresponding subscription request
+            // got lost; in fact, it should have created the element
+            // and set _queued; and the dequeuer can have reset _queued
+            // only after setting _subscription; under such conditions,
+            // the element cannot have been eliminated
+            _log.error("Task list expected for item " + itemName);
+            return;
         }
         data.addTask(subscriptionTask, false);
     }
 
-    public final String getSubscriptionCode(String itemName) {
-        synchronized (_activeItems) {
-            SubscrData data = _activeItems.get(itemName);
-            if (data != null) {
-                return data._code;
-                    // it may be null, in case an unsubscription
-                    // has just finished but a new subscription
-                    // has already been enqueued
-            } else {
-                return null;
-            }
+    public final ItemSubscription getSubscription(String itemName) {
+        // no locks are involved, as this is invoked upon each update
+        SubscrData data = _activeItems.get(itemName);
+        if (data != null) {
+            return data._subscription;
+                // it may be null, in case an unsubscription
+                // has just finished but a new subscription
+                // has already been enqueued
+        } else {
+            return null;
         }
     }
-    
+
+    /**
+     * As {@link #getSubscription}, but for many items at once.
+     */
+    public final void getSubscriptions(String[] itemNames, int count, ItemSubscription[] subscriptions) {
+        for (int i = 0; i < count; i++) {
+            subscriptions[i] = getSubscription(itemNames[i]);
+        }
+    }
+
+    // the items that are subscribed or have pending requests
+    final int getItemCount() {
+        return _activeItems.size();
+    }
+
     public String getPoolType() {
         return _poolType;
     }
 
-    private static class SubscrData {
-        public SubscriptionHelper _container;
-        public String _itemName;
-        public int _queued; // will be synchronized with items
-        public String _code; // will be synchronized with items
-        public LinkedList<Task> _tasks;
-        public boolean _subscrExpected;
-        public boolean _running;
-        public boolean _lastSubscrOutcome;
+    private static class SubscrData implements Runnable {
+        public final SubscriptionHelper _container;
+        public final String _itemName;
+        public int _queued; // guarded by the map lock for the item
+        public volatile ItemSubscription _subscription; // only written by the dequeuer
+        private final ConcurrentLinkedQueue<Task> _tasks;
+        private final AtomicInteger _pending; // tasks added and not yet dequeued
+        private boolean _subscrExpected; // only used by the request dequeueing thread
+        private boolean _lastSubscrOutcome; // only used by the active dequeuer
 
         public SubscrData(SubscriptionHelper container, String itemName) {
             _container = container;
             _itemName = itemName;
-            _tasks = new LinkedList<Task>();
+            _tasks = new ConcurrentLinkedQueue<Task>();
+            _pending = new AtomicInteger(0);
             _subscrExpected = true;
             _queued = 0;
-            _code = null;
-            _running = false;
+            _subscription = null;
         }
 
         public final void addTask(Task task, boolean isSubscr) {
@@ -152,52 +210,43 @@ class SubscriptionHelper {
                 // impossible, unless DataProviderServer were bugged
                 _log.error("Inconsistent task for item " + _itemName);
             }
-            synchronized (this) {
-                if (isSubscr != _subscrExpected) {
-                    // impossible, unless the sequence of requests
-                    // to the Remote Server were wrong
-                    _log.error("Unexpected task for item " + _itemName);
-                }
-                _tasks.offer(task);
-                    // _queued has already been incremented by the caller
-                _subscrExpected = !isSubscr;
-                if (!_running) {
-                    // only one dequeuer can be active
-                    _running = true;
-                    _container._executor.submit(new Runnable() {
-                        public void run() {
-                            dequeue();
-                        }
-                    });
-                }
+            if (isSubscr != _subscrExpected) {
+                // impossible, unless the sequence of requests
+                // to the Remote Server were wrong
+                _log.error("Unexpected task for item " + _itemName);
             }
+            _subscrExpected = !isSubscr;
+            _tasks.offer(task);
+                // _queued has already been incremented by the caller
+            if (_pending.getAndIncrement() == 0) {
+                // only one dequeuer can be active: the one started
+                // by the task that found no pending tasks
+                _container.execute(this);
+            }
+        }
+
+        @Override
+        public final void run() {
+            dequeue();
         }
 
         public final void dequeue() {
             int dequeued = 0;
-            boolean lastSubscrOutcome = true;
-                // it will be first taken from the state anyway
+            boolean lastSubscrOutcome = _lastSubscrOutcome;
+                // initial state
             while (true) {
-                Task task;
-                boolean isLast;
-                synchronized (this) {
-                    if (dequeued == 0) {
-                        lastSubscrOutcome = _lastSubscrOutcome;
-                            // initial state
-                    }
-                    if (_tasks.isEmpty()) {
-                        _lastSubscrOutcome = lastSubscrOutcome;
-                            // final state
-                        _running = false;
-                        break;
-                        // from this moment it is possible that a new
-                        // dequeuer gets started
-                    }
-                    task = _tasks.poll();
-                    isLast = (_tasks.isEmpty());
-                    dequeued++;
+                Task task = _tasks.poll();
+                if (task == null) {
+                    // cannot happen, as the tasks are counted
+                    // only after being offered
+                    Thread.yield();
+                    continue;
                 }
-                // we will invoke the subscribe/unsubscribe without holding the lock
+                boolean isLast = (_tasks.peek() == null);
+                    // a task offered right now is treated as though it
+                    // arrived after this one has been processed
+                dequeued++;
+                // we will invoke the subscribe/unsubscribe without holding any lock
                 try {
                     String code = task.getCode();
                     if (code != null) {
@@ -210,25 +259,38 @@ class SubscriptionHelper {
                                 // on the next iteration we will dequeue the unsubscription,
                                 // again with doLateTask
                         } else {
-                            synchronized (_container._activeItems) {
-                                _code = code;
-                                // from this moment, the received updates will be
-                                // associated with this subscription; should we receive
-                                // late updates meant for a previous subscription,
-                                // they would be misinterpreted; it's the Adapter
-                                // responsible for ensuring that this never happens,
-                                // that is, that no update for this item is sent after
-                                // the termination of the unsubscribe() invocation
+                            // the constant part of the notifications
+                            // is encoded once and for all
+                            ItemSubscription subscription;
+                            try {
+                                subscription = new ItemSubscription(_itemName, code);
+                            } catch (RemotingException e) {
+                                // the request must be answered anyway
+                                lastSubscrOutcome = false;
+                                    // the subsequent unsubscription will be
+                                    // dequeued with doLateTask
+                                task.doFailedTask(e);
+                                subscription = null;
+                            }
+                            if (subscription != null) {
+                                _subscription = subscription;
+                                    // from this moment, the received updates will be
+                                    // associated with this subscription; should we receive
+                                    // late updates meant for a previous subscription,
+                                    // they would be misinterpreted; it's the Adapter
+                                    // responsible for ensuring that this never happens,
+                                    // that is, that no update for this item is sent after
+                                    // the termination of the unsubscribe() invocation
+                                lastSubscrOutcome = task.doTask(subscription);
+                                    // if it return false, i.e. the subscription
+                                    // has failed, we won't invoke unsubscribe()
                             }
-                            lastSubscrOutcome = task.doTask();
-                                // if it return false, i.e. the subscription
-                                // has failed, we won't invoke unsubscribe()
                         }
                     } else {
                         // IT'S AN UNSUBSCRIPTION
                         // ASSERT(the event was preceded by a subscription)
                         if (lastSubscrOutcome) {
-                            task.doTask();
+                            task.doTask(null);
                             // we don't care if it was successful or not;
                             // an unsuccessful unsubscribe doesn't propagate effects
                         } else {
@@ -236,46 +298,47 @@ class SubscriptionHelper {
                             // or it was obsolete and not invoked at all
                             task.doLateTask();
                         }
-                        synchronized (_container._activeItems) {
-                            _code = null;
+                        ItemSubscription subscription = _subscription;
+                        if (subscription != null) {
+                            // the handle held by the Adapter becomes stale
+                            subscription.deactivate();
+                        }
+                        _subscription = null;
                             // from this moment any update received from the Adapter
                             // will be ignored; however, the Adapter should ensure
                             // that no update for this item is sent after
                             // the termination of the unsubscribe() invocation
-                        }
                     }
                 } catch (RemotingException e) {
                     _log.error("Unexpected error: " + e.getMessage(),e);
-                } 
+                }
+
+                _lastSubscrOutcome = lastSubscrOutcome;
+                    // final state, in case this is the last task
+                if (_pending.decrementAndGet() == 0) {
+                    break;
+                    // from this moment it is possible that a new
+                    // dequeuer gets started
+                }
             }
 
-            synchronized (_container._activeItems) {
-                _queued -= dequeued;
+            final int done = dequeued;
+            _container._activeItems.compute(_itemName, (name, data) -> {
+                _queued -= done;
                 // as long as the item is subscribed to, the element should be kept;
                 // if the item was unsubscribed from, the element should be removed,
                 // unless a new subscription request has already been received;
                 // in the latter case, _queued cannot be zero
-                if (_code == null && _queued == 0) {
-                    SubscrData data = _container._activeItems.get(_itemName);
-                    if (data == null) {
-                        // it can happen, in case this dequeueing thread
-                        // was stopped just above and has been preceded
-                        // by a new subscribe/unsubscribe pair
-                        // with a related new dequeueing thread
-                    } else if (data != this) {
-                        // event this can happen, if, in the above case,
-                        // also the second thread was stopped just above
-                        // and has been preceded by a new subscribe/unsubscribe pair
-                        // with a related new dequeueing thread
-                    } else {
-                        _container._activeItems.remove(_itemName);
-                    }
-                } else {
-                    // we can exit safely, because new events are bound to come
-                    // or to be dequeued by a new dequeueing thread,
-                    // which will have a new opportunity to remove this element
+                if (data == this && _subscription == null && _queued == 0) {
+                    return null;
                 }
-            }
+                // otherwise, we can exit safely, because new events are bound
+                // to come or to be dequeued by a new dequeueing thread,
+                // which will have a new opportunity to remove this element;
+                // note that, if the element in the map is not this one,
+                // this one had already been removed
+                return data;
+            });
         }
     }
 }
\ No newline at end of file
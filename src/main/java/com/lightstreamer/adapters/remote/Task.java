@@ -15,6 +15,9 @@ package com.lightstreamer.adapters.remote;
 
 interface Task {
     String getCode();
-    boolean doTask() throws RemotingException;
+    // the subscription is only supplied to subscription tasks
+    boolean doTask(ItemSubscription subscription) throws RemotingException;
     void doLateTask() throws RemotingException;
+    // the task could not be carried out because of an internal error
+    void doFailedTask(Exception cause) throws RemotingException;
 }
\ No newline at end of file
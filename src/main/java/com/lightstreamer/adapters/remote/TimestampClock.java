@@ -0,0 +1,77 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+/**
+ * Source of the timestamps that accompany the notifications.
+ */
+abstract class TimestampClock {
+
+    public abstract long currentTimeMillis();
+
+    /**
+     * Reads the system clock upon each request.
+     */
+    public static final TimestampClock SYSTEM = new TimestampClock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private static CachedClock _cached = null;
+
+    /**
+     * Returns a clock whose time is refreshed every millisecond by a
+     * dedicated thread, which is started upon the first request. <BR>
+     * Reading it is cheaper than reading the system clock, at the expense
+     * of a possible delay of about one millisecond.
+     */
+    public static synchronized TimestampClock cached() {
+        if (_cached == null) {
+            _cached = new CachedClock();
+            _cached.start();
+        }
+        return _cached;
+    }
+
+    private static class CachedClock extends TimestampClock {
+        private volatile long _now = System.currentTimeMillis();
+
+        @Override
+        public long currentTimeMillis() {
+            return _now;
+        }
+
+        private void start() {
+            Thread ticker = new Thread() {
+                public void run() {
+                    while (true) {
+                        _now = System.currentTimeMillis();
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException e) {
+                            break;
+                        }
+                    }
+                }
+            };
+            ticker.setName("Lightstreamer timestamp clock");
+            // the clock is shared and never stopped
+            ticker.setDaemon(true);
+            ticker.start();
+        }
+    }
+
+}
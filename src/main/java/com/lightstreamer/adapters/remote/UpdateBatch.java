@@ -0,0 +1,206 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Reusable container of a sequence of Item Events, possibly pertaining to
+ * different Items, to be supplied together to
+ * {@link ItemEventListener#updateBatch(UpdateBatch)}. <BR>
+ * Each event can be supplied either as a Map, with the same meaning as for
+ * {@link ItemEventListener#update(String, Map, boolean)}, or as a
+ * {@link FieldValues} instance, with the same meaning as for
+ * {@link ItemEventListener#update(String, FieldValues, boolean)}. <BR>
+ * The events are only referenced, hence they should not be modified,
+ * nor reused for other entries, until the updateBatch call returns.
+ * An instance is not thread safe; it can be cleared and reused as soon as
+ * the updateBatch call returns.
+ */
+public final class UpdateBatch {
+
+    private String[] _itemNames;
+    private Object[] _events;
+    private boolean[] _snapshots;
+    private int _size;
+
+    // scratch space for the listener, to resolve the subscriptions
+    ItemSubscription[] _subscriptions;
+
+    /**
+     * Creates an empty batch.
+     */
+    public UpdateBatch() {
+        this(64);
+    }
+
+    /**
+     * Creates an empty batch, sized for the supplied number of events;
+     * the batch grows anyway as needed.
+     *
+     * @param capacity The expected number of events.
+     */
+    public UpdateBatch(int capacity) {
+        capacity = Math.max(capacity, 1);
+        _itemNames = new String[capacity];
+        _events = new Object[capacity];
+        _snapshots = new boolean[capacity];
+        _subscriptions = new ItemSubscription[capacity];
+        _size = 0;
+    }
+
+    /**
+     * Removes all the events, so that the instance can be reused.
+     *
+     * @return This instance.
+     */
+    @Nonnull
+    public UpdateBatch clear() {
+        // the references are dropped, not to retain the caller's data
+        Arrays.fill(_itemNames, 0, _size, null);
+        Arrays.fill(_events, 0, _size, null);
+        Arrays.fill(_subscriptions, 0, _size, null);
+        _size = 0;
+        return this;
+    }
+
+    /**
+     * Adds an Item Event implemented as a Map, as in
+     * {@link ItemEventListener#update(String, Map, boolean)}.
+     *
+     * @param itemName The name of the Item whose values are carried by the Item Event.
+     * @param itemEvent A Map instance, in which Field names are associated to Field values.
+     * @param isSnapshot true if the Item Event carries the Item Snapshot.
+     * @return This instance.
+     */
+    @Nonnull
+    public UpdateBatch add(@Nonnull String itemName, @Nonnull Map<String,?> itemEvent, boolean isSnapshot) {
+        add(itemName, (Object) itemEvent, isSnapshot);
+        return this;
+    }
+
+    /**
+     * Adds an Item Event collected in a FieldValues instance, as in
+     * {@link ItemEventListener#update(String, FieldValues, boolean)}.
+     * Each entry needs its own FieldValues instance.
+     *
+     * @param itemName The name of the Item whose values are carried by the Item Event.
+     * @param values A FieldValues instance, carrying the Field names and values.
+     * @param isSnapshot true if the Item Event carries the Item Snapshot.
+     * @return This instance.
+     */
+    @Nonnull
+    public UpdateBatch add(@Nonnull String itemName, @Nonnull FieldValues values, boolean isSnapshot) {
+        add(itemName, (Object) values, isSnapshot);
+        return this;
+    }
+
+    private void add(String itemName, Object event, boolean isSnapshot) {
+        if (_size == _itemNames.length) {
+            int capacity = _size * 2;
+            _itemNames = Arrays.copyOf(_itemNames, capacity);
+            _events = Arrays.copyOf(_events, capacity);
+            _snapshots = Arrays.copyOf(_snapshots, capacity);
+            _subscriptions = Arrays.copyOf(_subscriptions, capacity);
+        }
+        _itemNames[_size] = itemName;
+        _events[_size] = event;
+        _snapshots[_size] = isSnapshot;
+        _size++;
+    }
+
+    /**
+     * Returns the number of events in the batch.
+     *
+     * @return The number of events.
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Returns the name of the Item of an event.
+     *
+     * @param index The position of the event, in the order of addition.
+     * @return The name of the Item.
+     */
+    @Nonnull
+    public String getItemName(int index) {
+        checkIndex(index);
+        return _itemNames[index];
+    }
+
+    /**
+     * Tells whether an event carries the Item Snapshot.
+     *
+     * @param index The position of the event, in the order of addition.
+     * @return true if the event carries the Item Snapshot.
+     */
+    public boolean isSnapshot(int index) {
+        checkIndex(index);
+        return _snapshots[index];
+    }
+
+    /**
+     * Returns an event, if it was supplied as a Map.
+     *
+     * @param index The position of the event, in the order of addition.
+     * @return The Map instance, or null if the event was supplied as FieldValues.
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    public Map<String,?> getItemEvent(int index) {
+        checkIndex(index);
+        Object event = _events[index];
+        return (event instanceof Map ? (Map<String,?>) event : null);
+    }
+
+    /**
+     * Returns an event, if it was supplied as FieldValues.
+     *
+     * @param index The position of the event, in the order of addition.
+     * @return The FieldValues instance, or null if the event was supplied as a Map.
+     */
+    @Nullable
+    public FieldValues getFieldValues(int index) {
+        checkIndex(index);
+        Object event = _events[index];
+        return (event instanceof FieldValues ? (FieldValues) event : null);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= _size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + _size);
+        }
+    }
+
+    // package-level accessors, with no checks, for the listener
+
+    final String[] itemNames() {
+        return _itemNames;
+    }
+
+    final Object event(int index) {
+        return _events[index];
+    }
+
+    final boolean snapshot(int index) {
+        return _snapshots[index];
+    }
+
+}
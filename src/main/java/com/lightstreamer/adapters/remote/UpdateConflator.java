@@ -0,0 +1,247 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps at most one pending real-time update for each subscribed item,
+ * by merging the field values of any further update into the pending one,
+ * as long as the latter is still waiting in the queue of the notify sender.
+ * The pending update keeps the position in the queue of the first update
+ * merged, so as not to penalize the other items. <BR>
+ * This is only correct for items subscribed in MERGE mode; for this reason,
+ * conflation has to be enabled explicitly. <BR>
+ * Any other notification for the item (snapshot events, end of snapshot,
+ * clear snapshot and the like) acts as a barrier: the updates that follow
+ * it cannot be merged into the updates that precede it.
+ */
+class UpdateConflator {
+
+    // keyed by subscription code, which identifies the item subscription;
+    // synchronized on itself
+    private final Map<String, ConflatedUpdate> _pendingUpdates = new HashMap<String, ConflatedUpdate>();
+
+    private final FieldNameCache _fieldNames;
+
+    public UpdateConflator(FieldNameCache fieldNames) {
+        _fieldNames = fieldNames;
+    }
+
+    /**
+     * Merges the update into the pending one for the same item, if any,
+     * otherwise enqueues a new pending update to the supplied sender.
+     *
+     * @return false if the new update has been discarded by the sender.
+     */
+    public final boolean offer(MessageSender sender, ItemSubscription subscription, Map<String,?> itemEvent, long timestamp) throws RemotingException {
+        // we check the values now, so that the encoding,
+        // which is only done by the sender, cannot fail
+        boolean hasBuffers = false;
+        for (Map.Entry<String,?> entry : itemEvent.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof ByteBuffer) {
+                hasBuffers = true;
+            } else if (value != null && ! (value instanceof String) && ! (value instanceof byte[])) {
+                throw new RemotingException("Found value '" + value.toString() + "' of an unsupported type while building a " + DataProviderProtocol.METHOD_UPDATE_BY_MAP + " request");
+            }
+        }
+        if (hasBuffers) {
+            // buffers are typically reused by the caller,
+            // whereas the values are only encoded by the sender
+            itemEvent = copyBuffers(itemEvent);
+        }
+
+        ConflatedUpdate update;
+        synchronized (_pendingUpdates) {
+            update = _pendingUpdates.get(subscription.getCode());
+            if (update != null && update.merge(itemEvent, timestamp)) {
+                return true;
+            }
+            // if the pending update could not grow within the queue bounds,
+            // the new one is enqueued on its own, subject to the overflow
+            // policy, and replaces it as the target of the next merges
+            update = new ConflatedUpdate(sender, subscription, itemEvent, timestamp);
+            _pendingUpdates.put(subscription.getCode(), update);
+        }
+
+        // the sender may block, hence we don't hold our lock;
+        // the update may receive further merges in the meantime,
+        // which is correct, as they are related with the same item
+        if (! sender.sendNotify(update)) {
+            detach(update);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Prevents the next updates for the item from being merged into
+     * the pending one; to be invoked before enqueueing any other
+     * notification for the item.
+     */
+    public final void barrier(ItemSubscription subscription) {
+        synchronized (_pendingUpdates) {
+            _pendingUpdates.remove(subscription.getCode());
+        }
+    }
+
+    private static Map<String,?> copyBuffers(Map<String,?> itemEvent) {
+        Map<String,Object> copy = new LinkedHashMap<String,Object>(itemEvent);
+        for (Map.Entry<String,Object> entry : copy.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof ByteBuffer) {
+                ByteBuffer buffer = (ByteBuffer) value;
+                ByteBuffer bufferCopy = ByteBuffer.allocate(buffer.remaining());
+                bufferCopy.put(buffer.duplicate());
+                bufferCopy.flip();
+                entry.setValue(bufferCopy);
+            }
+        }
+        return copy;
+    }
+
+    private void detach(ConflatedUpdate update) {
+        int extraSize;
+        synchronized (_pendingUpdates) {
+            String code = update._subscription.getCode();
+            if (_pendingUpdates.get(code) == update) {
+                _pendingUpdates.remove(code);
+            }
+            // no more merges can follow, hence the growth accounted
+            // for them can be given back (only once)
+            extraSize = update._extraSize;
+            update._extraSize = 0;
+        }
+        if (extraSize > 0) {
+            update._sender.releaseBytes(extraSize);
+        }
+    }
+
+    private static int estimateSize(String name, Object value) {
+        int size = 8 + name.length();
+        if (value instanceof String) {
+            size += ((String) value).length();
+        } else if (value instanceof byte[]) {
+            size += ((byte[]) value).length;
+        } else if (value instanceof ByteBuffer) {
+            size += ((ByteBuffer) value).remaining();
+        }
+        return size;
+    }
+
+    private class ConflatedUpdate extends OutgoingMessage {
+        private final MessageSender _sender;
+        private final ItemSubscription _subscription;
+
+        // just an estimate, for the queue bounds; it cannot change,
+        // as the sender gives back what it has reserved upon enqueueing
+        private final int _size;
+
+        // guarded by the lock of the enclosing conflator,
+        // until the update is detached
+        private final LinkedHashMap<String,Object> _fields;
+        private long _timestamp;
+
+        // the current estimate, after the merges, and the part exceeding
+        // _size, which has been reserved with the sender separately;
+        // guarded by the lock of the enclosing conflator
+        private int _estimatedSize;
+        private int _extraSize;
+
+        public ConflatedUpdate(MessageSender sender, ItemSubscription subscription, Map<String,?> itemEvent, long timestamp) {
+            // as any real-time update, it can be discarded;
+            // in that case, the updates merged into it are lost with it
+            super(true);
+            _sender = sender;
+            _subscription = subscription;
+            _fields = new LinkedHashMap<String,Object>(itemEvent);
+            _timestamp = timestamp;
+
+            int size = 28 + subscription.getUpdateHeader().length;
+            for (Map.Entry<String,?> entry : itemEvent.entrySet()) {
+                size += estimateSize(entry.getKey(), entry.getValue());
+            }
+            _size = size;
+            _estimatedSize = size;
+            _extraSize = 0;
+        }
+
+        // invoked while holding the lock of the enclosing conflator;
+        // returns false if the update cannot grow within the queue bounds
+        private boolean merge(Map<String,?> itemEvent, long timestamp) {
+            int estimatedSize = _estimatedSize;
+            for (Map.Entry<String,?> entry : itemEvent.entrySet()) {
+                String name = entry.getKey();
+                if (_fields.containsKey(name)) {
+                    estimatedSize -= estimateSize(name, _fields.get(name));
+                }
+                estimatedSize += estimateSize(name, entry.getValue());
+            }
+
+            // the update may already be queued, hence any growth is reserved
+            // separately, to be given back when the update is detached
+            int growth = estimatedSize - (_size + _extraSize);
+            if (growth > 0) {
+                if (! _sender.tryReserveBytes(growth)) {
+                    return false;
+                }
+                _extraSize += growth;
+            }
+
+            // later values, including nulls, replace the earlier ones,
+            // whereas fields not carried by the update keep their last value
+            _fields.putAll(itemEvent);
+            _timestamp = timestamp;
+            _estimatedSize = estimatedSize;
+            return true;
+        }
+
+        @Override
+        public int size() {
+            return _size;
+        }
+
+        @Override
+        public void onDiscarded() {
+            // the next updates will be enqueued anew
+            detach(this);
+        }
+
+        @Override
+        public void writeTo(MessageBuffer out) {
+            // from now on, no more updates can be merged
+            detach(this);
+
+            out.appendTimestamp(_timestamp);
+            out.append(RemotingProtocol.SEP);
+            try {
+                DataProviderProtocol.writeUpdateByMap(out, _subscription, _fieldNames, _fields, false);
+            } catch (RemotingException e) {
+                // cannot happen, as the values have been checked upon offer
+                throw new IllegalStateException(e);
+            }
+            out.append(MessageSender.END_LINE);
+        }
+
+        @Override
+        public String toString() {
+            return "update for item " + _subscription.getItemName() + " (conflated)";
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the activity statistics of the senders of a Server instance.
+ * Recording only involves atomic updates of preallocated counters,
+ * hence it can always be kept on. The producers only touch a striped
+ * counter, whereas the rest is recorded by the writer threads; the current
+ * queue depth is not recorded at all, but read from the senders.
+ */
+class WriterMetrics {
+
+    // the senders currently running, for the queue depth
+    private final CopyOnWriteArrayList<MessageSender> _senders = new CopyOnWriteArrayList<MessageSender>();
+
+    private final LongAdder _enqueuedMessages = new LongAdder();
+    private final AtomicLong _writtenMessages = new AtomicLong();
+    private final AtomicLong _discardedMessages = new AtomicLong();
+    private final AtomicLong _droppedMessages = new AtomicLong();
+    private final AtomicLong _refusedMessages = new AtomicLong();
+    private final AtomicLong _blockedCount = new AtomicLong();
+    private final AtomicLong _writtenBytes = new AtomicLong();
+    private final AtomicLong _flushes = new AtomicLong();
+    private final AtomicLong _maxQueueDepth = new AtomicLong();
+    private final AtomicLong _totQueueNanos = new AtomicLong();
+    private final AtomicLongArray _writeHistogram = new AtomicLongArray(WriterStatistics.HISTOGRAM_BUCKETS);
+    private final AtomicLongArray _flushHistogram = new AtomicLongArray(WriterStatistics.HISTOGRAM_BUCKETS);
+
+    public final void register(MessageSender sender) {
+        _senders.add(sender);
+    }
+
+    public final void unregister(MessageSender sender) {
+        _senders.remove(sender);
+    }
+
+    public final void onEnqueued() {
+        _enqueuedMessages.increment();
+    }
+
+    // invoked by the writer threads only
+    public final void onQueueDepth(int depth) {
+        long max = _maxQueueDepth.get();
+        while (depth > max) {
+            if (_maxQueueDepth.compareAndSet(max, depth)) {
+                break;
+            }
+            max = _maxQueueDepth.get();
+        }
+    }
+
+    // invoked by the writer threads only
+    public final void onDequeued(long queueNanos) {
+        _totQueueNanos.addAndGet(queueNanos);
+    }
+
+    public final void onDiscarded() {
+        _discardedMessages.incrementAndGet();
+    }
+
+    // discarded by the "drop_oldest" policy, either queued or new
+    public final void onDropped() {
+        onDiscarded();
+        _droppedMessages.incrementAndGet();
+    }
+
+    // refused by the "fail" policy
+    public final void onRefused() {
+        onDiscarded();
+        _refusedMessages.incrementAndGet();
+    }
+
+    // a producer had to wait because of the "block" policy
+    public final void onBlocked() {
+        _blockedCount.incrementAndGet();
+    }
+
+    public final void onFlushed(int messages, int bytes, long writeNanos, long flushNanos) {
+        _writtenMessages.addAndGet(messages);
+        _writtenBytes.addAndGet(bytes);
+        _flushes.incrementAndGet();
+        _writeHistogram.incrementAndGet(getBucket(writeNanos));
+        _flushHistogram.incrementAndGet(getBucket(flushNanos));
+    }
+
+    private static int getBucket(long nanos) {
+        long micros = nanos / 1000;
+        // bucket 0 is for less than 1 microsecond, bucket i for less than 2^i microseconds
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, WriterStatistics.HISTOGRAM_BUCKETS - 1);
+    }
+
+    public final WriterStatistics getSnapshot() {
+        long[] writeHistogram = new long[WriterStatistics.HISTOGRAM_BUCKETS];
+        long[] flushHistogram = new long[WriterStatistics.HISTOGRAM_BUCKETS];
+        for (int i = 0; i < WriterStatistics.HISTOGRAM_BUCKETS; i++) {
+            writeHistogram[i] = _writeHistogram.get(i);
+            flushHistogram[i] = _flushHistogram.get(i);
+        }
+        long queueDepth = 0;
+        for (MessageSender sender : _senders) {
+            queueDepth += sender.getQueueDepth();
+        }
+        return new WriterStatistics(
+            _enqueuedMessages.sum(),
+            _writtenMessages.get(),
+            _discardedMessages.get(),
+            _droppedMessages.get(),
+            _refusedMessages.get(),
+            _blockedCount.get(),
+            _writtenBytes.get(),
+            _flushes.get(),
+            queueDepth,
+            Math.max(_maxQueueDepth.get(), queueDepth),
+            _totQueueNanos.get() / 1000,
+            writeHistogram,
+            flushHistogram);
+    }
+
+}
@@ -0,0 +1,222 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Value object returned by {@link Server#getWriterStatistics()} to report
+ * the activity statistics related with the writing of the outgoing messages
+ * of a Remote Adapter, cumulated since the creation of the Server instance.
+ * By comparing two instances, it is possible to determine rates, like the
+ * bytes written per second, and to tell whether any slowness is due to the
+ * Remote Adapter or to the connection. <BR>
+ * All the counts of messages, including the queue depths, refer to the
+ * entries of the queues of the outgoing messages; in particular, a batch
+ * of updates supplied through {@link ItemEventListener#updateBatch} is
+ * queued, written or discarded as a single message, regardless of the
+ * number of updates it carries. <BR>
+ * The durations are collected in histograms, where bucket 0 counts the
+ * durations below 1 microsecond and bucket i, for i greater than 0, counts
+ * the durations of at least 2^(i-1) and less than 2^i microseconds;
+ * the last bucket also counts all the longer durations.
+ */
+public final class WriterStatistics {
+
+    /**
+     * The number of buckets of the histograms.
+     */
+    public static final int HISTOGRAM_BUCKETS = 32;
+
+    private final long timestamp;
+    private final long enqueuedMessages;
+    private final long writtenMessages;
+    private final long discardedMessages;
+    private final long droppedMessages;
+    private final long refusedMessages;
+    private final long blockedCount;
+    private final long writtenBytes;
+    private final long flushes;
+    private final long queueDepth;
+    private final long maxQueueDepth;
+    private final long totQueueMicros;
+    private final long[] writeHistogram;
+    private final long[] flushHistogram;
+
+    WriterStatistics(long enqueuedMessages, long writtenMessages, long discardedMessages, long droppedMessages, long refusedMessages, long blockedCount, long writtenBytes, long flushes, long queueDepth, long maxQueueDepth, long totQueueMicros, long[] writeHistogram, long[] flushHistogram) {
+        this.timestamp = System.currentTimeMillis();
+        this.enqueuedMessages = enqueuedMessages;
+        this.writtenMessages = writtenMessages;
+        this.discardedMessages = discardedMessages;
+        this.droppedMessages = droppedMessages;
+        this.refusedMessages = refusedMessages;
+        this.blockedCount = blockedCount;
+        this.writtenBytes = writtenBytes;
+        this.flushes = flushes;
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.totQueueMicros = totQueueMicros;
+        this.writeHistogram = writeHistogram;
+        this.flushHistogram = flushHistogram;
+    }
+
+    /**
+     * Returns the time at which the statistics were collected.
+     *
+     * @return The time, as returned by System.currentTimeMillis.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the number of messages (replies and notifications) queued
+     * for writing. Updates merged into queued ones because of conflation
+     * are not included.
+     *
+     * @return The number of messages queued.
+     */
+    public long getEnqueuedMessages() {
+        return enqueuedMessages;
+    }
+
+    /**
+     * Returns the number of messages written on the stream.
+     * Keepalives are not included.
+     *
+     * @return The number of messages written.
+     */
+    public long getWrittenMessages() {
+        return writtenMessages;
+    }
+
+    /**
+     * Returns the number of updates discarded or refused because
+     * of the limits on the notification queue.
+     *
+     * @return The number of updates discarded.
+     */
+    public long getDiscardedMessages() {
+        return discardedMessages;
+    }
+
+    /**
+     * Returns the number of updates discarded because of the "drop_oldest"
+     * policy on the notification queue, either already queued or new.
+     * They are also included in {@link #getDiscardedMessages()}.
+     *
+     * @return The number of updates dropped.
+     */
+    public long getDroppedMessages() {
+        return droppedMessages;
+    }
+
+    /**
+     * Returns the number of new updates refused because of the "fail"
+     * policy on the notification queue.
+     * They are also included in {@link #getDiscardedMessages()}.
+     *
+     * @return The number of updates refused.
+     */
+    public long getRefusedMessages() {
+        return refusedMessages;
+    }
+
+    /**
+     * Returns the number of times an update call had to wait for some space
+     * in the notification queue, because of the "block" policy.
+     *
+     * @return The number of waits.
+     */
+    public long getBlockedCount() {
+        return blockedCount;
+    }
+
+    /**
+     * Returns the number of bytes written on the stream,
+     * including keepalives.
+     *
+     * @return The number of bytes written.
+     */
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    /**
+     * Returns the number of flushes of the stream; each one concludes
+     * the write of a batch of messages.
+     *
+     * @return The number of flushes.
+     */
+    public long getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * Returns the number of messages waiting to be written.
+     * The replies that share the stream with the notifications are written
+     * ahead of them and are not included.
+     *
+     * @return The current queue depth.
+     */
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Returns the highest number of messages that have been waiting
+     * to be written at the same time, as for {@link #getQueueDepth()}.
+     * The depth is sampled each time a batch of messages is collected
+     * for writing, hence shorter peaks may be missed.
+     *
+     * @return The maximum queue depth.
+     */
+    public long getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Returns the total time spent by the written messages in the queue.
+     * Divided by the number of written messages, it yields the average
+     * time spent in the queue.
+     *
+     * @return The total time in microseconds.
+     */
+    public long getTotQueueMicros() {
+        return totQueueMicros;
+    }
+
+    /**
+     * Returns the histogram of the durations of the write operations
+     * on the stream, one for each batch, flush excluded.
+     *
+     * @return An array of {@link #HISTOGRAM_BUCKETS} counts.
+     */
+    @Nonnull
+    public long[] getWriteHistogram() {
+        return writeHistogram.clone();
+    }
+
+    /**
+     * Returns the histogram of the durations of the flush operations
+     * on the stream, one for each batch.
+     *
+     * @return An array of {@link #HISTOGRAM_BUCKETS} counts.
+     */
+    @Nonnull
+    public long[] getFlushHistogram() {
+        return flushHistogram.clone();
+    }
+
+}
@@ -0,0 +1,305 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Runs the real SubscriptionHelper with subscription and unsubscription
+ * requests issued for many items, while other threads supply updates
+ * for the same items, as a Data Adapter would do. <BR>
+ * The fake Adapter keeps the state of each item under a lock, as real
+ * Adapters are expected to do, and checks that the requests for each item
+ * are carried out in the order in which they were issued, that the
+ * subscription returned for an update is the one currently subscribed to,
+ * and that nothing happens for an item after its final unsubscription.
+ */
+public class SubscriptionHelperStressTest {
+
+    private static final int ITEMS = 100_000;
+    private static final int ROUNDS = 4;
+    private static final int REQUESTERS = 4;
+    private static final int PRODUCERS = 4;
+
+    // items whose requests are issued together, so that
+    // some subscriptions are carried out and some are late
+    private static final int CHUNK = 256;
+
+    private static final long DRAIN_TIMEOUT_MILLIS = 60000;
+
+    // the state of an item on the Adapter side
+    private static final class Item {
+        final String name;
+
+        // only used by the requester thread
+        int issued = 0;
+
+        // only used by the dequeuers, which are sequential for the item
+        int nextTask = 0;
+
+        // guarded by this
+        boolean subscribed = false;
+        boolean closed = false;
+        ItemSubscription current = null;
+        final List<ItemSubscription> history = new ArrayList<ItemSubscription>();
+
+        Item(String name) {
+            this.name = name;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<String> _errors = new ConcurrentLinkedQueue<String>();
+    private final AtomicLong _subscribes = new AtomicLong();
+    private final AtomicLong _lateTasks = new AtomicLong();
+    private final AtomicLong _updates = new AtomicLong();
+
+    private void error(String message) {
+        if (_errors.size() < 20) {
+            _errors.add(message);
+        }
+    }
+
+    private final class FakeTask implements Task {
+        private final Item _item;
+        private final int _seq;
+        private final String _code;
+        private final boolean _last;
+
+        FakeTask(Item item, String code, boolean last) {
+            _item = item;
+            _seq = item.issued++;
+            _code = code;
+            _last = last;
+        }
+
+        @Override
+        public String getCode() {
+            return _code;
+        }
+
+        private void checkOrder() {
+            if (_item.nextTask != _seq) {
+                error("Task " + _seq + " for " + _item.name + " run when " + _item.nextTask + " was expected");
+            }
+            _item.nextTask = _seq + 1;
+        }
+
+        @Override
+        public boolean doTask(ItemSubscription subscription) {
+            checkOrder();
+            synchronized (_item) {
+                if (_item.closed) {
+                    error("Task run for " + _item.name + " after the final unsubscription");
+                }
+                if (_code != null) {
+                    if (_item.subscribed) {
+                        error("Subscription of " + _item.name + " while subscribed");
+                    }
+                    if (subscription == null || ! subscription.isActive()) {
+                        error("Inactive subscription supplied for " + _item.name);
+                        return false;
+                    }
+                    for (ItemSubscription previous : _item.history) {
+                        if (previous.isActive()) {
+                            error("Previous subscription of " + _item.name + " still active");
+                        }
+                    }
+                    _item.history.add(subscription);
+                    _item.current = subscription;
+                    _subscribes.incrementAndGet();
+                    if (_seq % 7 == 0) {
+                        // some subscriptions fail, hence their
+                        // unsubscriptions are not carried out
+                        return false;
+                    }
+                    _item.subscribed = true;
+                } else {
+                    if (! _item.subscribed) {
+                        error("Unsubscription of " + _item.name + " while not subscribed");
+                    }
+                    _item.subscribed = false;
+                    _item.closed = _last;
+                }
+                return true;
+            }
+        }
+
+        @Override
+        public void doLateTask() {
+            checkOrder();
+            _lateTasks.incrementAndGet();
+            synchronized (_item) {
+                if (_item.closed) {
+                    error("Task run for " + _item.name + " after the final unsubscription");
+                }
+                if (_item.subscribed) {
+                    error("Late task for " + _item.name + " while subscribed");
+                }
+                _item.closed = _last;
+            }
+        }
+
+        @Override
+        public void doFailedTask(Exception cause) {
+            checkOrder();
+            error("Unexpected failure for " + _item.name + ": " + cause);
+        }
+    }
+
+    @Test
+    public void testPooled() throws Exception {
+        runStress(false);
+    }
+
+    @Test
+    public void testSharded() throws Exception {
+        runStress(true);
+    }
+
+    private void runStress(boolean sharded) throws Exception {
+        System.setProperty("lightstreamer.data.pool.size", "8");
+        System.setProperty("lightstreamer.data.pool.sharded", String.valueOf(sharded));
+        final SubscriptionHelper helper;
+        try {
+            helper = new SubscriptionHelper();
+        } finally {
+            System.clearProperty("lightstreamer.data.pool.size");
+            System.clearProperty("lightstreamer.data.pool.sharded");
+        }
+
+        final Item[] items = new Item[ITEMS];
+        for (int i = 0; i < ITEMS; i++) {
+            items[i] = new Item("item" + i);
+        }
+
+        try {
+            // each requester owns a partition of the items, as the requests
+            // for the same item are issued sequentially by the Server
+            Thread[] requesters = new Thread[REQUESTERS];
+            for (int r = 0; r < REQUESTERS; r++) {
+                final int first = r;
+                requesters[r] = new Thread(() -> {
+                    for (int round = 0; round < ROUNDS; round++) {
+                        boolean last = (round == ROUNDS - 1);
+                        for (int chunk = first; chunk < ITEMS; chunk += CHUNK * REQUESTERS) {
+                            int end = Math.min(chunk + CHUNK * REQUESTERS, ITEMS);
+                            for (int i = chunk; i < end; i += REQUESTERS) {
+                                Item item = items[i];
+                                helper.doSubscription(item.name, new FakeTask(item, Integer.toString(round), false));
+                            }
+                            for (int i = chunk; i < end; i += REQUESTERS) {
+                                Item item = items[i];
+                                helper.doUnsubscription(item.name, new FakeTask(item, null, last));
+                            }
+                        }
+                    }
+                });
+            }
+
+            // the producers race with the requests on all the items
+            final AtomicBoolean stop = new AtomicBoolean(false);
+            Thread[] producers = new Thread[PRODUCERS];
+            for (int p = 0; p < PRODUCERS; p++) {
+                final Random random = new Random(p);
+                producers[p] = new Thread(() -> {
+                    int[] lastRound = new int[ITEMS];
+                    while (! stop.get()) {
+                        int i = random.nextInt(ITEMS);
+                        Item item = items[i];
+
+                        // as an Adapter that checks the item state under its lock
+                        synchronized (item) {
+                            ItemSubscription subscription = helper.getSubscription(item.name);
+                            if (item.subscribed) {
+                                if (subscription != item.current) {
+                                    error("Update for " + item.name + " got a stale subscription");
+                                } else if (! subscription.isActive()) {
+                                    error("Update for " + item.name + " got an inactive subscription");
+                                }
+                                _updates.incrementAndGet();
+                            } else if (item.closed && subscription != null && subscription.isActive() && subscription != item.current) {
+                                error("Update for " + item.name + " got a new subscription after the final unsubscription");
+                            }
+                        }
+
+                        // as an Adapter that sends updates with no locks;
+                        // the subscriptions seen must never go back in time
+                        ItemSubscription subscription = helper.getSubscription(item.name);
+                        if (subscription != null) {
+                            int round = Integer.parseInt(subscription.getCode());
+                            if (round < lastRound[i]) {
+                                error("Update for " + item.name + " got subscription " + round + " after " + lastRound[i]);
+                            }
+                            lastRound[i] = round;
+                        }
+                    }
+                });
+            }
+
+            for (Thread producer : producers) {
+                producer.start();
+            }
+            for (Thread requester : requesters) {
+                requester.start();
+            }
+            for (Thread requester : requesters) {
+                requester.join();
+            }
+
+            long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+            while (helper.getItemCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            stop.set(true);
+            for (Thread producer : producers) {
+                producer.join();
+            }
+
+            assertTrue("Errors: " + _errors, _errors.isEmpty());
+            assertEquals("Items left in the map", 0, helper.getItemCount());
+            for (Item item : items) {
+                // every task was run, once and in order, as checked by the tasks
+                assertEquals("Tasks run for " + item.name, item.issued, item.nextTask);
+                synchronized (item) {
+                    assertTrue(item.closed);
+                    assertFalse(item.subscribed);
+                    for (ItemSubscription subscription : item.history) {
+                        assertFalse("Subscription of " + item.name + " still active", subscription.isActive());
+                    }
+                }
+                assertNull(helper.getSubscription(item.name));
+            }
+            assertTrue("No subscription carried out", _subscribes.get() > 0);
+            assertTrue("No late request", _lateTasks.get() > 0);
+            assertTrue("No update sent", _updates.get() > 0);
+
+        } finally {
+            helper.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ *  Copyright (c) Lightstreamer Srl
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.lightstreamer.adapters.remote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the bytes allocated by the producer thread for each update, along
+ * the whole path of an update supplied by the Data Adapter: the composition
+ * in the buffer of the thread, the copy into the message and the enqueueing
+ * to the real sender, whose writer thread drains the queue meanwhile. <BR>
+ * Once the caches have warmed up, the only allocations expected are the
+ * copy of the line, the message that carries it and the node of the queue;
+ * the thresholds include them explicitly and leave a small margin for the
+ * occasional allocations of the queue lock when contended by the writer,
+ * so that any further per-field or per-update allocation is detected.
+ */
+public class UpdateAllocationTest {
+
+    private static final int WARMUP_CALLS = 50000;
+    private static final int MEASURED_CALLS = 100000;
+
+    // upper bounds for the unavoidable allocations, which also hold
+    // without compressed pointers
+    private static final long ARRAY_HEADER_BYTES = 24;
+    private static final long OUTGOING_MESSAGE_BYTES = 40;
+    private static final long QUEUE_NODE_BYTES = 40;
+    private static final long MARGIN_BYTES = 32;
+
+    private static final long DRAIN_TIMEOUT_MILLIS = 30000;
+
+    private static final String[] FIELDS = { "stock_name", "last_price", "time", "pct_change", "bid", "ask" };
+
+    private com.sun.management.ThreadMXBean _threadBean;
+    private DataProviderServerImpl _server;
+    private ItemSubscription _subscription;
+
+    @Before
+    public void setUp() throws RemotingException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue("allocation measurement not available", bean instanceof com.sun.management.ThreadMXBean);
+        _threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue("allocation measurement not supported", _threadBean.isThreadAllocatedMemorySupported());
+        _threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        // keepalives would alter the statistics of the written bytes
+        System.setProperty("lightstreamer.keepalive.millis", "0");
+        try {
+            _server = new DataProviderServerImpl();
+        } finally {
+            System.clearProperty("lightstreamer.keepalive.millis");
+        }
+        _server.setRequestStream(new ByteArrayInputStream(new byte[0]));
+        _server.setReplyStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        _server.declareFieldNames(FIELDS);
+        // only the sender is started, as no requests are involved
+        _server.init(true);
+        _server.startOut();
+
+        _subscription = new ItemSubscription("item1", "1");
+    }
+
+    @After
+    public void tearDown() {
+        if (_server != null) {
+            _server.stop();
+            _server.dispose();
+        }
+    }
+
+    @Test
+    public void testUpdateByMap() throws Exception {
+        Map<String,Object> event = new HashMap<String,Object>();
+        event.put(FIELDS[0], "Anduct");
+        event.put(FIELDS[1], "3.04");
+        event.put(FIELDS[2], "12:48:24");
+        event.put(FIELDS[3], "-0.95");
+        event.put(FIELDS[4], "3.02");
+        event.put(FIELDS[5], null);
+
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            _server.update(_subscription, event, false, -1);
+        }
+        WriterStatistics before = drain();
+        long start = _threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            _server.update(_subscription, event, false, -1);
+        }
+        long end = _threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        WriterStatistics after = drain();
+
+        checkAllocation("update by Map", end - start, before, after);
+    }
+
+    @Test
+    public void testUpdateByValues() throws Exception {
+        FieldValues values = new FieldValues(FIELDS.length);
+
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            _server.update(_subscription, fill(values, i), false, -1);
+        }
+        WriterStatistics before = drain();
+        long start = _threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            _server.update(_subscription, fill(values, i), false, -1);
+        }
+        long end = _threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        WriterStatistics after = drain();
+
+        checkAllocation("update by FieldValues", end - start, before, after);
+    }
+
+    private static FieldValues fill(FieldValues values, int i) {
+        // numeric values change at each call, to exercise the formatting
+        return values.clear()
+            .set(FIELDS[0], "Anduct")
+            .set(FIELDS[1], 3 + (i % 100) / 100.0, 2)
+            .set(FIELDS[2], "12:48:24")
+            .set(FIELDS[3], -(i % 1000) / 100.0)
+            .set(FIELDS[4], i)
+            .set(FIELDS[5], (String) null);
+    }
+
+    private WriterStatistics drain() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        WriterStatistics stats = _server.getWriterStatistics();
+        while (stats.getWrittenMessages() < stats.getEnqueuedMessages() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            stats = _server.getWriterStatistics();
+        }
+        assertEquals("Messages not written", stats.getEnqueuedMessages(), stats.getWrittenMessages());
+        return stats;
+    }
+
+    private static void checkAllocation(String path, long allocated, WriterStatistics before, WriterStatistics after) {
+        long messages = after.getWrittenMessages() - before.getWrittenMessages();
+        assertEquals("Updates not enqueued", MEASURED_CALLS, messages);
+        long lineBytes = (after.getWrittenBytes() - before.getWrittenBytes()) / messages;
+
+        // the copy of the line is rounded up to the object alignment
+        long copyBytes = (ARRAY_HEADER_BYTES + lineBytes + 7) / 8 * 8;
+        long threshold = copyBytes + OUTGOING_MESSAGE_BYTES + QUEUE_NODE_BYTES + MARGIN_BYTES;
+
+        long perCall = allocated / MEASURED_CALLS;
+        assertTrue(path + " allocates " + perCall + " bytes per call, for lines of " + lineBytes + " bytes, beyond " + threshold, perCall <= threshold);
+    }
+
+}